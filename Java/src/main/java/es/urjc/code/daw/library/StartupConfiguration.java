@@ -0,0 +1,42 @@
+package es.urjc.code.daw.library;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import es.urjc.code.daw.library.book.BookInvalidations;
+import es.urjc.code.daw.library.monitoring.FlightRecording;
+import es.urjc.code.daw.library.monitoring.StartupMetrics;
+
+/**
+ * Arranque rápido (perfil <code>prod</code>, ver application-prod.properties).
+ *
+ * Con <code>spring.main.lazy-initialization</code> los beans se crean al
+ * usarse por primera vez. Los que nadie pide pero tienen que funcionar desde
+ * el arranque se excluyen aquí: los datos iniciales, la recepción de
+ * invalidaciones de otros nodos y la monitorización.
+ *
+ * Con <code>library.startup.exit-when-ready=true</code> la aplicación se
+ * cierra en cuanto está lista; es la ejecución de entrenamiento con la que
+ * el perfil Maven <code>cds</code> genera el archivo AppCDS.
+ */
+@Configuration
+public class StartupConfiguration {
+
+	@Bean
+	public static LazyInitializationExcludeFilter eagerBeans() {
+		return LazyInitializationExcludeFilter.forBeanTypes(DatabaseInitializer.class, BookInvalidations.class,
+				FlightRecording.class, StartupMetrics.class);
+	}
+
+	@Bean
+	@ConditionalOnProperty("library.startup.exit-when-ready")
+	public ApplicationListener<ApplicationReadyEvent> exitWhenReady() {
+		return event -> System.exit(SpringApplication.exit(event.getApplicationContext()));
+	}
+
+}
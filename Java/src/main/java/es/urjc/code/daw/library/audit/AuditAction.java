@@ -0,0 +1,11 @@
+package es.urjc.code.daw.library.audit;
+
+public enum AuditAction {
+
+	CREATE,
+
+	UPDATE,
+
+	DELETE
+
+}
@@ -0,0 +1,10 @@
+package es.urjc.code.daw.library.audit;
+
+// Por dónde llegó el cambio
+public enum AuditChannel {
+
+	REST,
+
+	WEB
+
+}
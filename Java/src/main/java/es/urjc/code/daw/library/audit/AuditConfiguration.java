@@ -0,0 +1,59 @@
+package es.urjc.code.daw.library.audit;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import es.urjc.code.daw.library.audit.AuditRingBuffer.OverflowPolicy;
+
+/**
+ * Chooses where the audit log is written with <code>library.audit.sink</code>:
+ * <ul>
+ * <li><code>jdbc</code> (default): the <code>book_audit</code> table of the
+ * main database</li>
+ * <li><code>file</code>: lines appended to <code>library.audit.file</code></li>
+ * </ul>
+ * With <code>library.audit.overflow=block</code> (default) request threads
+ * wait when the buffer is full, at most
+ * <code>library.audit.block-timeout-ms</code>; with <code>drop</code> the event
+ * is lost and counted instead. A batch is tried
+ * <code>library.audit.max-attempts</code> times before its records are written
+ * one by one, sending those that still fail to the dead-letter log.
+ */
+@Configuration
+public class AuditConfiguration {
+
+	private static final String SINK = "library.audit.sink";
+
+	@Bean
+	@ConditionalOnProperty(name = SINK, havingValue = "jdbc", matchIfMissing = true)
+	public AuditSink jdbcAuditSink(DataSource dataSource) {
+		return new JdbcAuditSink(dataSource);
+	}
+
+	@Bean
+	@ConditionalOnProperty(name = SINK, havingValue = "file")
+	public AuditSink fileAuditSink(@Value("${library.audit.file:audit.log}") String path) throws IOException {
+		return new FileAuditSink(Paths.get(path));
+	}
+
+	@Bean(destroyMethod = "close")
+	public AuditLog auditLog(AuditSink sink,
+			@Value("${library.audit.capacity:8192}") int capacity,
+			@Value("${library.audit.batch-size:256}") int batchSize,
+			@Value("${library.audit.overflow:block}") String overflow,
+			@Value("${library.audit.block-timeout-ms:1000}") long blockTimeoutMillis,
+			@Value("${library.audit.max-attempts:5}") int maxAttempts,
+			@Value("${library.audit.shutdown-timeout-ms:5000}") long shutdownTimeoutMillis) {
+
+		return new AuditLog(sink, capacity, batchSize, OverflowPolicy.valueOf(overflow.toUpperCase()),
+				blockTimeoutMillis, maxAttempts, shutdownTimeoutMillis);
+	}
+
+}
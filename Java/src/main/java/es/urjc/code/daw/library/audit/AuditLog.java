@@ -0,0 +1,77 @@
+package es.urjc.code.daw.library.audit;
+
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import es.urjc.code.daw.library.audit.AuditRingBuffer.OverflowPolicy;
+import es.urjc.code.daw.library.book.Book;
+import es.urjc.code.daw.library.warmup.WarmUpTraffic;
+
+/**
+ * Auditoría de quién crea, edita o borra cada libro. Los controladores
+ * publican el cambio cuando ya se ha hecho; se escribe en segundo plano, por
+ * lotes (ver AuditRingBuffer), así que la petición no espera a la escritura.
+ */
+public class AuditLog {
+
+	private final AuditRingBuffer buffer;
+
+	private final long shutdownTimeoutMillis;
+
+	AuditLog(AuditSink sink, int capacity, int batchSize, OverflowPolicy overflowPolicy, long blockTimeoutMillis,
+			int maxAttempts, long shutdownTimeoutMillis) {
+		this.buffer = new AuditRingBuffer(capacity, batchSize, overflowPolicy, blockTimeoutMillis, maxAttempts,
+				sink);
+		this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+	}
+
+	public void record(AuditChannel channel, AuditAction action, long bookId, String title) {
+		record(currentUser(), channel, action, bookId, title);
+	}
+
+	// Libro creado o editado; null si no se ha guardado nada
+	public void record(AuditChannel channel, AuditAction action, Book book) {
+		if (book != null && book.getId() != null) {
+			record(channel, action, book.getId(), book.getTitle());
+		}
+	}
+
+	// Para los cambios que terminan fuera del hilo de la petición, con el usuario leído antes
+	public void record(String user, AuditChannel channel, AuditAction action, long bookId, String title) {
+		// Las peticiones del calentamiento se deshacen, no hay nada que auditar
+		if (WarmUpTraffic.isActive()) {
+			return;
+		}
+		buffer.publish(System.currentTimeMillis(), user, channel, action, bookId, title);
+	}
+
+	// Eventos perdidos por estar el buffer lleno (política DROP o espera agotada) o cerrado
+	public long getDropped() {
+		return buffer.getDropped();
+	}
+
+	// Eventos que el sink rechazó y solo constan en el log de dead letters
+	public long getDeadLettered() {
+		return buffer.getDeadLettered();
+	}
+
+	public long getBacklog() {
+		return buffer.getBacklog();
+	}
+
+	// Escribe todo lo publicado antes de cerrar, como mucho durante el tiempo configurado
+	public void close() throws InterruptedException {
+		buffer.close(shutdownTimeoutMillis);
+	}
+
+	// Usuario autenticado de la petición en curso, o null
+	public String currentUser() {
+		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		if (authentication == null || authentication instanceof AnonymousAuthenticationToken) {
+			return null;
+		}
+		return authentication.getName();
+	}
+
+}
@@ -0,0 +1,58 @@
+package es.urjc.code.daw.library.audit;
+
+/**
+ * One audited change to a book. Records are slots of the
+ * {@link AuditRingBuffer}: they are allocated once and overwritten by every
+ * event that goes through the same slot, so a sink must not keep them after
+ * {@link AuditSink#write} returns.
+ */
+public final class AuditRecord {
+
+	private long timeMillis;
+
+	private String user;
+
+	private AuditChannel channel;
+
+	private AuditAction action;
+
+	private long bookId;
+
+	private String title;
+
+	void set(long timeMillis, String user, AuditChannel channel, AuditAction action, long bookId, String title) {
+		this.timeMillis = timeMillis;
+		this.user = user;
+		this.channel = channel;
+		this.action = action;
+		this.bookId = bookId;
+		this.title = title;
+	}
+
+	public long getTimeMillis() {
+		return timeMillis;
+	}
+
+	// null si el cambio no lo hizo un usuario autenticado
+	public String getUser() {
+		return user;
+	}
+
+	public AuditChannel getChannel() {
+		return channel;
+	}
+
+	public AuditAction getAction() {
+		return action;
+	}
+
+	public long getBookId() {
+		return bookId;
+	}
+
+	// null en los borrados
+	public String getTitle() {
+		return title;
+	}
+
+}
@@ -0,0 +1,253 @@
+package es.urjc.code.daw.library.audit;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded ring of pre-allocated {@link AuditRecord}s between the request
+ * threads and a single writer thread.
+ *
+ * Producers claim a sequence number with a compareAndSet on the cursor, fill
+ * the slot it maps to and then publish it by storing the sequence in the
+ * slot's entry of <code>published</code>. The writer takes every consecutive
+ * published slot (up to the batch size), hands them to the sink in one call
+ * and only then frees them by advancing <code>consumed</code>. Nothing is
+ * locked and nothing is allocated per event.
+ *
+ * When the ring is full the {@link OverflowPolicy} decides whether producers
+ * wait for the writer (at most the block timeout, then the event is dropped)
+ * or drop the event. A batch the sink rejects is retried with backoff; after
+ * the maximum number of attempts its records are written one by one and
+ * those that still fail go to the dead-letter log and are counted. On close,
+ * everything published before is written, waiting at most the shutdown
+ * timeout.
+ */
+final class AuditRingBuffer {
+
+	private static final Logger log = LoggerFactory.getLogger(AuditRingBuffer.class);
+
+	private static final Logger deadLetter = LoggerFactory.getLogger(AuditRingBuffer.class.getName() + ".dead-letter");
+
+	enum OverflowPolicy {
+
+		// El productor espera a que el escritor libere sitio: no se pierde nada
+		BLOCK,
+
+		// Se descarta el evento y se cuenta: la petición nunca espera
+		DROP
+	}
+
+	private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private static final long FIRST_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+	private static final long MAX_RETRY_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+	// Valor del cursor cuando el escritor ha terminado: ningún productor puede reclamar ya
+	private static final long CLOSED = Long.MIN_VALUE;
+
+	private final AuditRecord[] slots;
+
+	private final AtomicLongArray published;
+
+	private final int mask;
+
+	private final int batchSize;
+
+	private final OverflowPolicy overflowPolicy;
+
+	private final long blockTimeoutNanos;
+
+	private final int maxAttempts;
+
+	private final AuditSink sink;
+
+	// Siguiente secuencia que reclamará un productor
+	private final AtomicLong cursor = new AtomicLong();
+
+	// Todas las secuencias anteriores están escritas y sus slots libres
+	private volatile long consumed;
+
+	private volatile boolean closing;
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private final AtomicLong deadLettered = new AtomicLong();
+
+	private final Thread writer;
+
+	AuditRingBuffer(int capacity, int batchSize, OverflowPolicy overflowPolicy, long blockTimeoutMillis,
+			int maxAttempts, AuditSink sink) {
+		if (Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+		}
+		if (maxAttempts < 1) {
+			throw new IllegalArgumentException("At least one attempt is needed: " + maxAttempts);
+		}
+		this.slots = new AuditRecord[capacity];
+		this.published = new AtomicLongArray(capacity);
+		for (int i = 0; i < capacity; i++) {
+			slots[i] = new AuditRecord();
+			published.set(i, -1);
+		}
+		this.mask = capacity - 1;
+		this.batchSize = batchSize;
+		this.overflowPolicy = overflowPolicy;
+		this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+		this.maxAttempts = maxAttempts;
+		this.sink = sink;
+
+		this.writer = new Thread(this::run, "audit-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * @return false if the event was dropped because the ring is full (with
+	 *         the DROP policy, or for longer than the block timeout) or closed
+	 */
+	boolean publish(long timeMillis, String user, AuditChannel channel, AuditAction action, long bookId,
+			String title) {
+
+		long seq;
+		boolean waiting = false;
+		long deadline = 0;
+		for (;;) {
+			seq = cursor.get();
+			if (closing || seq == CLOSED) {
+				dropped.incrementAndGet();
+				return false;
+			}
+			if (seq - consumed >= slots.length) {
+				if (overflowPolicy == OverflowPolicy.DROP) {
+					dropped.incrementAndGet();
+					return false;
+				}
+				long now = System.nanoTime();
+				if (!waiting) {
+					waiting = true;
+					deadline = now + blockTimeoutNanos;
+				} else if (now - deadline >= 0) {
+					dropped.incrementAndGet();
+					return false;
+				}
+				LockSupport.parkNanos(IDLE_NANOS);
+				continue;
+			}
+			if (cursor.compareAndSet(seq, seq + 1)) {
+				break;
+			}
+		}
+
+		int index = (int) seq & mask;
+		slots[index].set(timeMillis, user, channel, action, bookId, title);
+		// Escritura con semántica release: el escritor ve el slot completo al leer la secuencia.
+		// El escritor no termina mientras el cursor vaya por delante de lo escrito, así que este
+		// slot se escribe aunque el cierre haya empezado después del compareAndSet
+		published.lazySet(index, seq);
+		return true;
+	}
+
+	long getDropped() {
+		return dropped.get();
+	}
+
+	// Registros que el sink rechazó también de uno en uno y solo están en el log de dead letters
+	long getDeadLettered() {
+		return deadLettered.get();
+	}
+
+	// Secuencias publicadas o en curso que aún no se han escrito
+	long getBacklog() {
+		long seq = cursor.get();
+		return seq == CLOSED ? 0 : seq - consumed;
+	}
+
+	void close(long timeoutMillis) throws InterruptedException {
+		closing = true;
+		writer.join(timeoutMillis);
+		if (writer.isAlive()) {
+			writer.interrupt();
+			log.warn("Audit writer did not finish in {} ms; {} records may be lost", timeoutMillis, getBacklog());
+		}
+		try {
+			sink.close();
+		} catch (IOException e) {
+			log.warn("Could not close the audit sink", e);
+		}
+	}
+
+	private void run() {
+		List<AuditRecord> batch = new ArrayList<>(batchSize);
+		long next = 0;
+		long retryNanos = FIRST_RETRY_NANOS;
+		int attempts = 0;
+
+		while (!Thread.currentThread().isInterrupted()) {
+			batch.clear();
+			while (batch.size() < batchSize) {
+				long seq = next + batch.size();
+				int index = (int) seq & mask;
+				if (published.get(index) != seq) {
+					break;
+				}
+				batch.add(slots[index]);
+			}
+
+			if (batch.isEmpty()) {
+				// Al cerrar, se termina cuando todo lo reclamado se ha publicado y escrito. El
+				// compareAndSet falla si un productor ha reclamado otra secuencia entretanto
+				if (closing && cursor.compareAndSet(next, CLOSED)) {
+					return;
+				}
+				LockSupport.parkNanos(IDLE_NANOS);
+				continue;
+			}
+
+			try {
+				sink.write(batch);
+			} catch (IOException | RuntimeException e) {
+				if (++attempts < maxAttempts) {
+					log.warn("Could not write {} audit records, retrying in {} ms", batch.size(),
+							TimeUnit.NANOSECONDS.toMillis(retryNanos), e);
+					LockSupport.parkNanos(retryNanos);
+					retryNanos = Math.min(retryNanos * 2, MAX_RETRY_NANOS);
+					continue;
+				}
+				// Un registro que el sink no acepta no puede bloquear al resto
+				log.warn("Could not write {} audit records after {} attempts, writing them one by one",
+						batch.size(), attempts, e);
+				writeOneByOne(batch);
+			}
+
+			attempts = 0;
+			retryNanos = FIRST_RETRY_NANOS;
+			next += batch.size();
+			consumed = next;
+		}
+	}
+
+	private void writeOneByOne(List<AuditRecord> batch) {
+		for (AuditRecord record : batch) {
+			try {
+				sink.write(Collections.singletonList(record));
+			} catch (IOException | RuntimeException e) {
+				deadLettered.incrementAndGet();
+				deadLetter.error("{}\t{}\t{}\t{}\t{}\t{}", Instant.ofEpochMilli(record.getTimeMillis()),
+						record.getUser(), record.getChannel(), record.getAction(), record.getBookId(),
+						record.getTitle(), e);
+			}
+		}
+	}
+
+}
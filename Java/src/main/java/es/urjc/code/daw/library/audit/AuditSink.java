@@ -0,0 +1,19 @@
+package es.urjc.code.daw.library.audit;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Append-only destination of audit records. Only the consumer thread of the
+ * ring buffer calls it, one batch at a time.
+ */
+public interface AuditSink extends Closeable {
+
+	void write(List<AuditRecord> batch) throws IOException;
+
+	@Override
+	default void close() throws IOException {
+	}
+
+}
@@ -0,0 +1,59 @@
+package es.urjc.code.daw.library.audit;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Appends audit records to a text file, one tab-separated line per record:
+ * time (ISO-8601), user, channel, action, book id and title. Each batch is
+ * forced to disk before the ring buffer frees its slots.
+ */
+public class FileAuditSink implements AuditSink {
+
+	private final FileChannel channel;
+
+	private final StringBuilder lines = new StringBuilder(4096);
+
+	public FileAuditSink(Path path) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND);
+	}
+
+	@Override
+	public void write(List<AuditRecord> batch) throws IOException {
+		lines.setLength(0);
+		for (AuditRecord record : batch) {
+			lines.append(Instant.ofEpochMilli(record.getTimeMillis())).append('\t')
+					.append(field(record.getUser())).append('\t')
+					.append(record.getChannel()).append('\t')
+					.append(record.getAction()).append('\t')
+					.append(record.getBookId()).append('\t')
+					.append(field(record.getTitle())).append('\n');
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		channel.force(false);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	// Tabuladores y saltos de línea del título romperían el formato
+	private static String field(String value) {
+		if (value == null) {
+			return "-";
+		}
+		return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+	}
+
+}
@@ -0,0 +1,49 @@
+package es.urjc.code.daw.library.audit;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Writes audit records to the <code>book_audit</code> table of the main
+ * database, one JDBC batch per ring buffer batch. Rows are only ever
+ * inserted.
+ */
+public class JdbcAuditSink implements AuditSink {
+
+	static final String SCHEMA = "create table if not exists book_audit ("
+			+ "id bigint auto_increment primary key, created_at timestamp not null, username varchar(255), "
+			+ "channel varchar(8) not null, action varchar(8) not null, book_id bigint not null, "
+			+ "title varchar(255))";
+
+	private static final String INSERT = "insert into book_audit "
+			+ "(created_at, username, channel, action, book_id, title) values (?, ?, ?, ?, ?, ?)";
+
+	private final JdbcTemplate jdbc;
+
+	public JdbcAuditSink(DataSource dataSource) {
+		this.jdbc = new JdbcTemplate(dataSource);
+		jdbc.execute(SCHEMA);
+	}
+
+	@Override
+	public void write(List<AuditRecord> batch) {
+		jdbc.batchUpdate(INSERT, batch, batch.size(), (statement, record) -> {
+			statement.setTimestamp(1, new Timestamp(record.getTimeMillis()));
+			statement.setString(2, record.getUser());
+			statement.setString(3, record.getChannel().name());
+			statement.setString(4, record.getAction().name());
+			statement.setLong(5, record.getBookId());
+			if (record.getTitle() != null) {
+				statement.setString(6, record.getTitle());
+			} else {
+				statement.setNull(6, Types.VARCHAR);
+			}
+		});
+	}
+
+}
@@ -1,12 +1,16 @@
 package es.urjc.code.daw.library.book;
 
 import javax.persistence.Column;
+import javax.persistence.Convert;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
 
 @Entity
+@Table(indexes = @Index(name = "book_normalized_title_idx", columnList = "normalizedTitle, id"))
 public class Book {
 
 	@Id
@@ -14,8 +18,13 @@ public class Book {
 	private Long id = null;
 	
 	private String title;
+
+	// Título sin mayúsculas ni tildes, para ordenar y filtrar por prefijo con el índice
+	private String normalizedTitle;
 	
-	@Column(length = 50000)
+	// Se guarda comprimida; 50 000 caracteres pueden ocupar hasta 150 000 bytes en UTF-8
+	@Convert(converter = CompressedTextConverter.class)
+	@Column(length = 150005)
 	private String description;
 
 	public Book() {}
@@ -23,6 +32,7 @@ public class Book {
 	public Book(String nombre, String description) {
 		super();
 		this.title = nombre;
+		this.normalizedTitle = BookTitles.normalize(nombre);
 		this.description = description;
 	}
 
@@ -32,6 +42,11 @@ public class Book {
 
 	public void setTitle(String title) {
 		this.title = title;
+		this.normalizedTitle = BookTitles.normalize(title);
+	}
+
+	String getNormalizedTitle() {
+		return normalizedTitle;
 	}
 
 	public String getDescription() {
@@ -0,0 +1,96 @@
+package es.urjc.code.daw.library.book;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.PostLoad;
+import javax.persistence.PostPersist;
+import javax.persistence.Table;
+import javax.persistence.Transient;
+
+import org.springframework.data.domain.Persistable;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Entry of the change log used by clients to keep an offline copy of the
+ * catalogue in sync. Only the latest change of every book is kept: each write
+ * replaces the previous entry with a new one carrying a higher sequence, and
+ * deletes leave a tombstone. Sequences are taken from
+ * {@link BookChangeSequence}, in commit order. As the sequence is assigned
+ * before saving, the entity tells Spring Data whether it is new, so that
+ * saving it is a plain INSERT instead of a SELECT followed by an INSERT.
+ */
+@Entity
+@Table(indexes = @Index(columnList = "bookId"))
+public class BookChange implements Persistable<Long> {
+
+	@Id
+	private Long seq;
+
+	private long bookId;
+
+	private boolean deleted;
+
+	@Transient
+	private Book book;
+
+	@Transient
+	private boolean isNew = true;
+
+	public BookChange() {}
+
+	public BookChange(long seq, long bookId, boolean deleted) {
+		this.seq = seq;
+		this.bookId = bookId;
+		this.deleted = deleted;
+	}
+
+	public Long getSeq() {
+		return seq;
+	}
+
+	@Override
+	@JsonIgnore
+	public Long getId() {
+		return seq;
+	}
+
+	@Override
+	@JsonIgnore
+	public boolean isNew() {
+		return isNew;
+	}
+
+	@PostLoad
+	@PostPersist
+	void markNotNew() {
+		isNew = false;
+	}
+
+	public long getBookId() {
+		return bookId;
+	}
+
+	public boolean isDeleted() {
+		return deleted;
+	}
+
+	void setDeleted(boolean deleted) {
+		this.deleted = deleted;
+	}
+
+	public Book getBook() {
+		return book;
+	}
+
+	void setBook(Book book) {
+		this.book = book;
+	}
+
+	@Override
+	public String toString() {
+		return "BookChange [seq=" + seq + ", bookId=" + bookId + ", deleted=" + deleted + "]";
+	}
+
+}
@@ -0,0 +1,50 @@
+package es.urjc.code.daw.library.book;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+public interface BookChangeRepository extends JpaRepository<BookChange, Long> {
+
+	Slice<BookChange> findBySeqGreaterThan(long seq, Pageable pageable);
+
+	List<BookChange> findByBookIdIn(Collection<Long> bookIds);
+
+	@Query("select coalesce(max(c.seq), 0) from BookChange c")
+	long findLastSeq();
+
+	@Modifying
+	@Query("delete from BookChange c where c.bookId = ?1")
+	int deleteByBookId(long bookId);
+
+	// The update keeps the row of the counter locked until commit
+	default long nextSeq() {
+		incrementSeq();
+		return currentSeq();
+	}
+
+	/*
+	 * En dos sentencias: H2 1.4.200 devuelve la fila de un
+	 * "select ... from final table (update ...)" sin aplicar el update.
+	 */
+	@Modifying
+	@Query(value = "update book_change_sequence set seq = seq + 1 where id = " + BookChangeSequence.ID,
+			nativeQuery = true)
+	int incrementSeq();
+
+	@Query(value = "select seq from book_change_sequence where id = " + BookChangeSequence.ID, nativeQuery = true)
+	long currentSeq();
+
+	// Starts after the changes already in the log; does nothing if the counter exists
+	@Modifying
+	@Query(value = "insert into book_change_sequence (id, seq) select " + BookChangeSequence.ID
+			+ ", (select coalesce(max(seq), 0) from book_change) from dual"
+			+ " where not exists (select id from book_change_sequence)", nativeQuery = true)
+	int createSequence();
+
+}
@@ -0,0 +1,33 @@
+package es.urjc.code.daw.library.book;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * Single-row counter that hands out the sequence of {@link BookChange}. It is
+ * incremented with an UPDATE, so the row stays locked until the writing
+ * transaction ends: a change can only take the next sequence once the
+ * previous one has committed (or rolled back), and clients reading the log
+ * never see a sequence before a lower one that is still in flight.
+ *
+ * The price is that book writes commit one after another: the counter lives
+ * in the main database, so every writer of every node (and of every shard of
+ * the sharded store) waits for the previous one to commit. A single write
+ * takes the sequence as the last statement of its transaction, so the row is
+ * only held for the insert of the entry and the commit. A write-behind batch
+ * takes it with its first book and keeps it for the rest of the batch: one
+ * wait per batch instead of one per book, which group commit amortises.
+ */
+@Entity
+class BookChangeSequence {
+
+	static final int ID = 1;
+
+	@Id
+	private int id;
+
+	private long seq;
+
+	public BookChangeSequence() {}
+
+}
@@ -0,0 +1,36 @@
+package es.urjc.code.daw.library.book;
+
+import java.util.List;
+
+/**
+ * A page of the change log. Clients store {@link #getLastSeq()} and use it as
+ * the <code>since</code> value of the next request; while {@link #isHasMore()}
+ * is true there are more changes waiting.
+ */
+public class BookChangeSet {
+
+	private final List<BookChange> changes;
+
+	private final long lastSeq;
+
+	private final boolean hasMore;
+
+	public BookChangeSet(List<BookChange> changes, long lastSeq, boolean hasMore) {
+		this.changes = changes;
+		this.lastSeq = lastSeq;
+		this.hasMore = hasMore;
+	}
+
+	public List<BookChange> getChanges() {
+		return changes;
+	}
+
+	public long getLastSeq() {
+		return lastSeq;
+	}
+
+	public boolean isHasMore() {
+		return hasMore;
+	}
+
+}
@@ -0,0 +1,57 @@
+package es.urjc.code.daw.library.book;
+
+/**
+ * Published by {@link BookService} whenever a book is saved or deleted. It is
+ * published inside the write transaction, so listeners that need to see the
+ * new state should use <code>@TransactionalEventListener</code>.
+ */
+public class BookChangedEvent {
+
+	private final long bookId;
+
+	private final long seq;
+
+	private final boolean deleted;
+
+	private final String title;
+
+	public BookChangedEvent(long bookId, long seq, boolean deleted) {
+		this(bookId, seq, deleted, null);
+	}
+
+	public BookChangedEvent(long bookId, long seq, boolean deleted, String title) {
+		this.bookId = bookId;
+		this.seq = seq;
+		this.deleted = deleted;
+		this.title = title;
+	}
+
+	public long getBookId() {
+		return bookId;
+	}
+
+	/**
+	 * Sequence of the change in the change log.
+	 */
+	public long getSeq() {
+		return seq;
+	}
+
+	public boolean isDeleted() {
+		return deleted;
+	}
+
+	/**
+	 * New title of the book, so listeners do not have to load it again
+	 * (<code>null</code> for deletes).
+	 */
+	public String getTitle() {
+		return title;
+	}
+
+	@Override
+	public String toString() {
+		return "BookChangedEvent [bookId=" + bookId + ", seq=" + seq + ", deleted=" + deleted + ", title=" + title + "]";
+	}
+
+}
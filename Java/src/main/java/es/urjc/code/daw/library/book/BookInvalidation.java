@@ -0,0 +1,52 @@
+package es.urjc.code.daw.library.book;
+
+import java.util.Arrays;
+
+/**
+ * A batch of changed books sent by one node to the others. Each id comes with
+ * the change log sequence of its change, so receivers can ignore messages
+ * older than what they have already applied.
+ */
+public final class BookInvalidation {
+
+	private final String node;
+
+	private final long[] bookIds;
+
+	private final long[] seqs;
+
+	public BookInvalidation(String node, long[] bookIds, long[] seqs) {
+		if (bookIds.length != seqs.length) {
+			throw new IllegalArgumentException("Every book id needs its sequence");
+		}
+		this.node = node;
+		this.bookIds = bookIds;
+		this.seqs = seqs;
+	}
+
+	/**
+	 * Node that made the changes.
+	 */
+	public String getNode() {
+		return node;
+	}
+
+	public int size() {
+		return bookIds.length;
+	}
+
+	public long getBookId(int index) {
+		return bookIds[index];
+	}
+
+	public long getSeq(int index) {
+		return seqs[index];
+	}
+
+	@Override
+	public String toString() {
+		return "BookInvalidation [node=" + node + ", bookIds=" + Arrays.toString(bookIds) + ", seqs="
+				+ Arrays.toString(seqs) + "]";
+	}
+
+}
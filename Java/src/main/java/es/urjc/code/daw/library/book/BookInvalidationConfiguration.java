@@ -0,0 +1,59 @@
+package es.urjc.code.daw.library.book;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Chooses the {@link InvalidationTransport} used between nodes with
+ * <code>library.books.invalidation.transport</code>:
+ * <ul>
+ * <li><code>local</code> (default): in-process, for a single node and tests</li>
+ * <li><code>jdbc</code>: a table polled in the main database, for several
+ * nodes sharing it</li>
+ * <li><code>none</code>: single node, nothing is broadcast</li>
+ * </ul>
+ * 
+ * <code>jdbc</code> must be chosen explicitly: by default every node has its
+ * own in-memory database, where polling would only cost queries without ever
+ * reaching another node.
+ */
+@Configuration
+public class BookInvalidationConfiguration {
+
+	private static final String TRANSPORT = "library.books.invalidation.transport";
+
+	@Bean
+	@ConditionalOnProperty(name = TRANSPORT, havingValue = "jdbc")
+	public InvalidationTransport jdbcInvalidationTransport(DataSource dataSource,
+			@Value("${library.books.invalidation.poll-interval-ms:500}") long pollIntervalMillis,
+			@Value("${library.books.invalidation.retention-s:300}") long retentionSeconds) {
+
+		return new JdbcInvalidationTransport(dataSource, pollIntervalMillis, retentionSeconds * 1000);
+	}
+
+	@Bean
+	@ConditionalOnProperty(name = TRANSPORT, havingValue = "local", matchIfMissing = true)
+	public InvalidationTransport localInvalidationTransport() {
+		return new LocalInvalidationTransport();
+	}
+
+	@Bean(destroyMethod = "close")
+	@ConditionalOnExpression("'${" + TRANSPORT + ":local}' != 'none'")
+	public BookInvalidations bookInvalidations(InvalidationTransport transport, BookService service,
+			ApplicationEventPublisher events,
+			@Value("${library.books.invalidation.batch-size:500}") int batchSize,
+			@Value("${library.books.invalidation.max-delay-ms:50}") long maxDelayMillis,
+			@Value("${library.books.invalidation.max-versions:100000}") int maxVersions,
+			@Value("${library.books.invalidation.retention-s:300}") long retentionSeconds) {
+
+		return new BookInvalidations(transport, service, events, batchSize, maxDelayMillis, maxVersions,
+				retentionSeconds * 1000);
+	}
+
+}
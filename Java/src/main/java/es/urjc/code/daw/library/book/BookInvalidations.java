@@ -0,0 +1,181 @@
+package es.urjc.code.daw.library.book;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Keeps the book caches of several nodes coherent. Committed changes of this
+ * node are collected and broadcast in batches through an
+ * {@link InvalidationTransport}; changes received from other nodes are
+ * applied to {@link BookService} and announced locally with a
+ * {@link BooksInvalidatedEvent}.
+ *
+ * Every book remembers the highest change sequence applied to it, so a
+ * message that arrives after a newer change of the same book (from this node
+ * or another one) is ignored. Those sequences are kept in two generations that
+ * rotate when the newest one holds half of <code>maxVersions</code> books or
+ * is older than <code>versionTtlMillis</code>; a forgotten book only costs an
+ * extra reload if a late message for it arrives.
+ */
+public class BookInvalidations {
+
+	private static final Logger log = LoggerFactory.getLogger(BookInvalidations.class);
+
+	private final String node = UUID.randomUUID().toString();
+
+	private final InvalidationTransport transport;
+
+	private final BookService service;
+
+	private final ApplicationEventPublisher events;
+
+	private final int batchSize;
+
+	// Cambios de este nodo pendientes de enviar, como pares (id, seq)
+	private long[] pending;
+
+	private int pendingSize;
+
+	private final int maxVersions;
+
+	private final long versionTtlMillis;
+
+	// Mayor seq aplicada a cada libro, en la generación actual y en la anterior
+	private LongLongMap versions = new LongLongMap(1024);
+
+	private LongLongMap previousVersions = new LongLongMap(16);
+
+	private long versionsSince = System.currentTimeMillis();
+
+	private final ScheduledExecutorService publisher = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "book-invalidation-publisher");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	public BookInvalidations(InvalidationTransport transport, BookService service, ApplicationEventPublisher events,
+			int batchSize, long maxDelayMillis, int maxVersions, long versionTtlMillis) {
+		this.transport = transport;
+		this.service = service;
+		this.events = events;
+		this.batchSize = batchSize;
+		this.maxVersions = maxVersions;
+		this.versionTtlMillis = versionTtlMillis;
+		this.pending = new long[batchSize * 2];
+
+		transport.subscribe(this::receive);
+		publisher.scheduleWithFixedDelay(this::flush, maxDelayMillis, maxDelayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public String getNode() {
+		return node;
+	}
+
+	/**
+	 * @return number of books whose last applied change is remembered
+	 */
+	synchronized int trackedVersions() {
+		return versions.size() + previousVersions.size();
+	}
+
+	public void close() {
+		publisher.shutdownNow();
+		flush();
+		transport.close();
+	}
+
+	@TransactionalEventListener
+	public void onBookChanged(BookChangedEvent event) {
+		boolean full;
+		synchronized (this) {
+			advance(event.getBookId(), event.getSeq());
+			if (pendingSize == pending.length) {
+				pending = Arrays.copyOf(pending, pending.length * 2);
+			}
+			pending[pendingSize++] = event.getBookId();
+			pending[pendingSize++] = event.getSeq();
+			full = pendingSize >= batchSize * 2;
+		}
+		if (full) {
+			publisher.execute(this::flush);
+		}
+	}
+
+	/**
+	 * Sends the pending changes now.
+	 */
+	public void flush() {
+		long[] batch;
+		int size;
+		synchronized (this) {
+			if (pendingSize == 0) {
+				return;
+			}
+			batch = pending;
+			size = pendingSize / 2;
+			pending = new long[batchSize * 2];
+			pendingSize = 0;
+		}
+
+		long[] bookIds = new long[size];
+		long[] seqs = new long[size];
+		for (int i = 0; i < size; i++) {
+			bookIds[i] = batch[2 * i];
+			seqs[i] = batch[2 * i + 1];
+		}
+
+		try {
+			transport.publish(new BookInvalidation(node, bookIds, seqs));
+		} catch (RuntimeException e) {
+			// Los demás nodos verán los libros desactualizados hasta el siguiente cambio de cada uno
+			log.error("Could not broadcast changes of {} books", size, e);
+		}
+	}
+
+	private void receive(BookInvalidation invalidation) {
+		if (node.equals(invalidation.getNode())) {
+			return;
+		}
+
+		List<Long> stale = new ArrayList<>(invalidation.size());
+		synchronized (this) {
+			for (int i = 0; i < invalidation.size(); i++) {
+				if (advance(invalidation.getBookId(i), invalidation.getSeq(i))) {
+					stale.add(invalidation.getBookId(i));
+				}
+			}
+		}
+
+		if (!stale.isEmpty()) {
+			service.invalidate(stale);
+			events.publishEvent(new BooksInvalidatedEvent(stale));
+		}
+	}
+
+	// Devuelve false si ya se había aplicado un cambio igual o más reciente
+	private boolean advance(long bookId, long seq) {
+		long current = Math.max(versions.get(bookId), previousVersions.get(bookId));
+		if (current >= seq) {
+			return false;
+		}
+		long now = System.currentTimeMillis();
+		if (versions.size() >= maxVersions / 2 || now - versionsSince >= versionTtlMillis) {
+			previousVersions = versions;
+			versions = new LongLongMap(1024);
+			versionsSince = now;
+		}
+		versions.put(bookId, seq);
+		return true;
+	}
+
+}
@@ -0,0 +1,537 @@
+package es.urjc.code.daw.library.book;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only log of book records in a memory-mapped file, with an in-memory
+ * index from id to the offset of the latest record of each book.
+ * 
+ * Every record is <code>[length:int][crc32:int][payload]</code>, where the
+ * payload is <code>[type:byte][id:long]</code> followed, for puts, by the
+ * title and the description as <code>[length:int][utf-8]</code> (length -1 for
+ * null). The mapped area after the last record is zero, so a zero length marks
+ * the end of the log.
+ * 
+ * New ids are handed out by {@link #nextId()} from blocks reserved with a
+ * record of their own, and compaction keeps the highest reservation, so an id
+ * is never reused, not even after its book is deleted and compacted away or
+ * the process restarts.
+ * 
+ * On open the log is replayed to rebuild the index; a record with a bad length
+ * or checksum (a write torn by a crash) ends the log and everything after it
+ * is discarded. {@link #compact()} rewrites the live records to a new file and
+ * swaps it in atomically.
+ * 
+ * Reads decode straight from the mapped memory, without copying the record to
+ * the heap first. Readers never block on writers for longer than the index
+ * lookup: a reader keeps using the mapping it started with even if a writer
+ * remaps or compacts the file meanwhile.
+ * 
+ * A single mapping is used, so the log is limited to 2 GB between compactions.
+ */
+public final class BookJournal implements Closeable {
+
+	private static final Logger log = LoggerFactory.getLogger(BookJournal.class);
+
+	private static final byte PUT = 1;
+
+	private static final byte DELETE = 2;
+
+	private static final byte RESERVE = 3;
+
+	// Ids reserved at once by nextId(), so that few writes need a reservation
+	private static final int ID_BLOCK = 100;
+
+	private static final int HEADER = 8;
+
+	// Type and id, the payload of a delete
+	private static final int MIN_PAYLOAD = 1 + 8;
+
+	private static final long INITIAL_SIZE = 16L << 20;
+
+	private static final long MAX_SIZE = Integer.MAX_VALUE;
+
+	private final Path path;
+
+	private final boolean syncWrites;
+
+	private final long maxSize;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private FileChannel channel;
+
+	private MappedByteBuffer mapped;
+
+	private LongLongMap index;
+
+	private int writePosition;
+
+	private long liveBytes;
+
+	// Highest id used or reserved in the log
+	private long maxId;
+
+	private long lastId;
+
+	private BookJournal(Path path, boolean syncWrites, long maxSize) {
+		this.path = path;
+		this.syncWrites = syncWrites;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Opens (or creates) the journal and replays it.
+	 * 
+	 * @param syncWrites whether every write is forced to disk before returning
+	 */
+	public static BookJournal open(Path path, boolean syncWrites) throws IOException {
+		return open(path, syncWrites, MAX_SIZE);
+	}
+
+	// A smaller limit lets tests fill the journal
+	static BookJournal open(Path path, boolean syncWrites, long maxSize) throws IOException {
+		BookJournal journal = new BookJournal(path, syncWrites, Math.min(maxSize, MAX_SIZE));
+		journal.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		journal.mapped = journal.channel.map(FileChannel.MapMode.READ_WRITE, 0,
+				Math.max(Math.min(INITIAL_SIZE, journal.maxSize), journal.channel.size()));
+		journal.recover();
+		return journal;
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return index.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Highest id used or reserved, not necessarily by a live book.
+	 */
+	public long maxId() {
+		lock.readLock().lock();
+		try {
+			return maxId;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * A new id, higher than any id used or handed out before by this journal.
+	 */
+	public long nextId() throws IOException {
+		lock.writeLock().lock();
+		try {
+			long id = lastId + 1;
+			reserve(id);
+			return id;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Marks an id chosen by the caller as used, before its book is written,
+	 * so that {@link #nextId()} never hands it out.
+	 */
+	public void use(long id) throws IOException {
+		lock.writeLock().lock();
+		try {
+			if (id > lastId) {
+				reserve(id);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public boolean contains(long id) {
+		lock.readLock().lock();
+		try {
+			return index.get(id) != LongLongMap.MISSING;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the book, or <code>null</code> if there is none with that id
+	 */
+	public Book read(long id) {
+		ByteBuffer buffer;
+		long offset;
+		lock.readLock().lock();
+		try {
+			buffer = mapped;
+			offset = index.get(id);
+		} finally {
+			lock.readLock().unlock();
+		}
+		return offset == LongLongMap.MISSING ? null : decode(buffer, (int) offset, true);
+	}
+
+	/**
+	 * All books in id order. With <code>withDescription</code> false the
+	 * descriptions are not decoded.
+	 */
+	public List<Book> readAll(boolean withDescription) {
+		ByteBuffer buffer;
+		long[] offsets;
+		lock.readLock().lock();
+		try {
+			buffer = mapped;
+			long[] ids = index.keys();
+			offsets = new long[ids.length];
+			for (int i = 0; i < ids.length; i++) {
+				offsets[i] = index.get(ids[i]);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+
+		List<Book> books = new ArrayList<>(offsets.length);
+		for (long offset : offsets) {
+			books.add(decode(buffer, (int) offset, withDescription));
+		}
+		return books;
+	}
+
+	public void put(long id, String title, String description) throws IOException {
+		lock.writeLock().lock();
+		try {
+			appendPut(id, title, description);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Writes the book only if it already exists.
+	 */
+	public boolean replace(long id, String title, String description) throws IOException {
+		lock.writeLock().lock();
+		try {
+			if (index.get(id) == LongLongMap.MISSING) {
+				return false;
+			}
+			appendPut(id, title, description);
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public boolean delete(long id) throws IOException {
+		lock.writeLock().lock();
+		try {
+			long previous = index.get(id);
+			if (previous == LongLongMap.MISSING) {
+				return false;
+			}
+			append(DELETE, id, null, null);
+			index.remove(id);
+			liveBytes -= recordSize(mapped, previous);
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Compacts the log if at least the given fraction of it is dead records.
+	 */
+	public boolean compactIfWasteful(double wasteRatio) throws IOException {
+		lock.readLock().lock();
+		try {
+			if (writePosition == 0 || 1.0 - (double) liveBytes / writePosition < wasteRatio) {
+				return false;
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		compact();
+		return true;
+	}
+
+	/**
+	 * Rewrites the latest record of every live book to a new file and replaces
+	 * the log with it.
+	 */
+	public void compact() throws IOException {
+		lock.writeLock().lock();
+		try {
+			Path compacted = path.resolveSibling(path.getFileName() + ".compact");
+			Files.deleteIfExists(compacted);
+
+			long[] ids = index.keys();
+			LongLongMap newIndex = new LongLongMap(ids.length);
+			int position = 0;
+
+			try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE_NEW,
+					StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+				MappedByteBuffer target = out.map(FileChannel.MapMode.READ_WRITE, 0,
+						sizeFor(liveBytes + HEADER + MIN_PAYLOAD));
+
+				// Dropping deletes and reservations must not make their ids reusable
+				position += encode(target, position, RESERVE, maxId, null, null);
+
+				for (long id : ids) {
+					int offset = (int) index.get(id);
+					int size = recordSize(mapped, offset);
+					window(target, position, position + size).put(window(mapped, offset, offset + size));
+					newIndex.put(id, position);
+					position += size;
+				}
+				target.force();
+			}
+
+			Files.move(compacted, path, StandardCopyOption.ATOMIC_MOVE);
+
+			long before = writePosition;
+			channel.close();
+			channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+			index = newIndex;
+			writePosition = position;
+			liveBytes = position;
+
+			log.info("Compacted book journal from {} to {} bytes", before, position);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		lock.writeLock().lock();
+		try {
+			mapped.force();
+			channel.close();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void recover() {
+
+		index = new LongLongMap(1024);
+		int limit = mapped.capacity();
+		int position = 0;
+
+		while (position + HEADER <= limit) {
+			int length = mapped.getInt(position);
+			if (length == 0) {
+				break;
+			}
+			if (length < MIN_PAYLOAD || length > limit - position - HEADER
+					|| checksum(mapped, position + HEADER, length) != mapped.getInt(position + 4)) {
+				log.warn("Discarding torn record at offset {} of {}", position, path);
+				clear(position, limit);
+				break;
+			}
+			apply(position);
+			position += HEADER + length;
+		}
+
+		writePosition = position;
+		lastId = maxId;
+		log.info("Recovered {} books from {} ({} bytes)", index.size(), path, position);
+	}
+
+	private void apply(int offset) {
+		byte type = mapped.get(offset + HEADER);
+		long id = mapped.getLong(offset + HEADER + 1);
+
+		maxId = Math.max(maxId, id);
+		if (type == RESERVE) {
+			return;
+		}
+
+		long previous = index.get(id);
+		if (previous != LongLongMap.MISSING) {
+			liveBytes -= recordSize(mapped, previous);
+		}
+		if (type == PUT) {
+			index.put(id, offset);
+			liveBytes += recordSize(mapped, offset);
+		} else {
+			index.remove(id);
+		}
+	}
+
+	private void reserve(long id) throws IOException {
+		if (id > maxId) {
+			append(RESERVE, id + ID_BLOCK - 1, null, null);
+			maxId = id + ID_BLOCK - 1;
+		}
+		lastId = id;
+	}
+
+	private void appendPut(long id, String title, String description) throws IOException {
+		long previous = index.get(id);
+		int offset = append(PUT, id, title, description);
+		if (previous != LongLongMap.MISSING) {
+			liveBytes -= recordSize(mapped, previous);
+		}
+		index.put(id, offset);
+		liveBytes += recordSize(mapped, offset);
+		maxId = Math.max(maxId, id);
+		lastId = Math.max(lastId, id);
+	}
+
+	private int append(byte type, long id, String title, String description) throws IOException {
+
+		byte[] titleBytes = utf8(title);
+		byte[] descriptionBytes = utf8(description);
+		ensureCapacity(HEADER + payloadLength(type, titleBytes, descriptionBytes));
+
+		int offset = writePosition;
+		writePosition = offset + encode(mapped, offset, type, id, titleBytes, descriptionBytes);
+		if (syncWrites) {
+			mapped.force();
+		}
+		return offset;
+	}
+
+	/**
+	 * Writes a record at the given offset of the buffer.
+	 * 
+	 * @return the size of the record
+	 */
+	private static int encode(ByteBuffer buffer, int offset, byte type, long id, byte[] titleBytes,
+			byte[] descriptionBytes) {
+
+		int length = payloadLength(type, titleBytes, descriptionBytes);
+		ByteBuffer payload = window(buffer, offset + HEADER, offset + HEADER + length);
+		payload.put(type);
+		payload.putLong(id);
+		if (type == PUT) {
+			putBytes(payload, titleBytes);
+			putBytes(payload, descriptionBytes);
+		}
+
+		// The length goes last: until it is written the record does not exist
+		buffer.putInt(offset + 4, checksum(buffer, offset + HEADER, length));
+		buffer.putInt(offset, length);
+		return HEADER + length;
+	}
+
+	private static int payloadLength(byte type, byte[] titleBytes, byte[] descriptionBytes) {
+		int length = MIN_PAYLOAD;
+		if (type == PUT) {
+			length += 4 + (titleBytes != null ? titleBytes.length : 0) + 4
+					+ (descriptionBytes != null ? descriptionBytes.length : 0);
+		}
+		return length;
+	}
+
+	private void ensureCapacity(int bytes) throws IOException {
+		long needed = (long) writePosition + bytes;
+		if (needed <= mapped.capacity()) {
+			return;
+		}
+		if (needed > maxSize) {
+			throw new IOException("Book journal " + path + " is full, it needs to be compacted");
+		}
+		long size = mapped.capacity();
+		while (size < needed) {
+			size = Math.min(size * 2, maxSize);
+		}
+		mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+	}
+
+	private void clear(int from, int to) {
+		byte[] zeros = new byte[64 * 1024];
+		for (long position = from; position < to; position += zeros.length) {
+			int chunk = (int) Math.min(zeros.length, to - position);
+			window(mapped, (int) position, (int) position + chunk).put(zeros, 0, chunk);
+		}
+	}
+
+	private static Book decode(ByteBuffer buffer, int offset, boolean withDescription) {
+		int position = offset + HEADER + 1;
+		long id = buffer.getLong(position);
+		position += 8;
+
+		int titleLength = buffer.getInt(position);
+		String title = string(buffer, position);
+		position += 4 + Math.max(titleLength, 0);
+
+		String description = withDescription ? string(buffer, position) : null;
+
+		Book book = new Book(title, description);
+		book.setId(id);
+		return book;
+	}
+
+	private static String string(ByteBuffer buffer, int position) {
+		int length = buffer.getInt(position);
+		if (length < 0) {
+			return null;
+		}
+		return StandardCharsets.UTF_8.decode(window(buffer, position + 4, position + 4 + length)).toString();
+	}
+
+	private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+		if (bytes == null) {
+			buffer.putInt(-1);
+		} else {
+			buffer.putInt(bytes.length);
+			buffer.put(bytes);
+		}
+	}
+
+	private static byte[] utf8(String text) {
+		return text != null ? text.getBytes(StandardCharsets.UTF_8) : null;
+	}
+
+	private static int recordSize(ByteBuffer buffer, long offset) {
+		return HEADER + buffer.getInt((int) offset);
+	}
+
+	private static int checksum(ByteBuffer buffer, int from, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(window(buffer, from, from + length));
+		return (int) crc.getValue();
+	}
+
+	private long sizeFor(long bytes) {
+		long size = Math.min(INITIAL_SIZE, maxSize);
+		while (size < bytes) {
+			size = Math.min(size * 2, maxSize);
+		}
+		return size;
+	}
+
+	// View of [from, to) that shares memory with the buffer (no copy)
+	private static ByteBuffer window(ByteBuffer buffer, int from, int to) {
+		ByteBuffer window = buffer.duplicate();
+		((Buffer) window).limit(to);
+		((Buffer) window).position(from);
+		return window;
+	}
+
+}
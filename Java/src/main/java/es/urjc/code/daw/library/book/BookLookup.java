@@ -0,0 +1,28 @@
+package es.urjc.code.daw.library.book;
+
+import java.util.List;
+
+/**
+ * Result of looking up several books at once: the books found, in the order
+ * they were requested, and the ids that do not exist.
+ */
+public class BookLookup {
+
+	private final List<Book> books;
+
+	private final List<Long> missing;
+
+	public BookLookup(List<Book> books, List<Long> missing) {
+		this.books = books;
+		this.missing = missing;
+	}
+
+	public List<Book> getBooks() {
+		return books;
+	}
+
+	public List<Long> getMissing() {
+		return missing;
+	}
+
+}
@@ -0,0 +1,80 @@
+package es.urjc.code.daw.library.book;
+
+import java.util.Comparator;
+
+/**
+ * A filtered, sorted and limited listing of books: the books whose title
+ * starts with <code>prefix</code> (ignoring case and accents), ordered by
+ * <code>sort</code> and cut at <code>limit</code>.
+ */
+public class BookQuery {
+
+	public enum Sort {
+
+		ID(Comparator.comparing(Book::getId)),
+
+		// Por título normalizado, como el índice; el id desempata
+		TITLE(Comparator.comparing(Book::getNormalizedTitle, Comparator.nullsFirst(Comparator.<String> naturalOrder()))
+				.thenComparing(Book::getId));
+
+		private final Comparator<Book> comparator;
+
+		Sort(Comparator<Book> comparator) {
+			this.comparator = comparator;
+		}
+
+		public Comparator<Book> comparator() {
+			return comparator;
+		}
+
+	}
+
+	private final String prefix;
+
+	private final Sort sort;
+
+	private final int limit;
+
+	/**
+	 * @param prefix title prefix, or <code>null</code> for every book
+	 */
+	public BookQuery(String prefix, Sort sort, int limit) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("The limit must be positive");
+		}
+		this.prefix = prefix == null || prefix.isEmpty() ? null : BookTitles.normalize(prefix);
+		this.sort = sort;
+		this.limit = limit;
+	}
+
+	private BookQuery(BookQuery query, int limit) {
+		this.prefix = query.prefix;
+		this.sort = query.sort;
+		this.limit = limit;
+	}
+
+	// La misma consulta con otro límite
+	BookQuery withLimit(int limit) {
+		return new BookQuery(this, limit);
+	}
+
+	/**
+	 * Normalized prefix (see {@link BookTitles}), or <code>null</code>.
+	 */
+	public String getPrefix() {
+		return prefix;
+	}
+
+	public Sort getSort() {
+		return sort;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	boolean matches(Book book) {
+		return prefix == null || (book.getNormalizedTitle() != null && book.getNormalizedTitle().startsWith(prefix));
+	}
+
+}
@@ -1,7 +1,32 @@
 package es.urjc.code.daw.library.book;
 
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 
 public interface BookRepository extends JpaRepository<Book, Long> {
 
-}
\ No newline at end of file
+	// Never reads the description column
+	@Query("select new es.urjc.code.daw.library.book.BookSummary(b.id, b.title) from Book b")
+	List<BookSummary> findAllSummaries();
+
+	// List instead of Page, so that no count query is issued
+	List<Book> findAllBy(Pageable pageable);
+
+	// LIKE 'prefix%' over book_normalized_title_idx
+	List<Book> findByNormalizedTitleStartingWith(String prefix, Pageable pageable);
+
+	// Single statement, without the SELECT that merge() issues first
+	@Modifying
+	@Query("update Book b set b.title = ?2, b.normalizedTitle = ?4, b.description = ?3 where b.id = ?1")
+	int updateContent(long id, String title, String description, String normalizedTitle);
+
+	// Single statement, without the SELECT that deleteById() issues first
+	@Modifying
+	@Query("delete from Book b where b.id = ?1")
+	int deleteOne(long id);
+
+}
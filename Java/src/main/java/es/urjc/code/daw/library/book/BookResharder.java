@@ -0,0 +1,106 @@
+package es.urjc.code.daw.library.book;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Offline tool that copies every book from one set of shards to another with
+ * a different number of shards, routing each row by its id. The application
+ * must be stopped and the target shards must be empty; rows are copied as
+ * stored, without decompressing the descriptions. The target shards then hand
+ * out ids after every id the source shards ever handed out. Writes still
+ * waiting in the outbox of the main database (see {@link ShardedBookStore})
+ * are not copied here: the application copies them to the new shards when it
+ * starts.
+ *
+ * Run from the project directory, with the runtime class path of the build:
+ *
+ * <pre>
+ * mvn compile exec:java -Dexec.mainClass=es.urjc.code.daw.library.book.BookResharder \
+ *     -Dexec.args="jdbc:h2:file:./shards/books-%d 4 jdbc:h2:file:./shards8/books-%d 8"
+ * </pre>
+ */
+public class BookResharder {
+
+	private static final Logger log = LoggerFactory.getLogger(BookResharder.class);
+
+	private static final int BATCH_SIZE = 1000;
+
+	private static final String INSERT = "insert into book (id, title, normalized_title, description) "
+			+ "values (?, ?, ?, ?)";
+
+	public static void main(String[] args) {
+
+		if (args.length != 4) {
+			System.err.println("Usage: BookResharder <source-url-pattern> <source-count> "
+					+ "<target-url-pattern> <target-count>");
+			System.exit(1);
+		}
+
+		try (BookShards source = BookShards.open(args[0], Integer.parseInt(args[1]));
+				BookShards target = BookShards.open(args[2], Integer.parseInt(args[3]))) {
+			reshard(source, target);
+		}
+	}
+
+	/**
+	 * @return number of books copied
+	 */
+	public static long reshard(BookShards source, BookShards target) {
+
+		for (int shard = 0; shard < target.count(); shard++) {
+			Integer books = target.shard(shard).queryForObject("select count(*) from book", Integer.class);
+			if (books > 0) {
+				throw new IllegalStateException("Target shard " + shard + " is not empty");
+			}
+		}
+
+		List<List<Object[]>> batches = new ArrayList<>(target.count());
+		for (int shard = 0; shard < target.count(); shard++) {
+			batches.add(new ArrayList<>(BATCH_SIZE));
+		}
+
+		// Also counts the ids of deleted books, which must not be reused either
+		long lastId = 0;
+		for (int shard = 0; shard < source.count(); shard++) {
+			lastId = Math.max(lastId, source.nextId(shard));
+		}
+
+		long[] copied = new long[1];
+		for (int shard = 0; shard < source.count(); shard++) {
+			JdbcTemplate jdbc = source.shard(shard);
+			jdbc.setFetchSize(BATCH_SIZE);
+			jdbc.query("select id, title, normalized_title, description from book", rs -> {
+				long id = rs.getLong(1);
+				int targetShard = target.shardOf(id);
+				List<Object[]> batch = batches.get(targetShard);
+				batch.add(new Object[] { id, rs.getString(2), rs.getString(3), rs.getBytes(4) });
+				if (batch.size() == BATCH_SIZE) {
+					flush(target.shard(targetShard), batch);
+				}
+				copied[0]++;
+			});
+			log.info("Copied shard {} of {}", shard + 1, source.count());
+		}
+
+		for (int shard = 0; shard < target.count(); shard++) {
+			flush(target.shard(shard), batches.get(shard));
+		}
+		target.restartIdsAfter(lastId);
+
+		log.info("Resharded {} books from {} to {} shards", copied[0], source.count(), target.count());
+		return copied[0];
+	}
+
+	private static void flush(JdbcTemplate jdbc, List<Object[]> batch) {
+		if (!batch.isEmpty()) {
+			jdbc.batchUpdate(INSERT, batch);
+			batch.clear();
+		}
+	}
+
+}
@@ -1,10 +1,37 @@
 package es.urjc.code.daw.library.book;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import es.urjc.code.daw.library.book.BookWriteBehind.BookWrite;
+import es.urjc.code.daw.library.monitoring.BookOperationEvent;
 
 /* Este servicio se usará para incluir la funcionalidad que sea 
  * usada desde el BookRestController y el BookWebController
@@ -12,26 +39,495 @@ import org.springframework.stereotype.Service;
 @Service
 public class BookService {
 
+	private static final String ALL_BOOKS = "all";
+
+	// Tamaño máximo de cada IN (...) al buscar varios libros por id
+	private static final int ID_CHUNK_SIZE = 500;
+
 	@Autowired
-	private BookRepository repository;
+	private BookStore store;
+
+	@Autowired
+	private BookChangeRepository changeRepository;
+
+	@Autowired
+	private ApplicationEventPublisher events;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Value("${library.books.load-timeout-ms:5000}")
+	private long loadTimeoutMillis;
+
+	@Value("${library.books.write-behind.enabled:false}")
+	private boolean writeBehindEnabled;
+
+	@Value("${library.books.write-behind.capacity:10000}")
+	private int writeBehindCapacity;
+
+	@Value("${library.books.write-behind.batch-size:500}")
+	private int writeBehindBatchSize;
+
+	@Value("${library.books.write-behind.max-delay-ms:20}")
+	private long writeBehindMaxDelayMillis;
+
+	// Las peticiones concurrentes del mismo libro (o de la lista) comparten una única consulta
+	private SingleFlight<Long, Optional<Book>> bookLoads;
+
+	private SingleFlight<String, List<Book>> listLoads;
+
+	private TransactionTemplate transactions;
+
+	// Solo existe si el modo de escritura asíncrona está activado
+	private BookWriteBehind writeBehind;
+
+	@PostConstruct
+	public void init() {
+		bookLoads = new SingleFlight<>(loadTimeoutMillis);
+		listLoads = new SingleFlight<>(loadTimeoutMillis);
+		transactions = new TransactionTemplate(transactionManager);
+		createChangeSequence();
+
+		if (writeBehindEnabled) {
+			writeBehind = new BookWriteBehind(writeBehindCapacity, writeBehindBatchSize, writeBehindMaxDelayMillis,
+					this::writeBatch);
+		}
+	}
+
+	@PreDestroy
+	public void close() throws InterruptedException {
+		if (writeBehind != null) {
+			writeBehind.close();
+		}
+	}
 
 	public Optional<Book> findOne(long id) {
-		return repository.findById(id);
+		try (BookOperationEvent event = BookOperationEvent.begin("findOne", id)) {
+			Optional<Book> book;
+			BookWrite write = pendingWrite(id);
+			if (write != null) {
+				book = Optional.ofNullable(write.getBook());
+			} else {
+				book = bookLoads.load(id, () -> store.findById(id));
+			}
+			event.succeeded(book.isPresent() ? 1 : 0);
+			return book;
+		}
 	}
 	
 	public boolean exist(long id) {
-		return repository.existsById(id);
+		try (BookOperationEvent event = BookOperationEvent.begin("exist", id)) {
+			boolean exists;
+			BookWrite write = pendingWrite(id);
+			if (write != null) {
+				exists = !write.isDelete();
+			} else {
+				exists = store.existsById(id);
+			}
+			event.succeeded(exists ? 1 : 0);
+			return exists;
+		}
 	}
 
 	public List<Book> findAll() {
-		return repository.findAll();
+		try (BookOperationEvent event = BookOperationEvent.begin("findAll")) {
+			List<Book> books = withPendingWrites(findAllCommitted(), pendingWrites());
+			event.succeeded(books.size());
+			return books;
+		}
+	}
+
+	/*
+	 * Solo lo confirmado en el almacén, sin las escrituras encoladas, para
+	 * lo que se construye a partir de los eventos de commit (la instantánea
+	 * del catálogo): una escritura encolada aún puede fallar.
+	 */
+	public List<Book> findAllCommitted() {
+		return listLoads.load(ALL_BOOKS, () -> Collections.unmodifiableList(store.findAll()));
+	}
+
+	public boolean hasPendingWrites() {
+		return writeBehind != null && writeBehind.hasPending();
+	}
+
+	// Listado sin descripciones, para las vistas que solo muestran el título
+	public List<BookSummary> findAllSummaries() {
+		try (BookOperationEvent event = BookOperationEvent.begin("findAllSummaries")) {
+			List<BookSummary> summaries = store.findAllSummaries();
+			event.succeeded(summaries.size());
+			return summaries;
+		}
+	}
+
+	// Filtrado, orden y límite se resuelven en la base de datos cuando el almacén lo permite
+	public List<Book> findPage(BookQuery query) {
+		try (BookOperationEvent event = BookOperationEvent.begin("findPage")) {
+			Map<Long, BookWrite> pending = pendingWrites();
+			List<Book> books;
+			if (pending.isEmpty()) {
+				books = store.findPage(query);
+			} else {
+				books = findPage(query, pending);
+			}
+			event.succeeded(books.size());
+			return books;
+		}
 	}
 
+	/*
+	 * Busca varios libros con consultas IN por bloques, conservando el orden
+	 * pedido y devolviendo aparte los ids que no existen.
+	 */
+	public BookLookup findAllById(List<Long> ids) {
+
+		try (BookOperationEvent event = BookOperationEvent.begin("findAllById")) {
+
+			List<Long> distinctIds = new ArrayList<>(new LinkedHashSet<>(ids));
+
+			Map<Long, Book> found = new HashMap<>();
+			for (int from = 0; from < distinctIds.size(); from += ID_CHUNK_SIZE) {
+				List<Long> chunk = distinctIds.subList(from, Math.min(from + ID_CHUNK_SIZE, distinctIds.size()));
+				for (Book book : store.findAllById(chunk)) {
+					found.put(book.getId(), book);
+				}
+			}
+
+			Map<Long, BookWrite> pending = pendingWrites();
+			List<Book> books = new ArrayList<>();
+			List<Long> missing = new ArrayList<>();
+			for (Long id : distinctIds) {
+				Book book = withPendingWrite(found.get(id), pending);
+				if (book != null) {
+					books.add(book);
+				} else {
+					missing.add(id);
+				}
+			}
+
+			event.succeeded(books.size());
+			return new BookLookup(books, missing);
+		}
+	}
+
+	@Transactional
 	public Book save(Book book) {
-		return repository.save(book);
+		try (BookOperationEvent event = BookOperationEvent.begin("save")) {
+			Book saved = store.save(book);
+			changed(saved.getId(), false, saved.getTitle());
+			event.succeeded(1);
+			return saved;
+		}
+	}
+
+	/*
+	 * Con el modo asíncrono activado, las escrituras se encolan y se confirman
+	 * por lotes; el futuro se completa cuando su lote ha hecho commit. Sin él,
+	 * se escribe en el momento y se devuelve un futuro ya completado.
+	 */
+	public CompletableFuture<Book> saveAsync(Book book) {
+		if (queueWrites()) {
+			return writeBehind.save(book);
+		}
+		try {
+			return CompletableFuture.completedFuture(transactions.execute(status -> save(book)));
+		} catch (RuntimeException e) {
+			return failed(e);
+		}
+	}
+
+	public CompletableFuture<List<Book>> saveAllAsync(List<Book> books) {
+		if (!queueWrites()) {
+			try {
+				return CompletableFuture.completedFuture(transactions.execute(status -> {
+					List<Book> saved = new ArrayList<>(books.size());
+					for (Book book : books) {
+						saved.add(save(book));
+					}
+					return saved;
+				}));
+			} catch (RuntimeException e) {
+				return failed(e);
+			}
+		}
+
+		List<CompletableFuture<Book>> futures = new ArrayList<>(books.size());
+		for (Book book : books) {
+			futures.add(writeBehind.save(book));
+		}
+		return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+			List<Book> saved = new ArrayList<>(futures.size());
+			for (CompletableFuture<Book> future : futures) {
+				saved.add(future.join());
+			}
+			return saved;
+		});
+	}
+
+	public CompletableFuture<Void> deleteAsync(long id) {
+		if (queueWrites()) {
+			return writeBehind.delete(id).thenApply(book -> null);
+		}
+		try {
+			transactions.execute(status -> deleteNow(id));
+			return CompletableFuture.completedFuture(null);
+		} catch (RuntimeException e) {
+			return failed(e);
+		}
+	}
+
+	// Si quien llama ya tiene una transacción, se escribe en ella para que se confirme o se deshaga con el resto
+	private boolean queueWrites() {
+		return writeBehind != null && !TransactionSynchronizationManager.isActualTransactionActive();
+	}
+
+	/*
+	 * Actualiza título y descripción con una única sentencia UPDATE.
+	 * Devuelve el número de filas afectadas (0 si el libro no existe).
+	 * Antes espera a la escritura encolada del libro, si la hay, para que no
+	 * se confirme después y deshaga esta.
+	 */
+	public int update(long id, Book book) {
+		awaitQueuedWrite(id);
+		return transactions.execute(status -> updateNow(id, book));
+	}
+
+	private int updateNow(long id, Book book) {
+		try (BookOperationEvent event = BookOperationEvent.begin("update", id)) {
+			int updated = store.update(id, book.getTitle(), book.getDescription());
+			if (updated > 0) {
+				changed(id, false, book.getTitle());
+			}
+			event.succeeded(updated);
+			return updated;
+		}
+	}
+
+	/*
+	 * Borra el libro con una única sentencia DELETE.
+	 * Devuelve el número de filas afectadas (0 si el libro no existe).
+	 * Como update, espera antes a la escritura encolada del libro.
+	 */
+	public int delete(long id) {
+		awaitQueuedWrite(id);
+		return transactions.execute(status -> deleteNow(id));
+	}
+
+	private int deleteNow(long id) {
+		try (BookOperationEvent event = BookOperationEvent.begin("delete", id)) {
+			int deleted = store.delete(id);
+			if (deleted > 0) {
+				changed(id, true, null);
+			}
+			event.succeeded(deleted);
+			return deleted;
+		}
+	}
+
+	/*
+	 * Devuelve los cambios posteriores a "since" en orden de secuencia. Los
+	 * libros se cargan en una sola consulta para toda la página.
+	 */
+	@Transactional(readOnly = true)
+	public BookChangeSet findChanges(long since, int limit) {
+
+		try (BookOperationEvent event = BookOperationEvent.begin("findChanges")) {
+
+			Slice<BookChange> slice = changeRepository.findBySeqGreaterThan(since,
+					PageRequest.of(0, limit, Sort.by("seq")));
+
+			List<Long> liveIds = new ArrayList<>();
+			for (BookChange change : slice) {
+				if (!change.isDeleted()) {
+					liveIds.add(change.getBookId());
+				}
+			}
+
+			Map<Long, Book> books = new HashMap<>();
+			for (Book book : store.findAllById(liveIds)) {
+				books.put(book.getId(), book);
+			}
+
+			List<BookChange> changes = new ArrayList<>(slice.getContent());
+			long lastSeq = since;
+			for (BookChange change : changes) {
+				if (!change.isDeleted()) {
+					Book book = books.get(change.getBookId());
+					if (book != null) {
+						change.setBook(book);
+					} else {
+						// Borrado después de leer el log: su tombstone llegará en una página posterior
+						change.setDeleted(true);
+					}
+				}
+				lastSeq = change.getSeq();
+			}
+
+			event.succeeded(changes.size());
+			return new BookChangeSet(changes, lastSeq, slice.hasNext());
+		}
+	}
+
+	public long lastChangeSeq() {
+		return changeRepository.findLastSeq();
+	}
+
+	/*
+	 * Descarta lo que este nodo tenga guardado de libros cambiados en otro
+	 * nodo (ver BookInvalidations).
+	 */
+	public void invalidate(Collection<Long> ids) {
+		store.refresh(ids);
+		for (Long id : ids) {
+			forgetLoads(id);
+		}
+	}
+
+	private BookWrite pendingWrite(long id) {
+		return writeBehind != null ? writeBehind.find(id) : null;
+	}
+
+	// Escrituras encoladas de libros existentes, por id (los libros nuevos aún no tienen id)
+	private Map<Long, BookWrite> pendingWrites() {
+		return writeBehind != null ? writeBehind.pendingById() : Collections.emptyMap();
+	}
+
+	private static List<Book> withPendingWrites(List<Book> books, Map<Long, BookWrite> pending) {
+		if (pending.isEmpty()) {
+			return books;
+		}
+		List<Book> result = new ArrayList<>(books.size());
+		for (Book book : books) {
+			Book current = withPendingWrite(book, pending);
+			if (current != null) {
+				result.add(current);
+			}
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	// El libro tal como quedará al confirmar su escritura encolada; null si se va a borrar
+	private static Book withPendingWrite(Book stored, Map<Long, BookWrite> pending) {
+		if (stored == null) {
+			return null;
+		}
+		BookWrite write = pending.get(stored.getId());
+		if (write == null) {
+			return stored;
+		}
+		return write.isDelete() ? null : write.getBook();
+	}
+
+	/*
+	 * Página con las escrituras encoladas aplicadas: se piden al almacén
+	 * tantos libros más como escrituras haya (por los que se borran o dejan
+	 * de cumplir el filtro), más los libros que cumplen el filtro solo con su
+	 * nuevo título, y se vuelve a filtrar, ordenar y cortar.
+	 */
+	private List<Book> findPage(BookQuery query, Map<Long, BookWrite> pending) {
+
+		int limit = (int) Math.min(Integer.MAX_VALUE, (long) query.getLimit() + pending.size());
+		List<Book> stored = store.findPage(query.withLimit(limit));
+
+		Set<Long> storedIds = new HashSet<>();
+		for (Book book : stored) {
+			storedIds.add(book.getId());
+		}
+		List<Long> nowMatching = new ArrayList<>();
+		for (BookWrite write : pending.values()) {
+			if (!write.isDelete() && !storedIds.contains(write.getId()) && query.matches(write.getBook())) {
+				nowMatching.add(write.getId());
+			}
+		}
+
+		List<Book> candidates = new ArrayList<>(withPendingWrites(stored, pending));
+		if (!nowMatching.isEmpty()) {
+			candidates.addAll(withPendingWrites(store.findAllById(nowMatching), pending));
+		}
+
+		return candidates.stream()
+				.filter(query::matches)
+				.sorted(query.getSort().comparator())
+				.limit(query.getLimit())
+				.collect(Collectors.toList());
+	}
+
+	// Confirma un lote de escrituras encoladas en una única transacción
+	private List<Book> writeBatch(List<BookWrite> batch) {
+		return transactions.execute(status -> {
+			List<Book> results = new ArrayList<>(batch.size());
+			for (BookWrite write : batch) {
+				if (write.isDelete()) {
+					deleteNow(write.getId());
+					results.add(null);
+				} else {
+					results.add(save(write.getBook()));
+				}
+			}
+			return results;
+		});
+	}
+
+	/*
+	 * Fuera de la transacción: el lote que se espera necesita su propia
+	 * conexión. Si falla, no ha cambiado nada y se escribe igualmente.
+	 */
+	private void awaitQueuedWrite(long id) {
+		if (writeBehind != null) {
+			writeBehind.whenWritten(id).join();
+		}
+	}
+
+	private static <T> CompletableFuture<T> failed(Throwable e) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		future.completeExceptionally(e);
+		return future;
+	}
+
+	private void changed(long bookId, boolean deleted, String title) {
+
+		long seq = recordChange(bookId, deleted).getSeq();
+		store.recorded(bookId, seq);
+
+		// Tras el commit, para que ninguna carga nueva pueda unirse a una que lea el estado anterior
+		afterCommit(() -> forgetLoads(bookId));
+
+		events.publishEvent(new BookChangedEvent(bookId, seq, deleted, title));
+	}
+
+	private void forgetLoads(long id) {
+		bookLoads.forget(id);
+		listLoads.forget(ALL_BOOKS);
+	}
+
+	/*
+	 * La secuencia se toma al final de la escritura porque bloquea la fila del
+	 * contador hasta el commit: así los cambios se confirman en orden de
+	 * secuencia y un cliente que ya leyó una secuencia nunca se salta otra
+	 * menor que aún no se había confirmado.
+	 */
+	private BookChange recordChange(long bookId, boolean deleted) {
+		changeRepository.deleteByBookId(bookId);
+		return changeRepository.save(new BookChange(changeRepository.nextSeq(), bookId, deleted));
+	}
+
+	private void createChangeSequence() {
+		try {
+			transactions.execute(status -> changeRepository.createSequence());
+		} catch (DataIntegrityViolationException e) {
+			// Otro nodo lo ha creado a la vez
+		}
 	}
 
-	public void delete(long id) {
-		repository.deleteById(id);
+	private static void afterCommit(Runnable action) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					action.run();
+				}
+			});
+		} else {
+			action.run();
+		}
 	}
 }
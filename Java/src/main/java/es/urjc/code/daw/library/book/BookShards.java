@@ -0,0 +1,116 @@
+package es.urjc.code.daw.library.book;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * The independent databases that hold the books in the <code>sharded</code>
+ * profile. A book lives in shard <code>id mod count</code>.
+ * 
+ * Every shard hands out the ids of its own books from a database sequence
+ * striped by the shard number (it starts at the shard number and increments
+ * by the number of shards), so ids never collide across shards nor across
+ * the nodes that share them, and are never reused.
+ */
+public final class BookShards implements Closeable {
+
+	static final String SCHEMA = "create table if not exists book ("
+			+ "id bigint primary key, title varchar(255), description varbinary(150005))";
+
+	// Shards created before titles were normalized get the column on open
+	static final String[] MIGRATIONS = {
+			"alter table book add column if not exists normalized_title varchar(255)",
+			"create index if not exists book_normalized_title_idx on book (normalized_title, id)" };
+
+	static final String ID_SEQUENCE = "book_id_seq";
+
+	private final List<JdbcTemplate> shards;
+
+	private final List<DataSource> dataSources;
+
+	private BookShards(List<DataSource> dataSources) {
+		this.dataSources = dataSources;
+		int count = dataSources.size();
+		List<JdbcTemplate> shards = new ArrayList<>(count);
+		for (int shard = 0; shard < count; shard++) {
+			JdbcTemplate jdbc = new JdbcTemplate(dataSources.get(shard));
+			jdbc.execute(SCHEMA);
+			jdbc.batchUpdate(MIGRATIONS);
+			// Shards created before the sequence continue after their books
+			Long max = jdbc.queryForObject("select max(id) from book", Long.class);
+			jdbc.execute("create sequence if not exists " + ID_SEQUENCE + " start with "
+					+ firstIdAfter(max != null ? max : 0, shard, count) + " increment by " + count);
+			shards.add(jdbc);
+		}
+		this.shards = Collections.unmodifiableList(shards);
+	}
+
+	/**
+	 * Opens <code>count</code> shards. The URL pattern takes the shard number
+	 * as a <code>%d</code>, e.g. <code>jdbc:h2:mem:books-shard-%d</code>.
+	 */
+	public static BookShards open(String urlPattern, int count) {
+		if (count < 1) {
+			throw new IllegalArgumentException("At least one shard is needed");
+		}
+		List<DataSource> dataSources = new ArrayList<>(count);
+		for (int shard = 0; shard < count; shard++) {
+			dataSources.add(DataSourceBuilder.create().url(String.format(urlPattern, shard)).username("sa").build());
+		}
+		return new BookShards(dataSources);
+	}
+
+	public int count() {
+		return shards.size();
+	}
+
+	int shardOf(long id) {
+		return (int) Math.floorMod(id, (long) shards.size());
+	}
+
+	/**
+	 * A new id for a book of the given shard.
+	 */
+	long nextId(int shard) {
+		return shards.get(shard).queryForObject("select next value for " + ID_SEQUENCE, Long.class);
+	}
+
+	/**
+	 * Makes every shard hand out only ids higher than the given one.
+	 */
+	void restartIdsAfter(long id) {
+		for (int shard = 0; shard < shards.size(); shard++) {
+			shards.get(shard).execute("alter sequence " + ID_SEQUENCE + " restart with "
+					+ firstIdAfter(id, shard, shards.size()));
+		}
+	}
+
+	// The lowest id of the shard higher than "after" (and than 0)
+	static long firstIdAfter(long after, int shard, int count) {
+		long id = Math.max(after, 0) + 1;
+		return id + Math.floorMod(shard - id, (long) count);
+	}
+
+	JdbcTemplate shard(int shard) {
+		return shards.get(shard);
+	}
+
+	@Override
+	public void close() {
+		for (DataSource dataSource : dataSources) {
+			if (dataSource instanceof HikariDataSource) {
+				((HikariDataSource) dataSource).close();
+			}
+		}
+	}
+
+}
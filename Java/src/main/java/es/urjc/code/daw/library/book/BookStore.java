@@ -0,0 +1,72 @@
+package es.urjc.code.daw.library.book;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Storage of books used by {@link BookService}. The default implementation
+ * goes through JPA ({@link BookRepository}); others can be selected with
+ * Spring profiles (see {@link BookStoreConfiguration}).
+ * 
+ * Writes are always called inside a transaction opened by BookService.
+ * Implementations that keep state outside the database must apply it only
+ * once that transaction commits.
+ */
+public interface BookStore {
+
+	Optional<Book> findById(long id);
+
+	boolean existsById(long id);
+
+	List<Book> findAll();
+
+	/**
+	 * Books with the given ids, in any order. Missing ids are skipped.
+	 */
+	List<Book> findAllById(Collection<Long> ids);
+
+	List<BookSummary> findAllSummaries();
+
+	/**
+	 * Books matching the query, in its order. This default filters and sorts
+	 * {@link #findAll()} in memory; stores backed by a database run it there.
+	 */
+	default List<Book> findPage(BookQuery query) {
+		return findAll().stream()
+				.filter(query::matches)
+				.sorted(query.getSort().comparator())
+				.limit(query.getLimit())
+				.collect(Collectors.toList());
+	}
+
+	Book save(Book book);
+
+	/**
+	 * @return number of books updated (0 or 1)
+	 */
+	int update(long id, String title, String description);
+
+	/**
+	 * @return number of books deleted (0 or 1)
+	 */
+	int delete(long id);
+
+	/**
+	 * Called by BookService after each write, in the same transaction, with
+	 * the sequence its change got in the change log. Transactions commit in
+	 * sequence order, so stores that apply writes after the commit use it to
+	 * discard writes older than the ones they already applied.
+	 */
+	default void recorded(long id, long seq) {
+	}
+
+	/**
+	 * Called when the given books were changed by another node. Stores that
+	 * keep a copy of the database must reload them.
+	 */
+	default void refresh(Collection<Long> ids) {
+	}
+
+}
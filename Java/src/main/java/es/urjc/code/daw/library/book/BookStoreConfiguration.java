@@ -0,0 +1,60 @@
+package es.urjc.code.daw.library.book;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * Chooses the {@link BookStore} behind BookService:
+ * <ul>
+ * <li>default: JPA over the configured data source</li>
+ * <li><code>memory</code>: reads served from the heap, writes through JPA</li>
+ * <li><code>journal</code>: books kept in a memory-mapped append-only file</li>
+ * <li><code>sharded</code>: books spread by id over several databases</li>
+ * </ul>
+ */
+@Configuration
+public class BookStoreConfiguration {
+
+	@Bean
+	@Profile("!memory & !journal & !sharded")
+	public BookStore jpaBookStore(BookRepository repository) {
+		return new JpaBookStore(repository);
+	}
+
+	@Bean(initMethod = "load")
+	@Profile("memory")
+	public BookStore inMemoryBookStore(BookRepository repository, BookChangeRepository changeRepository) {
+		return new InMemoryBookStore(new JpaBookStore(repository), changeRepository);
+	}
+
+	@Bean(destroyMethod = "close")
+	@Profile("journal")
+	public BookStore journalBookStore(@Value("${library.books.journal.path:books.journal}") String path,
+			@Value("${library.books.journal.sync-writes:true}") boolean syncWrites,
+			@Value("${library.books.journal.compaction-interval-s:60}") long compactionIntervalSeconds,
+			@Value("${library.books.journal.compaction-waste-ratio:0.5}") double compactionWasteRatio)
+			throws IOException {
+
+		return new JournalBookStore(BookJournal.open(Paths.get(path), syncWrites), compactionIntervalSeconds,
+				compactionWasteRatio);
+	}
+
+	@Bean(destroyMethod = "close")
+	@Profile("sharded")
+	public BookStore shardedBookStore(
+			@Value("${library.books.shards.url:jdbc:h2:mem:books-shard-%d;DB_CLOSE_DELAY=-1}") String urlPattern,
+			@Value("${library.books.shards.count:4}") int count,
+			@Value("${library.books.shards.outbox-repair-interval-ms:10000}") long outboxRepairIntervalMillis,
+			DataSource dataSource) {
+
+		return new ShardedBookStore(BookShards.open(urlPattern, count), dataSource, outboxRepairIntervalMillis);
+	}
+
+}
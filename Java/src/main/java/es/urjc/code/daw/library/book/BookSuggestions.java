@@ -0,0 +1,164 @@
+package es.urjc.code.daw.library.book;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Title type-ahead. The {@link TitleTrie} is filled with the titles of every
+ * book when the application starts and then kept up to date with the
+ * committed changes of this node (which carry the new title, so no query is
+ * needed) and the invalidations received from other nodes. Until the titles
+ * are loaded, suggestions are read from the store.
+ *
+ * Every change and every read takes a ticket. The results of a read are only
+ * applied to the books that no later change or read has touched, so a slow
+ * read never puts back a title older than the one in the trie.
+ */
+@Component
+public class BookSuggestions {
+
+	private static final Logger log = LoggerFactory.getLogger(BookSuggestions.class);
+
+	@Autowired
+	private BookService service;
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final TitleTrie trie = new TitleTrie(1024);
+
+	private volatile boolean loaded;
+
+	// Último ticket que tocó cada libro; se vacía cuando no queda ninguna lectura en curso
+	private LongLongMap tickets = new LongLongMap(64);
+
+	private long lastTicket;
+
+	private int reading;
+
+	public List<BookSummary> suggest(String prefix, int limit) {
+		if (!loaded) {
+			return service.findPage(new BookQuery(prefix, BookQuery.Sort.TITLE, limit)).stream()
+					.map(book -> new BookSummary(book.getId(), book.getTitle())).collect(Collectors.toList());
+		}
+		lock.readLock().lock();
+		try {
+			return trie.suggest(prefix, limit);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void load() {
+		long ticket = startRead(Collections.emptyList());
+		List<BookSummary> books;
+		try {
+			books = service.findAllSummaries();
+		} catch (RuntimeException e) {
+			endRead(Collections.emptyList(), ticket, Collections.emptyList());
+			throw e;
+		}
+		lock.writeLock().lock();
+		try {
+			for (BookSummary book : books) {
+				if (tickets.get(book.getId()) < ticket) {
+					trie.put(book.getId(), book.getTitle());
+				}
+			}
+			loaded = true;
+			finishRead();
+		} finally {
+			lock.writeLock().unlock();
+		}
+		log.info("Loaded {} titles for suggestions", books.size());
+	}
+
+	@TransactionalEventListener
+	public void onBookChanged(BookChangedEvent event) {
+		lock.writeLock().lock();
+		try {
+			take(event.getBookId());
+			if (event.isDeleted()) {
+				trie.remove(event.getBookId());
+			} else {
+				trie.put(event.getBookId(), event.getTitle());
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	// Libros cambiados en otro nodo
+	@EventListener
+	public void onBooksInvalidated(BooksInvalidatedEvent event) {
+		long ticket = startRead(event.getBookIds());
+		List<Book> books;
+		try {
+			books = service.findAllById(new ArrayList<>(event.getBookIds())).getBooks();
+		} catch (RuntimeException e) {
+			endRead(event.getBookIds(), ticket, Collections.emptyList());
+			throw e;
+		}
+		endRead(event.getBookIds(), ticket, books);
+	}
+
+	private long startRead(Collection<Long> ids) {
+		lock.writeLock().lock();
+		try {
+			reading++;
+			long ticket = ++lastTicket;
+			for (Long id : ids) {
+				tickets.put(id, ticket);
+			}
+			return ticket;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	// Aplica lo leído solo a los libros que nadie ha tocado después
+	private void endRead(Collection<Long> ids, long ticket, List<Book> books) {
+		lock.writeLock().lock();
+		try {
+			for (Long id : ids) {
+				if (tickets.get(id) == ticket) {
+					trie.remove(id);
+				}
+			}
+			for (Book book : books) {
+				if (tickets.get(book.getId()) == ticket) {
+					trie.put(book.getId(), book.getTitle());
+				}
+			}
+			finishRead();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void take(long id) {
+		long ticket = ++lastTicket;
+		if (reading > 0) {
+			tickets.put(id, ticket);
+		}
+	}
+
+	private void finishRead() {
+		if (--reading == 0 && tickets.size() > 0) {
+			tickets = new LongLongMap(64);
+		}
+	}
+
+}
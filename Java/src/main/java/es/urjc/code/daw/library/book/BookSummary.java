@@ -0,0 +1,25 @@
+package es.urjc.code.daw.library.book;
+
+/**
+ * Id and title of a book, for listings that do not show the description.
+ */
+public class BookSummary {
+
+	private final Long id;
+
+	private final String title;
+
+	public BookSummary(Long id, String title) {
+		this.id = id;
+		this.title = title;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+}
@@ -0,0 +1,73 @@
+package es.urjc.code.daw.library.book;
+
+/**
+ * Hash table of books keyed by primitive <code>long</code> ids (see
+ * {@link LongKeyTable}). Entries live in parallel arrays instead of one object
+ * per book: titles are kept as they are and descriptions in their compressed
+ * column format.
+ * 
+ * Not thread safe; {@link InMemoryBookStore} guards it with a lock.
+ */
+final class BookTable extends LongKeyTable {
+
+	private String[] titles;
+
+	private byte[][] descriptions;
+
+	BookTable(int expectedSize) {
+		super(expectedSize);
+	}
+
+	String title(long id) {
+		int index = indexOf(id);
+		return index >= 0 ? titles[index] : null;
+	}
+
+	/**
+	 * Description in the format written by {@link CompressedTextConverter}.
+	 */
+	byte[] description(long id) {
+		int index = indexOf(id);
+		return index >= 0 ? descriptions[index] : null;
+	}
+
+	void put(long id, String title, byte[] description) {
+		int index = insert(id);
+		titles[index] = title;
+		descriptions[index] = description;
+	}
+
+	/**
+	 * All ids in ascending order.
+	 */
+	long[] ids() {
+		return keys();
+	}
+
+	@Override
+	void resize(int capacity, int[] moved) {
+		String[] oldTitles = titles;
+		byte[][] oldDescriptions = descriptions;
+		titles = new String[capacity];
+		descriptions = new byte[capacity][];
+		for (int i = 0; i < moved.length; i++) {
+			if (moved[i] >= 0) {
+				titles[moved[i]] = oldTitles[i];
+				descriptions[moved[i]] = oldDescriptions[i];
+			}
+		}
+	}
+
+	@Override
+	void move(int from, int to) {
+		titles[to] = titles[from];
+		descriptions[to] = descriptions[from];
+	}
+
+	@Override
+	void clear(int index) {
+		titles[index] = null;
+		descriptions[index] = null;
+	}
+
+}
@@ -0,0 +1,26 @@
+package es.urjc.code.daw.library.book;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Folding of titles for comparisons that ignore case and accents, so that
+ * "legion" matches "LA LEGIÓN PERDIDA" and "suenos" matches "SUEÑOS".
+ */
+public final class BookTitles {
+
+	private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+
+	private BookTitles() {
+	}
+
+	public static String normalize(String title) {
+		if (title == null) {
+			return null;
+		}
+		String decomposed = Normalizer.normalize(title, Normalizer.Form.NFD);
+		return MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+	}
+
+}
@@ -0,0 +1,344 @@
+package es.urjc.code.daw.library.book;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded in-memory queue of book writes that are committed in batches by a
+ * single background thread. A batch is flushed when it reaches the batch size
+ * or when its oldest write has waited the maximum delay, whichever happens
+ * first, so many writes share one transaction (and one log flush).
+ * 
+ * Writes to the same id are merged while they wait: only the last one reaches
+ * the database and every caller is completed when it commits. Batches are
+ * committed one after another, so writes to a book are applied in order;
+ * synchronous writes wait with {@link #whenWritten(long)} for the queued
+ * write of their book, so they are not overtaken by it either.
+ * New books (without id) are never merged. When a batch fails its writes are
+ * retried one at a time, so only the callers of the failing ones get the
+ * error.
+ */
+class BookWriteBehind {
+
+	private static final Logger log = LoggerFactory.getLogger(BookWriteBehind.class);
+
+	/**
+	 * Commits a batch in a single transaction and returns the resulting book
+	 * of every write, in the same order (<code>null</code> for deletes).
+	 */
+	interface BatchWriter {
+		List<Book> write(List<BookWrite> batch);
+	}
+
+	static final class BookWrite {
+
+		private final Long id;
+
+		private final Book book;
+
+		private final List<CompletableFuture<Book>> waiters = new ArrayList<>(1);
+
+		private BookWrite(Long id, Book book) {
+			this.id = id;
+			this.book = book;
+		}
+
+		Long getId() {
+			return id;
+		}
+
+		boolean isDelete() {
+			return book == null;
+		}
+
+		Book getBook() {
+			return book;
+		}
+	}
+
+	private final int capacity;
+
+	private final int batchSize;
+
+	private final long maxDelayNanos;
+
+	private final BatchWriter writer;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition notEmpty = lock.newCondition();
+
+	private final Condition notFull = lock.newCondition();
+
+	// Writes waiting for the next batch, merged per id. New books use a negative key.
+	private final LinkedHashMap<Long, BookWrite> pending = new LinkedHashMap<>();
+
+	// Writes taken by the flusher that are not committed yet, still visible to readers
+	private Map<Long, BookWrite> committing = new LinkedHashMap<>();
+
+	private long oldestPendingNanos;
+
+	private long nextInsertKey = -1;
+
+	private boolean running = true;
+
+	private final Thread flusher;
+
+	BookWriteBehind(int capacity, int batchSize, long maxDelayMillis, BatchWriter writer) {
+		this.capacity = capacity;
+		this.batchSize = batchSize;
+		this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+		this.writer = writer;
+		this.flusher = new Thread(this::run, "book-write-behind");
+		this.flusher.setDaemon(true);
+		this.flusher.start();
+	}
+
+	CompletableFuture<Book> save(Book book) {
+		return enqueue(book.getId(), book);
+	}
+
+	CompletableFuture<Book> delete(long id) {
+		return enqueue(id, null);
+	}
+
+	/**
+	 * Returns the write queued or being committed for the id, or
+	 * <code>null</code> if there is none, so readers can see their own writes
+	 * before they reach the database.
+	 */
+	BookWrite find(long id) {
+		lock.lock();
+		try {
+			BookWrite write = pending.get(id);
+			return write != null ? write : committing.get(id);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * The writes of existing books (those with an id) queued or being
+	 * committed, the newest one per id. Readers apply them on top of what the
+	 * store returns.
+	 */
+	Map<Long, BookWrite> pendingById() {
+		lock.lock();
+		try {
+			if (pending.isEmpty() && committing.isEmpty()) {
+				return Collections.emptyMap();
+			}
+			Map<Long, BookWrite> writes = new HashMap<>();
+			for (BookWrite write : committing.values()) {
+				if (write.id != null) {
+					writes.put(write.id, write);
+				}
+			}
+			for (BookWrite write : pending.values()) {
+				if (write.id != null) {
+					writes.put(write.id, write);
+				}
+			}
+			return writes;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Completes when the write queued or being committed for the id, if any,
+	 * has been committed or has failed.
+	 */
+	CompletableFuture<Void> whenWritten(long id) {
+		lock.lock();
+		try {
+			BookWrite write = pending.get(id);
+			if (write == null) {
+				write = committing.get(id);
+			}
+			if (write == null) {
+				return CompletableFuture.completedFuture(null);
+			}
+			// Completed with the others after the commit; a newer write to the id inherits it
+			CompletableFuture<Book> written = new CompletableFuture<>();
+			write.waiters.add(written);
+			return written.handle((book, failure) -> null);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	boolean hasPending() {
+		lock.lock();
+		try {
+			return !pending.isEmpty() || !committing.isEmpty();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Stops accepting writes and waits until everything queued is committed.
+	 * Writes enqueued afterwards fail.
+	 */
+	void close() throws InterruptedException {
+		lock.lock();
+		try {
+			running = false;
+			notEmpty.signalAll();
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		flusher.join();
+	}
+
+	private CompletableFuture<Book> enqueue(Long id, Book book) {
+
+		CompletableFuture<Book> future = new CompletableFuture<>();
+
+		lock.lock();
+		try {
+			while (running && pending.size() >= capacity && (id == null || !pending.containsKey(id))) {
+				notFull.await();
+			}
+			if (!running) {
+				// A failed future, so callers waiting on several writes still get all of them completed
+				future.completeExceptionally(new IllegalStateException("Write-behind queue is closed"));
+				return future;
+			}
+
+			if (pending.isEmpty()) {
+				oldestPendingNanos = System.nanoTime();
+			}
+
+			Long key = id != null ? id : nextInsertKey--;
+			BookWrite write = new BookWrite(id, book);
+			BookWrite previous = pending.put(key, write);
+			if (previous != null) {
+				write.waiters.addAll(previous.waiters);
+			}
+			write.waiters.add(future);
+
+			if (pending.size() >= batchSize || pending.size() == 1) {
+				notEmpty.signal();
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			future.completeExceptionally(e);
+		} finally {
+			lock.unlock();
+		}
+
+		return future;
+	}
+
+	private void run() {
+		while (true) {
+			List<BookWrite> batch = takeBatch();
+			if (batch == null) {
+				return;
+			}
+			commit(batch);
+		}
+	}
+
+	private List<BookWrite> takeBatch() {
+		lock.lock();
+		try {
+			while (pending.isEmpty()) {
+				if (!running) {
+					return null;
+				}
+				notEmpty.awaitUninterruptibly();
+			}
+
+			long waitNanos = oldestPendingNanos + maxDelayNanos - System.nanoTime();
+			while (running && pending.size() < batchSize && waitNanos > 0) {
+				try {
+					waitNanos = notEmpty.awaitNanos(waitNanos);
+				} catch (InterruptedException e) {
+					// Only close() should stop this thread: treat it as one, committing what is queued
+					log.warn("Write-behind flusher interrupted, committing the queued writes and closing");
+					running = false;
+					notFull.signalAll();
+				}
+			}
+
+			committing = new LinkedHashMap<>();
+			List<BookWrite> batch = new ArrayList<>(Math.min(pending.size(), batchSize));
+			Iterator<Map.Entry<Long, BookWrite>> it = pending.entrySet().iterator();
+			while (it.hasNext() && batch.size() < batchSize) {
+				Map.Entry<Long, BookWrite> entry = it.next();
+				batch.add(entry.getValue());
+				committing.put(entry.getKey(), entry.getValue());
+				it.remove();
+			}
+			// Whatever did not fit in the batch has already waited long enough
+			oldestPendingNanos = System.nanoTime() - maxDelayNanos;
+			notFull.signalAll();
+			return batch;
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void commit(List<BookWrite> batch) {
+
+		List<Book> results = null;
+		RuntimeException failure = null;
+		try {
+			results = writer.write(batch);
+		} catch (RuntimeException e) {
+			failure = e;
+		}
+
+		if (failure != null && batch.size() > 1) {
+			// One bad write must not fail the others: they are retried one by one
+			log.warn("Could not commit a batch of {} book writes, retrying them one by one", batch.size(), failure);
+			for (BookWrite write : batch) {
+				commit(Collections.singletonList(write));
+			}
+			return;
+		}
+		if (failure != null) {
+			log.error("Could not commit a book write", failure);
+		}
+
+		lock.lock();
+		try {
+			if (batch.size() == 1) {
+				committing.values().remove(batch.get(0));
+			} else {
+				committing = new LinkedHashMap<>();
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		for (int i = 0; i < batch.size(); i++) {
+			for (CompletableFuture<Book> waiter : batch.get(i).waiters) {
+				if (failure != null) {
+					waiter.completeExceptionally(failure);
+				} else {
+					waiter.complete(results.get(i));
+				}
+			}
+		}
+	}
+
+}
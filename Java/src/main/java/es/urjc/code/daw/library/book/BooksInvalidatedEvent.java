@@ -0,0 +1,28 @@
+package es.urjc.code.daw.library.book;
+
+import java.util.Collection;
+import java.util.Collections;
+
+/**
+ * Published by {@link BookInvalidations} after applying changes made by other
+ * nodes, once {@link BookService} already returns the new state. Caches built
+ * on top of BookService should drop or rebuild what they hold of these books.
+ */
+public class BooksInvalidatedEvent {
+
+	private final Collection<Long> bookIds;
+
+	public BooksInvalidatedEvent(Collection<Long> bookIds) {
+		this.bookIds = Collections.unmodifiableCollection(bookIds);
+	}
+
+	public Collection<Long> getBookIds() {
+		return bookIds;
+	}
+
+	@Override
+	public String toString() {
+		return "BooksInvalidatedEvent [bookIds=" + bookIds + "]";
+	}
+
+}
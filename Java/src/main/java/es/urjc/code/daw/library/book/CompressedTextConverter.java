@@ -0,0 +1,134 @@
+package es.urjc.code.daw.library.book;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Converter;
+
+/**
+ * Stores long texts deflated in a binary column. The first byte tells how the
+ * rest is encoded, so short texts (where deflate does not pay off) are kept as
+ * plain UTF-8 and both kinds of rows can live in the same column.
+ */
+@Converter
+public class CompressedTextConverter implements AttributeConverter<String, byte[]> {
+
+	static final byte PLAIN = 0;
+
+	static final byte DEFLATED = 1;
+
+	// Below this size the deflate header and the CPU cost are not worth it
+	private static final int MIN_DEFLATE_LENGTH = 256;
+
+	@Override
+	public byte[] convertToDatabaseColumn(String text) {
+
+		if (text == null) {
+			return null;
+		}
+
+		byte[] utf8 = text.getBytes(StandardCharsets.UTF_8);
+		if (utf8.length >= MIN_DEFLATE_LENGTH) {
+			byte[] deflated = deflate(utf8);
+			if (deflated.length < utf8.length) {
+				return deflated;
+			}
+		}
+
+		byte[] plain = new byte[utf8.length + 1];
+		plain[0] = PLAIN;
+		System.arraycopy(utf8, 0, plain, 1, utf8.length);
+		return plain;
+	}
+
+	@Override
+	public String convertToEntityAttribute(byte[] data) {
+
+		if (data == null) {
+			return null;
+		}
+		if (data.length == 0) {
+			return "";
+		}
+
+		switch (data[0]) {
+		case PLAIN:
+			return new String(data, 1, data.length - 1, StandardCharsets.UTF_8);
+		case DEFLATED:
+			return new String(inflate(data), StandardCharsets.UTF_8);
+		default:
+			throw new IllegalArgumentException("Unknown text encoding " + data[0]);
+		}
+	}
+
+	private static byte[] deflate(byte[] utf8) {
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		try {
+			deflater.setInput(utf8);
+			deflater.finish();
+
+			ByteArrayOutputStream out = new ByteArrayOutputStream(utf8.length / 2 + 16);
+			out.write(DEFLATED);
+			writeLength(out, utf8.length);
+
+			byte[] buffer = new byte[4096];
+			while (!deflater.finished()) {
+				out.write(buffer, 0, deflater.deflate(buffer));
+			}
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static byte[] inflate(byte[] data) {
+		if (data.length < 5) {
+			throw new IllegalArgumentException("Corrupted compressed text: missing length");
+		}
+		int length = readLength(data);
+		if (length < 0) {
+			throw new IllegalArgumentException("Corrupted compressed text: invalid length " + length);
+		}
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(data, 5, data.length - 5);
+			byte[] utf8 = new byte[length];
+			int read = 0;
+			while (read < length && !inflater.finished()) {
+				int n = inflater.inflate(utf8, read, length - read);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				read += n;
+			}
+			// A truncated text is never returned as if it were the stored one,
+			// and neither is a prefix of a longer one
+			if (read != length || !inflater.finished() && inflater.inflate(new byte[1]) > 0) {
+				throw new IllegalArgumentException(
+						"Corrupted compressed text: it does not hold the " + length + " bytes expected");
+			}
+			return utf8;
+		} catch (DataFormatException e) {
+			throw new IllegalArgumentException("Corrupted compressed text", e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	// The uncompressed length (4 bytes, big endian) lets inflate allocate once
+	private static void writeLength(ByteArrayOutputStream out, int length) {
+		out.write(length >>> 24);
+		out.write(length >>> 16);
+		out.write(length >>> 8);
+		out.write(length);
+	}
+
+	private static int readLength(byte[] data) {
+		return (data[1] & 0xff) << 24 | (data[2] & 0xff) << 16 | (data[3] & 0xff) << 8 | (data[4] & 0xff);
+	}
+
+}
@@ -0,0 +1,250 @@
+package es.urjc.code.daw.library.book;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.urjc.code.daw.library.book.StagedBookWrites.Write;
+
+/**
+ * Read-mostly store that answers every read from a {@link BookTable} in the
+ * heap, without Hibernate or JDBC. It is loaded from the database when the
+ * application starts; writes go to the database first and are applied to the
+ * table once their transaction commits.
+ * 
+ * Every book in the table carries the sequence of its last change (see
+ * {@link BookChange}) as its version. Transactions commit in sequence order,
+ * but their after-commit callbacks may run in any order, so a write is only
+ * applied when it is newer than what the table already holds.
+ * 
+ * Selected with the <code>memory</code> profile.
+ */
+class InMemoryBookStore implements BookStore {
+
+	private static final Logger log = LoggerFactory.getLogger(InMemoryBookStore.class);
+
+	// Version of the books that have no change in the log
+	private static final long UNCHANGED = 0;
+
+	private final BookStore database;
+
+	private final CompressedTextConverter descriptions = new CompressedTextConverter();
+
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final BookChangeRepository changes;
+
+	private final BookTable table = new BookTable(1024);
+
+	// Also kept for deleted books, so that a late write cannot bring them back
+	private final LongLongMap versions = new LongLongMap(1024);
+
+	InMemoryBookStore(BookStore database, BookChangeRepository changes) {
+		this.database = database;
+		this.changes = changes;
+	}
+
+	public void load() {
+		List<Book> books = database.findAll();
+		lock.writeLock().lock();
+		try {
+			for (Book book : books) {
+				refresh(book.getId(), book, UNCHANGED);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+		log.info("Loaded {} books in memory", books.size());
+	}
+
+	@Override
+	public Optional<Book> findById(long id) {
+		lock.readLock().lock();
+		try {
+			return Optional.ofNullable(get(id));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public boolean existsById(long id) {
+		lock.readLock().lock();
+		try {
+			return table.contains(id);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public List<Book> findAll() {
+		lock.readLock().lock();
+		try {
+			long[] ids = table.ids();
+			List<Book> books = new ArrayList<>(ids.length);
+			for (long id : ids) {
+				books.add(get(id));
+			}
+			return books;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public List<Book> findAllById(Collection<Long> ids) {
+		lock.readLock().lock();
+		try {
+			List<Book> books = new ArrayList<>(ids.size());
+			for (Long id : ids) {
+				Book book = get(id);
+				if (book != null) {
+					books.add(book);
+				}
+			}
+			return books;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public List<BookSummary> findAllSummaries() {
+		lock.readLock().lock();
+		try {
+			long[] ids = table.ids();
+			List<BookSummary> summaries = new ArrayList<>(ids.length);
+			for (long id : ids) {
+				summaries.add(new BookSummary(id, table.title(id)));
+			}
+			return summaries;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public Book save(Book book) {
+		Book saved = database.save(book);
+		stage(saved.getId(), copy(saved));
+		return saved;
+	}
+
+	@Override
+	public int update(long id, String title, String description) {
+		int updated = database.update(id, title, description);
+		if (updated > 0) {
+			Book book = new Book(title, description);
+			book.setId(id);
+			stage(id, book);
+		}
+		return updated;
+	}
+
+	@Override
+	public int delete(long id) {
+		int deleted = database.delete(id);
+		if (deleted > 0) {
+			stage(id, null);
+		}
+		return deleted;
+	}
+
+	@Override
+	public void recorded(long id, long seq) {
+		StagedBookWrites.recorded(this, id, seq);
+	}
+
+	@Override
+	public void refresh(Collection<Long> ids) {
+		// The sequences are read before the books, so each book is at least as
+		// new as its sequence
+		Map<Long, Long> seqs = new HashMap<>();
+		for (BookChange change : changes.findByBookIdIn(ids)) {
+			seqs.put(change.getBookId(), change.getSeq());
+		}
+		Map<Long, Book> books = new HashMap<>();
+		for (Book book : database.findAllById(ids)) {
+			books.put(book.getId(), book);
+		}
+
+		lock.writeLock().lock();
+		try {
+			for (Long id : ids) {
+				refresh(id, books.get(id), seqs.getOrDefault(id, UNCHANGED));
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private Book get(long id) {
+		String title = table.title(id);
+		if (title == null && !table.contains(id)) {
+			return null;
+		}
+		Book book = new Book(title, descriptions.convertToEntityAttribute(table.description(id)));
+		book.setId(id);
+		return book;
+	}
+
+	/*
+	 * A book read from the database is at least as new as the given version,
+	 * so it replaces a committed write with the same version.
+	 */
+	private void refresh(long id, Book book, long version) {
+		long current = versions.get(id);
+		if (current == LongLongMap.MISSING || version >= current) {
+			versions.put(id, version);
+			set(id, book);
+		}
+	}
+
+	private void apply(Map<Long, Write> writes) {
+		lock.writeLock().lock();
+		try {
+			for (Map.Entry<Long, Write> entry : writes.entrySet()) {
+				long id = entry.getKey();
+				Write write = entry.getValue();
+				long current = versions.get(id);
+				if (write.getVersion() == StagedBookWrites.UNVERSIONED) {
+					set(id, write.getBook());
+				} else if (current == LongLongMap.MISSING || write.getVersion() > current) {
+					versions.put(id, write.getVersion());
+					set(id, write.getBook());
+				} else {
+					log.debug("Skipped write of book {} with version {}, older than {}", id, write.getVersion(),
+							current);
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void set(long id, Book book) {
+		if (book != null) {
+			table.put(id, book.getTitle(), descriptions.convertToDatabaseColumn(book.getDescription()));
+		} else {
+			table.remove(id);
+		}
+	}
+
+	private void stage(long id, Book book) {
+		StagedBookWrites.stage(this, id, book, this::apply);
+	}
+
+	private static Book copy(Book book) {
+		Book copy = new Book(book.getTitle(), book.getDescription());
+		copy.setId(book.getId());
+		return copy;
+	}
+}
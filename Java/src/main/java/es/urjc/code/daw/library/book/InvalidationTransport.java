@@ -0,0 +1,29 @@
+package es.urjc.code.daw.library.book;
+
+import java.io.Closeable;
+import java.util.function.Consumer;
+
+/**
+ * Channel used by {@link BookInvalidations} to broadcast changed books to the
+ * other nodes. Delivery is at least once and in no particular order; late or
+ * repeated messages are filtered by the receiver.
+ * 
+ * Selected with <code>library.books.invalidation.transport</code>:
+ * <code>local</code> (default, {@link LocalInvalidationTransport}),
+ * <code>jdbc</code> ({@link JdbcInvalidationTransport}) or
+ * <code>none</code>. See {@link BookInvalidationConfiguration}.
+ */
+public interface InvalidationTransport extends Closeable {
+
+	void publish(BookInvalidation invalidation);
+
+	/**
+	 * Starts delivering the messages published from now on by any node,
+	 * including this one.
+	 */
+	void subscribe(Consumer<BookInvalidation> listener);
+
+	@Override
+	void close();
+
+}
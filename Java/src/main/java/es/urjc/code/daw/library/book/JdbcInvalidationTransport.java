@@ -0,0 +1,147 @@
+package es.urjc.code.daw.library.book;
+
+import java.sql.Timestamp;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Transport over a table of the shared database: every node inserts its
+ * batches and polls for the rows added since its last poll. Rows older than
+ * the retention are deleted by whichever node polls.
+ *
+ * Ids are assigned on insert but rows may commit out of order, so each poll
+ * looks back a few rows and skips the ones already delivered.
+ */
+public class JdbcInvalidationTransport implements InvalidationTransport {
+
+	private static final Logger log = LoggerFactory.getLogger(JdbcInvalidationTransport.class);
+
+	static final String SCHEMA = "create table if not exists book_invalidation ("
+			+ "id bigint auto_increment primary key, node varchar(64) not null, "
+			+ "changes clob not null, created_at timestamp not null)";
+
+	private static final int LOOKBACK = 64;
+
+	private final JdbcTemplate jdbc;
+
+	private final long pollIntervalMillis;
+
+	private final long retentionMillis;
+
+	private final List<Consumer<BookInvalidation>> listeners = new CopyOnWriteArrayList<>();
+
+	// Filas anteriores al arranque de este nodo, que no se entregan
+	private final long firstId;
+
+	// Solo los usa el hilo de sondeo
+	private long lastId;
+
+	private final Set<Long> delivered = new HashSet<>();
+
+	private long lastPurge = System.currentTimeMillis();
+
+	private final ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "book-invalidation-poller");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	public JdbcInvalidationTransport(DataSource dataSource, long pollIntervalMillis, long retentionMillis) {
+		this.jdbc = new JdbcTemplate(dataSource);
+		this.pollIntervalMillis = pollIntervalMillis;
+		this.retentionMillis = retentionMillis;
+
+		jdbc.execute(SCHEMA);
+		firstId = jdbc.queryForObject("select coalesce(max(id), 0) from book_invalidation", Long.class);
+		lastId = firstId;
+	}
+
+	@Override
+	public void publish(BookInvalidation invalidation) {
+		StringBuilder changes = new StringBuilder(invalidation.size() * 16);
+		for (int i = 0; i < invalidation.size(); i++) {
+			if (i > 0) {
+				changes.append(',');
+			}
+			changes.append(invalidation.getBookId(i)).append(':').append(invalidation.getSeq(i));
+		}
+		jdbc.update("insert into book_invalidation (node, changes, created_at) values (?, ?, ?)",
+				invalidation.getNode(), changes.toString(), new Timestamp(System.currentTimeMillis()));
+	}
+
+	@Override
+	public synchronized void subscribe(Consumer<BookInvalidation> listener) {
+		if (listeners.isEmpty()) {
+			poller.scheduleWithFixedDelay(this::poll, pollIntervalMillis, pollIntervalMillis,
+					TimeUnit.MILLISECONDS);
+		}
+		listeners.add(listener);
+	}
+
+	@Override
+	public void close() {
+		poller.shutdownNow();
+		listeners.clear();
+	}
+
+	private void poll() {
+		try {
+			jdbc.query("select id, node, changes from book_invalidation where id > ? order by id", rs -> {
+				long id = rs.getLong(1);
+				if (delivered.add(id)) {
+					deliver(parse(rs.getString(2), rs.getString(3)));
+					lastId = Math.max(lastId, id);
+				}
+			}, Math.max(firstId, lastId - LOOKBACK));
+
+			delivered.removeIf(id -> id <= lastId - LOOKBACK);
+			purge();
+
+		} catch (RuntimeException e) {
+			log.warn("Could not poll book invalidations", e);
+		}
+	}
+
+	private void deliver(BookInvalidation invalidation) {
+		for (Consumer<BookInvalidation> listener : listeners) {
+			try {
+				listener.accept(invalidation);
+			} catch (RuntimeException e) {
+				log.warn("Could not apply {}", invalidation, e);
+			}
+		}
+	}
+
+	private void purge() {
+		long now = System.currentTimeMillis();
+		if (now - lastPurge >= retentionMillis) {
+			lastPurge = now;
+			jdbc.update("delete from book_invalidation where created_at < ?", new Timestamp(now - retentionMillis));
+		}
+	}
+
+	private static BookInvalidation parse(String node, String changes) {
+		String[] entries = changes.split(",");
+		long[] bookIds = new long[entries.length];
+		long[] seqs = new long[entries.length];
+		for (int i = 0; i < entries.length; i++) {
+			int colon = entries[i].indexOf(':');
+			bookIds[i] = Long.parseLong(entries[i].substring(0, colon));
+			seqs[i] = Long.parseLong(entries[i].substring(colon + 1));
+		}
+		return new BookInvalidation(node, bookIds, seqs);
+	}
+
+}
@@ -0,0 +1,189 @@
+package es.urjc.code.daw.library.book;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import es.urjc.code.daw.library.book.StagedBookWrites.Write;
+
+/**
+ * Store that keeps books in a {@link BookJournal} instead of the database.
+ * Ids are handed out by the journal, which never reuses them. Writes are
+ * appended right before their transaction commits, in the order of their
+ * changes (see {@link StagedBookWrites}), so a write the journal rejects (for
+ * example because it is full) rolls the transaction back and reaches the
+ * client as an error. The journal is not transactional: if the database
+ * commit itself fails afterwards, or a later write of the same transaction is
+ * rejected, the writes already appended stay. The journal is compacted
+ * periodically once enough of it is dead records.
+ * 
+ * Selected with the <code>journal</code> profile.
+ */
+class JournalBookStore implements BookStore {
+
+	private static final Logger log = LoggerFactory.getLogger(JournalBookStore.class);
+
+	private final BookJournal journal;
+
+	// Version of the last write applied to each book, guarded by apply()
+	private final LongLongMap versions = new LongLongMap(1024);
+
+	private final double compactionWasteRatio;
+
+	private final ScheduledExecutorService compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "book-journal-compactor");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	JournalBookStore(BookJournal journal, long compactionIntervalSeconds, double compactionWasteRatio) {
+		this.journal = journal;
+		this.compactionWasteRatio = compactionWasteRatio;
+		compactor.scheduleWithFixedDelay(this::compact, compactionIntervalSeconds, compactionIntervalSeconds,
+				TimeUnit.SECONDS);
+	}
+
+	public void close() throws IOException {
+		compactor.shutdownNow();
+		journal.close();
+	}
+
+	@Override
+	public Optional<Book> findById(long id) {
+		return Optional.ofNullable(journal.read(id));
+	}
+
+	@Override
+	public boolean existsById(long id) {
+		return journal.contains(id);
+	}
+
+	@Override
+	public List<Book> findAll() {
+		return journal.readAll(true);
+	}
+
+	@Override
+	public List<Book> findAllById(Collection<Long> ids) {
+		List<Book> books = new ArrayList<>(ids.size());
+		for (Long id : ids) {
+			Book book = journal.read(id);
+			if (book != null) {
+				books.add(book);
+			}
+		}
+		return books;
+	}
+
+	@Override
+	public List<BookSummary> findAllSummaries() {
+		List<Book> books = journal.readAll(false);
+		List<BookSummary> summaries = new ArrayList<>(books.size());
+		for (Book book : books) {
+			summaries.add(new BookSummary(book.getId(), book.getTitle()));
+		}
+		return summaries;
+	}
+
+	@Override
+	public Book save(Book book) {
+		try {
+			if (book.getId() == null) {
+				book.setId(journal.nextId());
+			} else {
+				journal.use(book.getId());
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		Book copy = new Book(book.getTitle(), book.getDescription());
+		copy.setId(book.getId());
+		stage(book.getId(), copy);
+		return book;
+	}
+
+	@Override
+	public int update(long id, String title, String description) {
+		if (!exists(id)) {
+			return 0;
+		}
+		Book book = new Book(title, description);
+		book.setId(id);
+		stage(id, book);
+		return 1;
+	}
+
+	@Override
+	public int delete(long id) {
+		if (!exists(id)) {
+			return 0;
+		}
+		stage(id, null);
+		return 1;
+	}
+
+	@Override
+	public void recorded(long id, long seq) {
+		StagedBookWrites.recorded(this, id, seq);
+	}
+
+	// Includes the writes of the current transaction, not in the journal yet
+	private boolean exists(long id) {
+		Write staged = StagedBookWrites.find(this, id);
+		return staged != null ? staged.getBook() != null : journal.contains(id);
+	}
+
+	private void stage(long id, Book book) {
+		StagedBookWrites.stageBeforeCommit(this, id, book, this::apply);
+	}
+
+	/*
+	 * Runs before the commit: an error aborts the transaction, so the write
+	 * is never acknowledged.
+	 */
+	private synchronized void apply(Map<Long, Write> writes) {
+		for (Map.Entry<Long, Write> entry : writes.entrySet()) {
+			long id = entry.getKey();
+			Write write = entry.getValue();
+			if (write.getVersion() != StagedBookWrites.UNVERSIONED) {
+				long current = versions.get(id);
+				if (current != LongLongMap.MISSING && write.getVersion() <= current) {
+					log.debug("Skipped write of book {} with version {}, older than {}", id, write.getVersion(),
+							current);
+					continue;
+				}
+			}
+			try {
+				if (write.getBook() != null) {
+					journal.put(id, write.getBook().getTitle(), write.getBook().getDescription());
+				} else {
+					journal.delete(id);
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException("Could not write book " + id + " to the journal", e);
+			}
+			if (write.getVersion() != StagedBookWrites.UNVERSIONED) {
+				versions.put(id, write.getVersion());
+			}
+		}
+	}
+
+	private void compact() {
+		try {
+			journal.compactIfWasteful(compactionWasteRatio);
+		} catch (IOException | RuntimeException e) {
+			log.error("Could not compact the book journal", e);
+		}
+	}
+
+}
@@ -0,0 +1,69 @@
+package es.urjc.code.daw.library.book;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+class JpaBookStore implements BookStore {
+
+	private final BookRepository repository;
+
+	JpaBookStore(BookRepository repository) {
+		this.repository = repository;
+	}
+
+	@Override
+	public Optional<Book> findById(long id) {
+		return repository.findById(id);
+	}
+
+	@Override
+	public boolean existsById(long id) {
+		return repository.existsById(id);
+	}
+
+	@Override
+	public List<Book> findAll() {
+		return repository.findAll();
+	}
+
+	@Override
+	public List<Book> findAllById(Collection<Long> ids) {
+		return repository.findAllById(ids);
+	}
+
+	@Override
+	public List<BookSummary> findAllSummaries() {
+		return repository.findAllSummaries();
+	}
+
+	@Override
+	public List<Book> findPage(BookQuery query) {
+		Sort sort = query.getSort() == BookQuery.Sort.TITLE ? Sort.by("normalizedTitle", "id") : Sort.by("id");
+		Pageable page = PageRequest.of(0, query.getLimit(), sort);
+		if (query.getPrefix() == null) {
+			return repository.findAllBy(page);
+		}
+		return repository.findByNormalizedTitleStartingWith(query.getPrefix(), page);
+	}
+
+	@Override
+	public Book save(Book book) {
+		return repository.save(book);
+	}
+
+	@Override
+	public int update(long id, String title, String description) {
+		return repository.updateContent(id, title, description, BookTitles.normalize(title));
+	}
+
+	@Override
+	public int delete(long id) {
+		return repository.deleteOne(id);
+	}
+
+}
@@ -0,0 +1,33 @@
+package es.urjc.code.daw.library.book;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * In-process transport: messages are delivered synchronously to every
+ * subscriber of the same instance. Several {@link BookInvalidations} sharing
+ * one instance behave like nodes of a cluster, which is what tests need.
+ */
+public class LocalInvalidationTransport implements InvalidationTransport {
+
+	private final List<Consumer<BookInvalidation>> listeners = new CopyOnWriteArrayList<>();
+
+	@Override
+	public void publish(BookInvalidation invalidation) {
+		for (Consumer<BookInvalidation> listener : listeners) {
+			listener.accept(invalidation);
+		}
+	}
+
+	@Override
+	public void subscribe(Consumer<BookInvalidation> listener) {
+		listeners.add(listener);
+	}
+
+	@Override
+	public void close() {
+		listeners.clear();
+	}
+
+}
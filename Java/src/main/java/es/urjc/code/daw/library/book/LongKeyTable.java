@@ -0,0 +1,172 @@
+package es.urjc.code.daw.library.book;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash table keyed by primitive <code>long</code>, so neither
+ * the keys nor the lookups box them (linear probing, backward-shift deletion).
+ * Subclasses keep their values in parallel arrays indexed by slot; this class
+ * tells them when a slot is moved, cleared or the arrays are resized.
+ * 
+ * Not thread safe.
+ */
+abstract class LongKeyTable {
+
+	private static final long FREE = Long.MIN_VALUE;
+
+	private static final float MAX_LOAD = 0.6f;
+
+	private long[] keys;
+
+	private int size;
+
+	private int mask;
+
+	private int resizeAt;
+
+	LongKeyTable(int expectedSize) {
+		int capacity = 16;
+		while (capacity * MAX_LOAD <= expectedSize) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+		resize(capacity, new int[0]);
+	}
+
+	/**
+	 * Replaces the value arrays with new ones of the given capacity.
+	 * 
+	 * @param moved new slot of the entry at each slot of the old arrays, or -1
+	 *        if that slot was free
+	 */
+	abstract void resize(int capacity, int[] moved);
+
+	/**
+	 * Copies the values of a slot to another.
+	 */
+	abstract void move(int from, int to);
+
+	/**
+	 * Clears the values of a slot that is now free.
+	 */
+	abstract void clear(int index);
+
+	final int size() {
+		return size;
+	}
+
+	final boolean contains(long key) {
+		return indexOf(key) >= 0;
+	}
+
+	/**
+	 * @return the slot of the key, or -1
+	 */
+	final int indexOf(long key) {
+		if (key == FREE) {
+			return -1;
+		}
+		int index = slot(key);
+		while (keys[index] != FREE) {
+			if (keys[index] == key) {
+				return index;
+			}
+			index = (index + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the slot of the key, added to the table if it was not there
+	 */
+	final int insert(long key) {
+		if (key == FREE) {
+			throw new IllegalArgumentException("Invalid key " + key);
+		}
+		if (size >= resizeAt) {
+			rehash(keys.length * 2);
+		}
+		int index = slot(key);
+		while (keys[index] != FREE && keys[index] != key) {
+			index = (index + 1) & mask;
+		}
+		if (keys[index] == FREE) {
+			keys[index] = key;
+			size++;
+		}
+		return index;
+	}
+
+	final boolean remove(long key) {
+		int index = indexOf(key);
+		if (index < 0) {
+			return false;
+		}
+
+		// Backward-shift: move later entries of the probe chain into the gap
+		int gap = index;
+		int next = (gap + 1) & mask;
+		while (keys[next] != FREE) {
+			if (((next - slot(keys[next])) & mask) >= ((next - gap) & mask)) {
+				keys[gap] = keys[next];
+				move(next, gap);
+				gap = next;
+			}
+			next = (next + 1) & mask;
+		}
+		keys[gap] = FREE;
+		clear(gap);
+		size--;
+		return true;
+	}
+
+	/**
+	 * All keys in ascending order.
+	 */
+	final long[] keys() {
+		long[] result = new long[size];
+		int n = 0;
+		for (long key : keys) {
+			if (key != FREE) {
+				result[n++] = key;
+			}
+		}
+		Arrays.sort(result);
+		return result;
+	}
+
+	private int slot(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+
+	private void rehash(int capacity) {
+		long[] oldKeys = keys;
+		allocate(capacity);
+
+		int[] moved = new int[oldKeys.length];
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] == FREE) {
+				moved[i] = -1;
+				continue;
+			}
+			int index = slot(oldKeys[i]);
+			while (keys[index] != FREE) {
+				index = (index + 1) & mask;
+			}
+			keys[index] = oldKeys[i];
+			moved[i] = index;
+			size++;
+		}
+		resize(capacity, moved);
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		Arrays.fill(keys, FREE);
+		mask = capacity - 1;
+		resizeAt = (int) (capacity * MAX_LOAD);
+		size = 0;
+	}
+
+}
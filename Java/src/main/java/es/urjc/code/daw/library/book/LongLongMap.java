@@ -0,0 +1,52 @@
+package es.urjc.code.daw.library.book;
+
+/**
+ * Map from primitive <code>long</code> keys to <code>long</code> values. Used
+ * as the id to offset index of {@link BookJournal} and as the id to version
+ * map of {@link BookInvalidations}. Not thread safe.
+ */
+final class LongLongMap extends LongKeyTable {
+
+	static final long MISSING = -1;
+
+	private long[] values;
+
+	LongLongMap(int expectedSize) {
+		super(expectedSize);
+	}
+
+	/**
+	 * @return the value of the key, or {@link #MISSING}
+	 */
+	long get(long key) {
+		int index = indexOf(key);
+		return index >= 0 ? values[index] : MISSING;
+	}
+
+	void put(long key, long value) {
+		int index = insert(key);
+		values[index] = value;
+	}
+
+	@Override
+	void resize(int capacity, int[] moved) {
+		long[] oldValues = values;
+		values = new long[capacity];
+		for (int i = 0; i < moved.length; i++) {
+			if (moved[i] >= 0) {
+				values[moved[i]] = oldValues[i];
+			}
+		}
+	}
+
+	@Override
+	void move(int from, int to) {
+		values[to] = values[from];
+	}
+
+	@Override
+	void clear(int index) {
+		values[index] = 0;
+	}
+
+}
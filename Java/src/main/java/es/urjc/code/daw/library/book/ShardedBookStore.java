@@ -0,0 +1,409 @@
+package es.urjc.code.daw.library.book;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessResourceException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import es.urjc.code.daw.library.book.StagedBookWrites.Write;
+
+/**
+ * Store that spreads the books over several databases ({@link BookShards}).
+ * Single-book operations go to the shard of the id; listings query every
+ * shard in parallel and merge the results ordered by id.
+ *
+ * New books are assigned to shards round-robin and take their id from the
+ * sequence of their shard (see {@link BookShards}).
+ *
+ * The shards cannot join the transaction opened by BookService, so writes go
+ * through an outbox: each write is stored in the <code>book_outbox</code> table
+ * of the main database, in the same transaction as its change, and is copied
+ * to its shard right after the commit. A write whose copy fails (or whose node
+ * stops before copying it) stays in the outbox and is copied later by any node
+ * sharing the main database, so the shards always catch up with the change
+ * log. Until then, readers of that book see its previous state.
+ *
+ * The outbox keeps only the last write of each book. Copies of the same book
+ * are serialised by locking its outbox row, and each one copies whatever the
+ * row holds at that moment, so a late copy never overwrites a newer write.
+ *
+ * Selected with the <code>sharded</code> profile.
+ */
+class ShardedBookStore implements BookStore {
+
+	private static final Logger log = LoggerFactory.getLogger(ShardedBookStore.class);
+
+	static final String OUTBOX_SCHEMA = "create table if not exists book_outbox ("
+			+ "book_id bigint primary key, seq bigint not null, title varchar(255), "
+			+ "description varbinary(150005), deleted boolean not null, created_at timestamp not null)";
+
+	private static final String COLUMNS = "select id, title, description from book";
+
+	private final BookShards shards;
+
+	private final DataSource outboxDataSource;
+
+	// Joins the transaction of BookService
+	private final JdbcTemplate outbox;
+
+	private final CompressedTextConverter descriptions = new CompressedTextConverter();
+
+	private final RowMapper<Book> bookMapper = (rs, row) -> {
+		Book book = new Book(rs.getString(2), descriptions.convertToEntityAttribute(rs.getBytes(3)));
+		book.setId(rs.getLong(1));
+		return book;
+	};
+
+	private final RowMapper<BookSummary> summaryMapper = (rs, row) -> new BookSummary(rs.getLong(1),
+			rs.getString(2));
+
+	private final AtomicInteger nextShard = new AtomicInteger();
+
+	private final ExecutorService executor;
+
+	private final ScheduledExecutorService repairer = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "book-shard-outbox");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * @param outboxDataSource the main database, where the change log lives
+	 * @param repairIntervalMillis how often the writes left in the outbox for
+	 *        longer than this are copied to the shards
+	 */
+	ShardedBookStore(BookShards shards, DataSource outboxDataSource, long repairIntervalMillis) {
+		this.shards = shards;
+		this.outboxDataSource = outboxDataSource;
+		this.outbox = new JdbcTemplate(outboxDataSource);
+		int count = shards.count();
+
+		outbox.execute(OUTBOX_SCHEMA);
+
+		AtomicInteger threads = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(count, r -> {
+			Thread thread = new Thread(r, "book-shard-" + threads.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		// Al arrancar se copia todo lo que quedó pendiente
+		repairer.execute(() -> repair(0));
+		repairer.scheduleWithFixedDelay(() -> repair(repairIntervalMillis), repairIntervalMillis,
+				repairIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public void close() {
+		repairer.shutdownNow();
+		executor.shutdownNow();
+		shards.close();
+	}
+
+	@Override
+	public Optional<Book> findById(long id) {
+		List<Book> books = shardFor(id).query(COLUMNS + " where id = ?", bookMapper, id);
+		return books.isEmpty() ? Optional.empty() : Optional.of(books.get(0));
+	}
+
+	@Override
+	public boolean existsById(long id) {
+		return shardFor(id).queryForObject("select count(*) from book where id = ?", Integer.class, id) > 0;
+	}
+
+	// Includes the writes of the current transaction, not in the shard yet
+	private boolean exists(long id) {
+		Write staged = StagedBookWrites.find(this, id);
+		return staged != null ? staged.getBook() != null : existsById(id);
+	}
+
+	@Override
+	public List<Book> findAll() {
+		return merge(scatter(jdbc -> jdbc.query(COLUMNS + " order by id", bookMapper)),
+				Comparator.comparing(Book::getId));
+	}
+
+	@Override
+	public List<Book> findAllById(Collection<Long> ids) {
+
+		List<List<Long>> idsByShard = new ArrayList<>(shards.count());
+		for (int shard = 0; shard < shards.count(); shard++) {
+			idsByShard.add(new ArrayList<>());
+		}
+		for (Long id : ids) {
+			idsByShard.get(shards.shardOf(id)).add(id);
+		}
+
+		List<Future<List<Book>>> futures = new ArrayList<>(shards.count());
+		for (int shard = 0; shard < shards.count(); shard++) {
+			List<Long> shardIds = idsByShard.get(shard);
+			if (!shardIds.isEmpty()) {
+				NamedParameterJdbcTemplate jdbc = new NamedParameterJdbcTemplate(shards.shard(shard));
+				futures.add(executor.submit(() -> jdbc.query(COLUMNS + " where id in (:ids)",
+						new MapSqlParameterSource("ids", shardIds), bookMapper)));
+			}
+		}
+
+		List<Book> books = new ArrayList<>(ids.size());
+		for (List<Book> shardBooks : gather(futures)) {
+			books.addAll(shardBooks);
+		}
+		return books;
+	}
+
+	@Override
+	public List<BookSummary> findAllSummaries() {
+		return merge(scatter(jdbc -> jdbc.query("select id, title from book order by id", summaryMapper)),
+				Comparator.comparing(BookSummary::getId));
+	}
+
+	/*
+	 * Cada shard devuelve sus "limit" primeros ya ordenados; la mezcla se
+	 * corta otra vez en "limit".
+	 */
+	@Override
+	public List<Book> findPage(BookQuery query) {
+		String order = query.getSort() == BookQuery.Sort.TITLE ? " order by normalized_title, id" : " order by id";
+		List<Book> merged;
+		if (query.getPrefix() == null) {
+			merged = merge(scatter(jdbc -> jdbc.query(COLUMNS + order + " limit ?", bookMapper, query.getLimit())),
+					query.getSort().comparator());
+		} else {
+			String like = query.getPrefix().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%";
+			merged = merge(scatter(jdbc -> jdbc.query(COLUMNS + " where normalized_title like ? escape '\\'" + order
+					+ " limit ?", bookMapper, like, query.getLimit())), query.getSort().comparator());
+		}
+		return merged.size() > query.getLimit() ? new ArrayList<>(merged.subList(0, query.getLimit())) : merged;
+	}
+
+	@Override
+	public Book save(Book book) {
+		if (book.getId() == null) {
+			book.setId(shards.nextId(Math.floorMod(nextShard.getAndIncrement(), shards.count())));
+		}
+		Book copy = new Book(book.getTitle(), book.getDescription());
+		copy.setId(book.getId());
+		stage(book.getId(), copy);
+		return book;
+	}
+
+	@Override
+	public int update(long id, String title, String description) {
+		if (!exists(id)) {
+			return 0;
+		}
+		Book book = new Book(title, description);
+		book.setId(id);
+		stage(id, book);
+		return 1;
+	}
+
+	@Override
+	public int delete(long id) {
+		if (!exists(id)) {
+			return 0;
+		}
+		stage(id, null);
+		return 1;
+	}
+
+	/*
+	 * Se llama dentro de la transacción de BookService, que es la que hace
+	 * persistente la escritura en el outbox junto con su cambio.
+	 */
+	@Override
+	public void recorded(long id, long seq) {
+		StagedBookWrites.recorded(this, id, seq);
+		Write write = StagedBookWrites.find(this, id);
+		if (write == null) {
+			return;
+		}
+		Book book = write.getBook();
+		outbox.update("merge into book_outbox (book_id, seq, title, description, deleted, created_at) "
+				+ "key (book_id) values (?, ?, ?, ?, ?, ?)", id, seq, book != null ? book.getTitle() : null,
+				book != null ? descriptions.convertToDatabaseColumn(book.getDescription()) : null, book == null,
+				new Timestamp(System.currentTimeMillis()));
+	}
+
+	private void stage(long id, Book book) {
+		StagedBookWrites.stage(this, id, book, this::apply);
+	}
+
+	/*
+	 * Runs after the commit. Writes outside a transaction have no outbox row
+	 * and go straight to their shard.
+	 */
+	private void apply(Map<Long, Write> writes) {
+		for (Map.Entry<Long, Write> entry : writes.entrySet()) {
+			long id = entry.getKey();
+			Write write = entry.getValue();
+			if (write.getVersion() == StagedBookWrites.UNVERSIONED) {
+				Book book = write.getBook();
+				copy(id, book != null ? book.getTitle() : null,
+						book != null ? descriptions.convertToDatabaseColumn(book.getDescription()) : null, book == null);
+			} else {
+				try {
+					copyFromOutbox(id);
+				} catch (SQLException | DataAccessException e) {
+					log.error("Could not copy book {} to its shard, it stays in the outbox", id, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Copies to the shards the writes that have been in the outbox for longer
+	 * than the given time.
+	 */
+	void repair(long olderThanMillis) {
+		try {
+			List<Long> ids = outbox.queryForList("select book_id from book_outbox where created_at <= ?", Long.class,
+					new Timestamp(System.currentTimeMillis() - olderThanMillis));
+			for (Long id : ids) {
+				copyFromOutbox(id);
+			}
+			if (!ids.isEmpty()) {
+				log.info("Copied {} books left in the outbox to their shards", ids.size());
+			}
+		} catch (SQLException | RuntimeException e) {
+			log.error("Could not copy the books left in the outbox to their shards", e);
+		}
+	}
+
+	/*
+	 * Con su propia conexión: tras el commit la transacción de BookService
+	 * sigue asociada al hilo, y la fila bloqueada debe liberarse al terminar.
+	 */
+	private void copyFromOutbox(long id) throws SQLException {
+		try (Connection connection = outboxDataSource.getConnection()) {
+			connection.setAutoCommit(false);
+			try {
+				try (PreparedStatement select = connection.prepareStatement(
+						"select seq, title, description, deleted from book_outbox where book_id = ? for update")) {
+					select.setLong(1, id);
+					try (ResultSet rs = select.executeQuery()) {
+						if (rs.next()) {
+							long seq = rs.getLong(1);
+							copy(id, rs.getString(2), rs.getBytes(3), rs.getBoolean(4));
+							try (PreparedStatement delete = connection
+									.prepareStatement("delete from book_outbox where book_id = ? and seq = ?")) {
+								delete.setLong(1, id);
+								delete.setLong(2, seq);
+								delete.executeUpdate();
+							}
+						}
+					}
+				}
+				connection.commit();
+			} catch (SQLException | RuntimeException e) {
+				connection.rollback();
+				throw e;
+			}
+		}
+	}
+
+	private void copy(long id, String title, byte[] description, boolean deleted) {
+		if (deleted) {
+			shardFor(id).update("delete from book where id = ?", id);
+		} else {
+			shardFor(id).update(
+					"merge into book (id, title, normalized_title, description) key (id) values (?, ?, ?, ?)", id,
+					title, BookTitles.normalize(title), description);
+		}
+	}
+
+	private JdbcTemplate shardFor(long id) {
+		return shards.shard(shards.shardOf(id));
+	}
+
+	private <T> List<T> scatter(Function<JdbcTemplate, T> query) {
+		List<Future<T>> futures = new ArrayList<>(shards.count());
+		for (int shard = 0; shard < shards.count(); shard++) {
+			JdbcTemplate jdbc = shards.shard(shard);
+			futures.add(executor.submit(() -> query.apply(jdbc)));
+		}
+		return gather(futures);
+	}
+
+	private static <T> List<T> gather(List<Future<T>> futures) {
+		List<T> results = new ArrayList<>(futures.size());
+		try {
+			for (Future<T> future : futures) {
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TransientDataAccessResourceException("Interrupted while querying the book shards", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new DataAccessResourceFailureException("Could not query a book shard", e.getCause());
+		} finally {
+			for (Future<T> future : futures) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/*
+	 * Mezcla las listas ya ordenadas de cada shard en una sola con el mismo
+	 * orden.
+	 */
+	static <T> List<T> merge(List<List<T>> sorted, Comparator<? super T> order) {
+
+		if (sorted.size() == 1) {
+			return sorted.get(0);
+		}
+
+		int total = 0;
+		PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(1, sorted.size()),
+				(a, b) -> order.compare(sorted.get(a[0]).get(a[1]), sorted.get(b[0]).get(b[1])));
+		for (int list = 0; list < sorted.size(); list++) {
+			total += sorted.get(list).size();
+			if (!sorted.get(list).isEmpty()) {
+				heads.add(new int[] { list, 0 });
+			}
+		}
+
+		List<T> merged = new ArrayList<>(total);
+		while (!heads.isEmpty()) {
+			int[] head = heads.poll();
+			List<T> list = sorted.get(head[0]);
+			merged.add(list.get(head[1]));
+			if (++head[1] < list.size()) {
+				heads.add(head);
+			}
+		}
+		return merged;
+	}
+
+}
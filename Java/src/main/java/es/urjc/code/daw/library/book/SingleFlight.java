@@ -0,0 +1,82 @@
+package es.urjc.code.daw.library.book;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.dao.TransientDataAccessResourceException;
+
+/**
+ * Coalesces concurrent loads of the same key. The first caller runs the loader
+ * and every caller that arrives while it is in flight waits for it and shares
+ * its result, or its exception. Nothing is kept once the load finishes, so this
+ * is not a cache: it only collapses simultaneous misses into one query.
+ *
+ * Waiters receive the same instance as the caller that ran the loader, so
+ * results must be treated as read only.
+ */
+class SingleFlight<K, V> {
+
+	private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+	private final long timeoutMillis;
+
+	SingleFlight(long timeoutMillis) {
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	V load(K key, Supplier<V> loader) {
+
+		CompletableFuture<V> future = new CompletableFuture<>();
+		CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+
+		if (existing != null) {
+			return await(key, existing);
+		}
+
+		try {
+			V value = loader.get();
+			future.complete(value);
+			return value;
+		} catch (RuntimeException | Error e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, future);
+		}
+	}
+
+	/**
+	 * Detaches the load in flight for the key, if any, so callers arriving after
+	 * a write start a new load instead of joining one that may predate it.
+	 */
+	void forget(K key) {
+		inFlight.remove(key);
+	}
+
+	private V await(K key, CompletableFuture<V> future) {
+		try {
+			return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			throw new QueryTimeoutException("Timed out after " + timeoutMillis + " ms waiting for load of " + key, e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new TransientDataAccessResourceException("Interrupted waiting for load of " + key, e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+}
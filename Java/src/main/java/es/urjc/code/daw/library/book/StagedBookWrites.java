@@ -0,0 +1,143 @@
+package es.urjc.code.daw.library.book;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Writes of one transaction that a {@link BookStore} keeps out of its own
+ * state until the transaction commits. There is one instance per store and
+ * transaction, registered as a synchronization of it.
+ * 
+ * Stores that only mirror the database apply them after the commit. Stores
+ * that hold the books themselves stage them with
+ * {@link #stageBeforeCommit(Object, long, Book, Consumer)}: they are applied
+ * right before the commit, so a write that cannot be applied rolls the
+ * transaction back and the caller gets the error.
+ * 
+ * Each write carries the sequence of its change (see
+ * {@link BookStore#recorded(long, long)}) as its version: transactions commit
+ * in sequence order but their after-commit callbacks may run in any order, so
+ * the store must discard a write older than one it already applied.
+ */
+final class StagedBookWrites implements TransactionSynchronization {
+
+	static final long UNVERSIONED = -1;
+
+	static final class Write {
+
+		private final Book book;
+
+		private long version = UNVERSIONED;
+
+		private Write(Book book) {
+			this.book = book;
+		}
+
+		/**
+		 * @return the book, or <code>null</code> for a delete
+		 */
+		Book getBook() {
+			return book;
+		}
+
+		long getVersion() {
+			return version;
+		}
+	}
+
+	private final Object store;
+
+	private final Consumer<Map<Long, Write>> apply;
+
+	private final boolean beforeCommit;
+
+	// The last write of each book in the transaction
+	private final Map<Long, Write> writes = new LinkedHashMap<>();
+
+	private StagedBookWrites(Object store, Consumer<Map<Long, Write>> apply, boolean beforeCommit) {
+		this.store = store;
+		this.apply = apply;
+		this.beforeCommit = beforeCommit;
+	}
+
+	/**
+	 * Stages the write of a book (<code>null</code> for a delete) in the
+	 * current transaction. Outside a transaction it is applied at once,
+	 * without a version.
+	 */
+	static void stage(Object store, long id, Book book, Consumer<Map<Long, Write>> apply) {
+		stage(store, id, book, apply, false);
+	}
+
+	/**
+	 * Like {@link #stage(Object, long, Book, Consumer)}, but the writes are
+	 * applied before the commit and an exception thrown by <code>apply</code>
+	 * rolls the transaction back.
+	 */
+	static void stageBeforeCommit(Object store, long id, Book book, Consumer<Map<Long, Write>> apply) {
+		stage(store, id, book, apply, true);
+	}
+
+	private static void stage(Object store, long id, Book book, Consumer<Map<Long, Write>> apply,
+			boolean beforeCommit) {
+		StagedBookWrites staged = current(store);
+		if (staged == null && TransactionSynchronizationManager.isSynchronizationActive()) {
+			staged = new StagedBookWrites(store, apply, beforeCommit);
+			TransactionSynchronizationManager.registerSynchronization(staged);
+		}
+		if (staged != null) {
+			staged.writes.put(id, new Write(book));
+		} else {
+			Map<Long, Write> writes = new LinkedHashMap<>();
+			writes.put(id, new Write(book));
+			apply.accept(writes);
+		}
+	}
+
+	static void recorded(Object store, long id, long seq) {
+		Write write = find(store, id);
+		if (write != null) {
+			write.version = seq;
+		}
+	}
+
+	/**
+	 * @return the write of the book staged by the store in the current
+	 *         transaction, or <code>null</code>
+	 */
+	static Write find(Object store, long id) {
+		StagedBookWrites staged = current(store);
+		return staged != null ? staged.writes.get(id) : null;
+	}
+
+	private static StagedBookWrites current(Object store) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			return null;
+		}
+		for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+			if (synchronization instanceof StagedBookWrites && ((StagedBookWrites) synchronization).store == store) {
+				return (StagedBookWrites) synchronization;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void beforeCommit(boolean readOnly) {
+		if (beforeCommit) {
+			apply.accept(writes);
+		}
+	}
+
+	@Override
+	public void afterCommit() {
+		if (!beforeCommit) {
+			apply.accept(writes);
+		}
+	}
+
+}
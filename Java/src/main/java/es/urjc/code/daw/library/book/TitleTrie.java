@@ -0,0 +1,254 @@
+package es.urjc.code.daw.library.book;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Radix trie over the normalized titles of the books (see {@link BookTitles}),
+ * for type-ahead. Every edge holds a run of characters and every node the ids
+ * of the books whose normalized title ends there. Suggestions come out in
+ * alphabetical order of the normalized title, shorter titles first.
+ *
+ * Not thread safe.
+ */
+public final class TitleTrie {
+
+	private static final char[] EMPTY = new char[0];
+
+	private static final class Node {
+
+		char[] label;
+
+		// Ordenados por el primer carácter de su etiqueta
+		Node[] children;
+
+		// Ordenados; null si ningún título termina aquí
+		long[] ids;
+
+		Node(char[] label) {
+			this.label = label;
+		}
+
+		int childIndex(char first) {
+			if (children == null) {
+				return -1;
+			}
+			int low = 0;
+			int high = children.length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				char c = children[mid].label[0];
+				if (c < first) {
+					low = mid + 1;
+				} else if (c > first) {
+					high = mid - 1;
+				} else {
+					return mid;
+				}
+			}
+			return -(low + 1);
+		}
+
+		void addChild(int insertAt, Node child) {
+			if (children == null) {
+				children = new Node[] { child };
+				return;
+			}
+			Node[] grown = new Node[children.length + 1];
+			System.arraycopy(children, 0, grown, 0, insertAt);
+			grown[insertAt] = child;
+			System.arraycopy(children, insertAt, grown, insertAt + 1, children.length - insertAt);
+			children = grown;
+		}
+
+		void removeChild(int index) {
+			if (children.length == 1) {
+				children = null;
+				return;
+			}
+			Node[] shrunk = new Node[children.length - 1];
+			System.arraycopy(children, 0, shrunk, 0, index);
+			System.arraycopy(children, index + 1, shrunk, index, children.length - index - 1);
+			children = shrunk;
+		}
+
+		void addId(long id) {
+			if (ids == null) {
+				ids = new long[] { id };
+				return;
+			}
+			int index = Arrays.binarySearch(ids, id);
+			if (index >= 0) {
+				return;
+			}
+			int insertAt = -(index + 1);
+			long[] grown = new long[ids.length + 1];
+			System.arraycopy(ids, 0, grown, 0, insertAt);
+			grown[insertAt] = id;
+			System.arraycopy(ids, insertAt, grown, insertAt + 1, ids.length - insertAt);
+			ids = grown;
+		}
+
+		boolean removeId(long id) {
+			int index = ids == null ? -1 : Arrays.binarySearch(ids, id);
+			if (index < 0) {
+				return false;
+			}
+			if (ids.length == 1) {
+				ids = null;
+				return true;
+			}
+			long[] shrunk = new long[ids.length - 1];
+			System.arraycopy(ids, 0, shrunk, 0, index);
+			System.arraycopy(ids, index + 1, shrunk, index, ids.length - index - 1);
+			ids = shrunk;
+			return true;
+		}
+
+	}
+
+	private final Node root = new Node(EMPTY);
+
+	// Título original de cada libro, para devolverlo y para poder quitarlo del árbol
+	private final Map<Long, String> titles;
+
+	public TitleTrie(int expectedSize) {
+		titles = new HashMap<>(Math.max(16, (int) (expectedSize / 0.75f) + 1));
+	}
+
+	public int size() {
+		return titles.size();
+	}
+
+	public void put(long id, String title) {
+		String previous = titles.put(id, title == null ? "" : title);
+		if (previous != null) {
+			delete(root, BookTitles.normalize(previous), 0, id);
+		}
+		insert(BookTitles.normalize(title == null ? "" : title), id);
+	}
+
+	public boolean remove(long id) {
+		String title = titles.remove(id);
+		return title != null && delete(root, BookTitles.normalize(title), 0, id);
+	}
+
+	/**
+	 * Up to <code>limit</code> books whose normalized title starts with the
+	 * normalized <code>prefix</code>.
+	 */
+	public List<BookSummary> suggest(String prefix, int limit) {
+
+		String key = BookTitles.normalize(prefix);
+		Node node = root;
+		int i = 0;
+		while (i < key.length()) {
+			int index = node.childIndex(key.charAt(i));
+			if (index < 0) {
+				return new ArrayList<>(0);
+			}
+			Node child = node.children[index];
+			int common = commonPrefix(child.label, key, i);
+			if (i + common == key.length()) {
+				node = child;
+				break;
+			}
+			if (common < child.label.length) {
+				return new ArrayList<>(0);
+			}
+			node = child;
+			i += common;
+		}
+
+		List<BookSummary> suggestions = new ArrayList<>(Math.min(limit, 16));
+		collect(node, suggestions, limit);
+		return suggestions;
+	}
+
+	private void collect(Node node, List<BookSummary> suggestions, int limit) {
+		if (node.ids != null) {
+			for (long id : node.ids) {
+				if (suggestions.size() == limit) {
+					return;
+				}
+				suggestions.add(new BookSummary(id, titles.get(id)));
+			}
+		}
+		if (node.children != null) {
+			for (Node child : node.children) {
+				if (suggestions.size() == limit) {
+					return;
+				}
+				collect(child, suggestions, limit);
+			}
+		}
+	}
+
+	private void insert(String key, long id) {
+		Node node = root;
+		int i = 0;
+		while (i < key.length()) {
+			int index = node.childIndex(key.charAt(i));
+			if (index < 0) {
+				Node leaf = new Node(key.substring(i).toCharArray());
+				leaf.addId(id);
+				node.addChild(-(index + 1), leaf);
+				return;
+			}
+
+			Node child = node.children[index];
+			int common = commonPrefix(child.label, key, i);
+			if (common < child.label.length) {
+				// Parte la arista: el tramo común pasa a un nodo intermedio
+				Node middle = new Node(Arrays.copyOf(child.label, common));
+				child.label = Arrays.copyOfRange(child.label, common, child.label.length);
+				middle.children = new Node[] { child };
+				node.children[index] = middle;
+				child = middle;
+			}
+			node = child;
+			i += common;
+		}
+		node.addId(id);
+	}
+
+	private static boolean delete(Node node, String key, int i, long id) {
+		if (i == key.length()) {
+			return node.removeId(id);
+		}
+
+		int index = node.childIndex(key.charAt(i));
+		if (index < 0) {
+			return false;
+		}
+		Node child = node.children[index];
+		if (commonPrefix(child.label, key, i) < child.label.length || !delete(child, key, i + child.label.length, id)) {
+			return false;
+		}
+
+		if (child.ids == null && child.children == null) {
+			node.removeChild(index);
+		} else if (child.ids == null && child.children.length == 1) {
+			// Vuelve a unir la arista con la de su único hijo
+			Node only = child.children[0];
+			char[] label = Arrays.copyOf(child.label, child.label.length + only.label.length);
+			System.arraycopy(only.label, 0, label, child.label.length, only.label.length);
+			only.label = label;
+			node.children[index] = only;
+		}
+		return true;
+	}
+
+	private static int commonPrefix(char[] label, String key, int from) {
+		int max = Math.min(label.length, key.length() - from);
+		int common = 0;
+		while (common < max && label[common] == key.charAt(from + common)) {
+			common++;
+		}
+		return common;
+	}
+
+}
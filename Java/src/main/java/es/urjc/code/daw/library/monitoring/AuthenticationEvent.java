@@ -0,0 +1,41 @@
+package es.urjc.code.daw.library.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Evento JFR de una autenticación contra la base de datos. Separa el tiempo
+ * de buscar el usuario del de comprobar la contraseña con BCrypt, que es
+ * deliberadamente lento. Se registra también cuando la búsqueda falla.
+ */
+@Name("es.urjc.code.daw.library.Authentication")
+@Label("Authentication")
+@Category({ "Library", "Security" })
+@Description("Credentials checked by UserRepositoryAuthProvider")
+@StackTrace(false)
+public class AuthenticationEvent extends Event {
+
+	@Label("User")
+	public String user;
+
+	@Label("Success")
+	public boolean success;
+
+	// Clase de la excepción si la comprobación no llegó a terminar
+	@Label("Error")
+	public String error;
+
+	@Label("User Lookup Time")
+	@Timespan(Timespan.NANOSECONDS)
+	public long lookupTime;
+
+	@Label("Password Check Time")
+	@Timespan(Timespan.NANOSECONDS)
+	public long passwordCheckTime;
+
+}
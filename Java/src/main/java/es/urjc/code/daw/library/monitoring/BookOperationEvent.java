@@ -0,0 +1,71 @@
+package es.urjc.code.daw.library.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evento JFR de una operación de BookService, con su duración, el libro
+ * afectado (-1 si afecta a varios), el número de filas devueltas o escritas
+ * y si terminó con una excepción. Se usa con try-with-resources para que se
+ * registre también cuando la operación falla:
+ *
+ * <pre>
+ * try (BookOperationEvent event = BookOperationEvent.begin("findOne", id)) {
+ * 	...
+ * 	event.succeeded(rows);
+ * }
+ * </pre>
+ */
+@Name("es.urjc.code.daw.library.BookOperation")
+@Label("Book Operation")
+@Category({ "Library", "Books" })
+@Description("Operation of the book service")
+@StackTrace(false)
+public class BookOperationEvent extends Event implements AutoCloseable {
+
+	public static final long NO_BOOK = -1;
+
+	@Label("Operation")
+	private String operation;
+
+	@Label("Book Id")
+	private long bookId;
+
+	@Label("Rows")
+	private int rows;
+
+	@Label("Failed")
+	private boolean failed;
+
+	public static BookOperationEvent begin(String operation, long bookId) {
+		BookOperationEvent event = new BookOperationEvent();
+		if (event.isEnabled()) {
+			event.operation = operation;
+			event.bookId = bookId;
+			event.failed = true;
+			event.begin();
+		}
+		return event;
+	}
+
+	public static BookOperationEvent begin(String operation) {
+		return begin(operation, NO_BOOK);
+	}
+
+	public void succeeded(int rows) {
+		this.rows = rows;
+		this.failed = false;
+	}
+
+	@Override
+	public void close() {
+		if (isEnabled()) {
+			commit();
+		}
+	}
+
+}
@@ -0,0 +1,98 @@
+package es.urjc.code.daw.library.monitoring;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+
+/**
+ * Grabación continua de JDK Flight Recorder con un búfer circular en disco
+ * (se descarta lo más antiguo al superar la edad o el tamaño máximos), que se
+ * vuelca a fichero bajo demanda. Junto a los eventos de GC, bloqueos y E/S de
+ * la JVM recoge BookOperationEvent, AuthenticationEvent y ViewRenderEvent.
+ *
+ * Se activa con <code>library.jfr.enabled=true</code>.
+ */
+@Component
+public class FlightRecording {
+
+	private static final Logger log = LoggerFactory.getLogger(FlightRecording.class);
+
+	private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+	@Value("${library.jfr.enabled:false}")
+	private boolean enabled;
+
+	// "default" (~1% de sobrecarga) o "profile" (más detalle, ~2%)
+	@Value("${library.jfr.settings:default}")
+	private String settings;
+
+	@Value("${library.jfr.max-age-minutes:30}")
+	private long maxAgeMinutes;
+
+	@Value("${library.jfr.max-size-mb:250}")
+	private long maxSizeMegabytes;
+
+	@Value("${library.jfr.dump-dir:${java.io.tmpdir}}")
+	private String dumpDir;
+
+	private Recording recording;
+
+	@PostConstruct
+	public void start() throws IOException, ParseException {
+		if (!enabled) {
+			return;
+		}
+		recording = new Recording(Configuration.getConfiguration(settings));
+		recording.setName("library");
+		recording.setToDisk(true);
+		recording.setMaxAge(Duration.ofMinutes(maxAgeMinutes));
+		recording.setMaxSize(maxSizeMegabytes * 1024 * 1024);
+		recording.start();
+		log.info("Continuous flight recording started ({} settings, last {} min)", settings, maxAgeMinutes);
+	}
+
+	@PreDestroy
+	public synchronized void stop() {
+		if (recording != null) {
+			recording.close();
+			recording = null;
+		}
+	}
+
+	public boolean isRecording() {
+		return recording != null;
+	}
+
+	/**
+	 * Vuelca lo grabado hasta ahora a un fichero nuevo en el directorio de
+	 * volcados, sin detener la grabación. Devuelve null si no hay grabación.
+	 */
+	public synchronized Path dump() throws IOException {
+		if (recording == null) {
+			return null;
+		}
+		Path dir = Paths.get(dumpDir);
+		Files.createDirectories(dir);
+		Path file = dir.resolve("library-" + LocalDateTime.now().format(FILE_TIMESTAMP) + ".jfr");
+		recording.dump(file);
+		log.info("Flight recording dumped to {}", file);
+		return file;
+	}
+
+}
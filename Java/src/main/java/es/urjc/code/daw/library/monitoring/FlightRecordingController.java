@@ -0,0 +1,38 @@
+package es.urjc.code.daw.library.monitoring;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/admin")
+public class FlightRecordingController {
+
+	@Autowired
+	private FlightRecording recording;
+
+	// El fichero queda en el servidor, para recogerlo y abrirlo con JDK Mission Control
+	@PostMapping("/recording/dump")
+	public ResponseEntity<Map<String, Object>> dump() throws IOException {
+
+		Path file = recording.dump();
+		if (file == null) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+
+		Map<String, Object> body = new LinkedHashMap<>();
+		body.put("file", file.toAbsolutePath().toString());
+		body.put("bytes", Files.size(file));
+		return new ResponseEntity<>(body, HttpStatus.CREATED);
+	}
+
+}
@@ -0,0 +1,65 @@
+package es.urjc.code.daw.library.monitoring;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Base de los envoltorios JDBC de {@link ProfilingDataSource}: un proxy
+ * dinámico de la JDK que delega cada llamada en el objeto real salvo las que
+ * intercepta la subclase en {@link #intercept}.
+ */
+abstract class JdbcProxy implements InvocationHandler {
+
+	final Object target;
+
+	JdbcProxy(Object target) {
+		this.target = target;
+	}
+
+	static <T> T proxy(Class<T> type, JdbcProxy handler) {
+		return type.cast(Proxy.newProxyInstance(JdbcProxy.class.getClassLoader(), new Class<?>[] { type }, handler));
+	}
+
+	@Override
+	public final Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		switch (method.getName()) {
+		case "equals":
+			if (method.getParameterCount() == 1) {
+				return proxy == args[0];
+			}
+			break;
+		case "hashCode":
+			if (method.getParameterCount() == 0) {
+				return System.identityHashCode(proxy);
+			}
+			break;
+		case "toString":
+			if (method.getParameterCount() == 0) {
+				return getClass().getSimpleName() + "[" + target + "]";
+			}
+			break;
+		default:
+			break;
+		}
+		return intercept(proxy, method, args);
+	}
+
+	/**
+	 * Atiende una llamada al proxy. Por defecto la delega en el objeto real.
+	 */
+	Object intercept(Object proxy, Method method, Object[] args) throws Throwable {
+		return delegate(method, args);
+	}
+
+	final Object delegate(Method method, Object[] args) throws Throwable {
+		try {
+			return method.invoke(target, args);
+		} catch (InvocationTargetException e) {
+			// La SQLException del driver, no el envoltorio de la reflexión
+			throw e.getCause();
+		}
+	}
+
+}
@@ -0,0 +1,49 @@
+package es.urjc.code.daw.library.monitoring;
+
+import java.lang.reflect.Method;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+/**
+ * Conexión de {@link ProfilingDataSource}: delega todo en la conexión real y
+ * envuelve las sentencias que crea para medirlas.
+ */
+final class ProfilingConnection extends JdbcProxy {
+
+	final SqlProfiler profiler;
+
+	// El DataSource real, del que saca otra conexión el EXPLAIN
+	final DataSource dataSource;
+
+	private ProfilingConnection(Connection target, SqlProfiler profiler, DataSource dataSource) {
+		super(target);
+		this.profiler = profiler;
+		this.dataSource = dataSource;
+	}
+
+	static Connection wrap(Connection target, SqlProfiler profiler, DataSource dataSource) {
+		return proxy(Connection.class, new ProfilingConnection(target, profiler, dataSource));
+	}
+
+	@Override
+	Object intercept(Object proxy, Method method, Object[] args) throws Throwable {
+		switch (method.getName()) {
+		case "createStatement":
+			return ProfilingStatement.wrap(Statement.class, (Statement) delegate(method, args), null, this,
+					(Connection) proxy);
+		case "prepareStatement":
+			return ProfilingStatement.wrap(PreparedStatement.class, (Statement) delegate(method, args),
+					(String) args[0], this, (Connection) proxy);
+		case "prepareCall":
+			return ProfilingStatement.wrap(CallableStatement.class, (Statement) delegate(method, args),
+					(String) args[0], this, (Connection) proxy);
+		default:
+			return delegate(method, args);
+		}
+	}
+
+}
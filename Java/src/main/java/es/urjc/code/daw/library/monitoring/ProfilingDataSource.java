@@ -0,0 +1,50 @@
+package es.urjc.code.daw.library.monitoring;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * Envuelve las conexiones del DataSource real en {@link ProfilingConnection},
+ * que mide cada sentencia y se la pasa a {@link SqlProfiler}: el tiempo de
+ * ejecución (sin contar la lectura de los resultados), las filas modificadas
+ * o leídas y, solo si la sentencia es lenta, sus parámetros.
+ *
+ * Las consultas se registran al cerrar su ResultSet (o la sentencia), cuando
+ * ya se sabe cuántas filas se leyeron. Los envoltorios son proxies dinámicos
+ * ({@link JdbcProxy}) que solo interceptan esos métodos.
+ */
+public class ProfilingDataSource extends DelegatingDataSource implements Closeable {
+
+	private final SqlProfiler profiler;
+
+	public ProfilingDataSource(DataSource target, SqlProfiler profiler) {
+		super(target);
+		this.profiler = profiler;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return ProfilingConnection.wrap(super.getConnection(), profiler, getTargetDataSource());
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return ProfilingConnection.wrap(super.getConnection(username, password), profiler,
+				getTargetDataSource());
+	}
+
+	// El pool se cierra con la aplicación como si no estuviera envuelto
+	@Override
+	public void close() throws IOException {
+		if (getTargetDataSource() instanceof Closeable) {
+			((Closeable) getTargetDataSource()).close();
+		}
+	}
+
+}
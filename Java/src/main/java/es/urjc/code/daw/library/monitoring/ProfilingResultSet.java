@@ -0,0 +1,49 @@
+package es.urjc.code.daw.library.monitoring;
+
+import java.lang.reflect.Method;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+/**
+ * Resultado de una consulta de {@link ProfilingStatement}: cuenta las filas
+ * leídas y registra la consulta al cerrarse.
+ */
+final class ProfilingResultSet extends JdbcProxy {
+
+	private final Statement statement;
+
+	private final ProfilingStatement.Execution execution;
+
+	private ProfilingResultSet(ResultSet target, Statement statement, ProfilingStatement.Execution execution) {
+		super(target);
+		this.statement = statement;
+		this.execution = execution;
+	}
+
+	static ResultSet wrap(ResultSet target, Statement statement, ProfilingStatement.Execution execution) {
+		return proxy(ResultSet.class, new ProfilingResultSet(target, statement, execution));
+	}
+
+	@Override
+	Object intercept(Object proxy, Method method, Object[] args) throws Throwable {
+		switch (method.getName()) {
+		case "next": {
+			Object next = delegate(method, args);
+			if (Boolean.TRUE.equals(next)) {
+				execution.rows++;
+			}
+			return next;
+		}
+		case "close": {
+			Object result = delegate(method, args);
+			execution.finish();
+			return result;
+		}
+		case "getStatement":
+			return statement;
+		default:
+			return delegate(method, args);
+		}
+	}
+
+}
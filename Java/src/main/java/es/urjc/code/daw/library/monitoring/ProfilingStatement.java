@@ -0,0 +1,184 @@
+package es.urjc.code.daw.library.monitoring;
+
+import java.lang.reflect.Method;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * Sentencia de {@link ProfilingConnection}: mide cada ejecución (sin contar la
+ * lectura de los resultados) y se la pasa a {@link SqlProfiler} con las filas
+ * modificadas o leídas y, solo si es lenta, sus parámetros. Las consultas se
+ * registran al cerrar su ResultSet (o la sentencia), cuando ya se sabe cuántas
+ * filas se leyeron.
+ */
+final class ProfilingStatement extends JdbcProxy {
+
+	private final ProfilingConnection connection;
+
+	private final Connection connectionProxy;
+
+	private String sql;
+
+	private Object[] parameters = new Object[0];
+
+	private int parameterCount;
+
+	// La ejecución cuyo resultado aún se está leyendo
+	private Execution pending;
+
+	private ProfilingStatement(Statement target, String sql, ProfilingConnection connection,
+			Connection connectionProxy) {
+		super(target);
+		this.sql = sql;
+		this.connection = connection;
+		this.connectionProxy = connectionProxy;
+	}
+
+	static <S extends Statement> S wrap(Class<S> type, Statement target, String sql, ProfilingConnection connection,
+			Connection connectionProxy) {
+		return proxy(type, new ProfilingStatement(target, sql, connection, connectionProxy));
+	}
+
+	@Override
+	Object intercept(Object proxy, Method method, Object[] args) throws Throwable {
+		String name = method.getName();
+		if (name.startsWith("execute")) {
+			return execute((Statement) proxy, method, args);
+		}
+		switch (name) {
+		case "getResultSet": {
+			ResultSet resultSet = (ResultSet) delegate(method, args);
+			return resultSet != null && pending != null
+					? ProfilingResultSet.wrap(resultSet, (Statement) proxy, pending)
+					: resultSet;
+		}
+		case "getUpdateCount":
+		case "getLargeUpdateCount": {
+			Number count = (Number) delegate(method, args);
+			if (pending != null) {
+				pending.rows += Math.max(0, count.longValue());
+			}
+			return count;
+		}
+		case "close":
+			finish();
+			return delegate(method, args);
+		case "getConnection":
+			return connectionProxy;
+		case "clearParameters":
+			Arrays.fill(parameters, null);
+			parameterCount = 0;
+			return delegate(method, args);
+		default:
+			// Los set* de PreparedStatement son los parámetros por índice; los
+			// de Statement (setFetchSize...) y CallableStatement (por nombre) no
+			if (method.getDeclaringClass() == PreparedStatement.class && name.startsWith("set")
+					&& args[0] instanceof Integer) {
+				parameter((Integer) args[0], "setNull".equals(name) ? null : args[1]);
+			}
+			return delegate(method, args);
+		}
+	}
+
+	private Object execute(Statement proxy, Method method, Object[] args) throws Throwable {
+		long start = begin(args != null && args[0] instanceof String ? (String) args[0] : null);
+		Object result = delegate(method, args);
+		switch (method.getName()) {
+		case "executeQuery":
+			pending = measure(start);
+			return ProfilingResultSet.wrap((ResultSet) result, proxy, pending);
+		case "execute":
+			// Las filas se conocen con getResultSet o getUpdateCount
+			pending = measure(start);
+			return result;
+		case "executeBatch":
+		case "executeLargeBatch": {
+			Execution execution = measure(start);
+			if (result instanceof int[]) {
+				for (int count : (int[]) result) {
+					execution.rows += Math.max(0, count);
+				}
+			} else {
+				for (long count : (long[]) result) {
+					execution.rows += Math.max(0, count);
+				}
+			}
+			execution.finish();
+			return result;
+		}
+		default: {
+			Execution execution = measure(start);
+			execution.rows = ((Number) result).longValue();
+			execution.finish();
+			return result;
+		}
+		}
+	}
+
+	// Termina la ejecución anterior y empieza a medir la siguiente
+	private long begin(String executedSql) {
+		finish();
+		if (executedSql != null) {
+			sql = executedSql;
+		}
+		return System.nanoTime();
+	}
+
+	private Execution measure(long start) {
+		long nanos = System.nanoTime() - start;
+		Object[] slowParameters = connection.profiler.isSlow(nanos) ? Arrays.copyOf(parameters, parameterCount) : null;
+		return new Execution(sql, slowParameters, nanos, connection);
+	}
+
+	private void parameter(int index, Object value) {
+		if (index < 1) {
+			return;
+		}
+		if (index > parameters.length) {
+			parameters = Arrays.copyOf(parameters, Math.max(index, parameters.length * 2));
+		}
+		parameters[index - 1] = value;
+		parameterCount = Math.max(parameterCount, index);
+	}
+
+	private void finish() {
+		if (pending != null) {
+			pending.finish();
+			pending = null;
+		}
+	}
+
+	static final class Execution {
+
+		private final String sql;
+
+		private final Object[] parameters;
+
+		private final long nanos;
+
+		private final ProfilingConnection connection;
+
+		long rows;
+
+		private boolean finished;
+
+		Execution(String sql, Object[] parameters, long nanos, ProfilingConnection connection) {
+			this.sql = sql;
+			this.parameters = parameters;
+			this.nanos = nanos;
+			this.connection = connection;
+		}
+
+		void finish() {
+			if (!finished) {
+				finished = true;
+				connection.profiler.record(sql, parameters, nanos, rows, connection.dataSource);
+			}
+		}
+
+	}
+
+}
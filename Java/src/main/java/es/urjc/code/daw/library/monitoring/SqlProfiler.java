@@ -0,0 +1,317 @@
+package es.urjc.code.daw.library.monitoring;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+/**
+ * Perfil de las sentencias SQL que pasan por {@link ProfilingDataSource}:
+ * <ul>
+ * <li>Acumula tiempo de ejecución, filas y número de ejecuciones por
+ * <i>forma</i> de sentencia (el SQL con los literales sustituidos por
+ * <code>?</code>).</li>
+ * <li>Como filtro, suma las sentencias de cada petición HTTP y las registra
+ * en el log (nivel DEBUG) al terminar.</li>
+ * <li>Las sentencias que superan <code>library.sql.slow-threshold-ms</code>
+ * se registran como WARN con el endpoint. Su plan de <code>EXPLAIN</code> de
+ * H2 (como mucho uno por forma y minuto) se obtiene después en otro hilo y
+ * con otra conexión, fuera de la petición y de su transacción, y se registra
+ * aparte. Sus parámetros solo se muestran con
+ * <code>library.sql.log-parameters=true</code>, y nunca los de las tablas de
+ * usuarios, que incluyen los hashes de las contraseñas.</li>
+ * </ul>
+ * Por debajo del umbral solo cuesta una búsqueda en un mapa y unos
+ * contadores por sentencia, así que puede estar siempre activo
+ * (<code>library.sql.profiling.enabled</code>).
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+public class SqlProfiler extends OncePerRequestFilter {
+
+	private static final Logger log = LoggerFactory.getLogger(SqlProfiler.class);
+
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+
+	private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+
+	private static final Pattern IN_LIST = Pattern.compile("(?i)\\bin\\s*\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	private static final Pattern USER_TABLES = Pattern.compile("(?i)\\b(?:from|join|into|update)\\s+\"?user(?:_\\w+)?\"?(?:\\s|$|\\()");
+
+	private static final Pattern EXPLAINABLE = Pattern.compile("(?is)\\s*(select|insert|update|delete|merge)\\b.*");
+
+	private static final String OTHER_STATEMENTS = "(other statements)";
+
+	private static final long EXPLAIN_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+	private static final int MAX_PARAMETER_LENGTH = 64;
+
+	// Si se acumulan más, se descartan: ya se intentará en el siguiente minuto
+	private static final int MAX_PENDING_EXPLAINS = 16;
+
+	@Value("${library.sql.slow-threshold-ms:100}")
+	private long slowThresholdMillis;
+
+	@Value("${library.sql.explain:true}")
+	private boolean explain;
+
+	// Los parámetros pueden contener datos personales
+	@Value("${library.sql.log-parameters:false}")
+	private boolean logParameters;
+
+	@Value("${library.sql.max-shapes:1000}")
+	private int maxShapes;
+
+	private long slowThresholdNanos;
+
+	// Caché del texto exacto a su forma, para normalizar cada SQL una sola vez
+	private final Map<String, SqlShape> shapesBySql = new ConcurrentHashMap<>();
+
+	private final Map<String, SqlShape> shapes = new ConcurrentHashMap<>();
+
+	private final SqlShape otherStatements = new SqlShape(OTHER_STATEMENTS);
+
+	private final ThreadLocal<RequestProfile> currentRequest = new ThreadLocal<>();
+
+	private final ThreadPoolExecutor explainer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<>(MAX_PENDING_EXPLAINS), r -> {
+				Thread thread = new Thread(r, "sql-explain");
+				thread.setDaemon(true);
+				return thread;
+			}, new ThreadPoolExecutor.DiscardPolicy());
+
+	@PostConstruct
+	public void init() {
+		slowThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowThresholdMillis);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		explainer.shutdownNow();
+	}
+
+	boolean isSlow(long nanos) {
+		return nanos >= slowThresholdNanos;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+
+		RequestProfile profile = new RequestProfile(request);
+		currentRequest.set(profile);
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			currentRequest.remove();
+			if (profile.statements > 0 && log.isDebugEnabled()) {
+				log.debug("{}: {} SQL statements, {} rows, {} ms", profile.endpoint(), profile.statements,
+						profile.rows, millis(profile.nanos));
+			}
+		}
+	}
+
+	/**
+	 * Registra una sentencia ejecutada.
+	 *
+	 * @param parameters solo se conservan para las sentencias lentas; null en
+	 *        las demás
+	 * @param rows filas leídas o modificadas
+	 * @param dataSource el DataSource real, sin perfilar, del que se saca la
+	 *        conexión para el EXPLAIN
+	 */
+	void record(String sql, Object[] parameters, long nanos, long rows, DataSource dataSource) {
+		if (sql == null) {
+			return;
+		}
+		RequestProfile profile = currentRequest.get();
+		if (profile != null) {
+			profile.add(nanos, rows);
+		}
+
+		SqlShape shape = shapeOf(sql);
+		if (shape.add(nanos, rows)) {
+			shape.setSlowestEndpoint(profile != null ? profile.endpoint() : Thread.currentThread().getName());
+		}
+
+		if (isSlow(nanos)) {
+			slow(shape, sql, parameters, nanos, rows, profile, dataSource);
+		}
+	}
+
+	private void slow(SqlShape shape, String sql, Object[] parameters, long nanos, long rows, RequestProfile profile,
+			DataSource dataSource) {
+
+		String endpoint = profile != null ? profile.endpoint() : Thread.currentThread().getName();
+		String shownParameters = logParameters && !touchesUsers(sql) ? format(parameters) : "(hidden)";
+		log.warn("Slow SQL ({} ms, {} rows) in {}: {} with parameters {}", millis(nanos), rows, endpoint, sql,
+				shownParameters);
+
+		if (explain && dataSource != null && EXPLAINABLE.matcher(sql).matches()
+				&& shape.shouldExplain(System.currentTimeMillis(), EXPLAIN_INTERVAL_MILLIS)) {
+			explainer.execute(() -> {
+				String plan = explain(sql, parameters, dataSource);
+				if (plan != null) {
+					shape.setPlan(plan);
+					log.warn("Plan of slow SQL {}\n{}", sql, plan);
+				}
+			});
+		}
+	}
+
+	// En su propia conexión: la de la sentencia puede estar a mitad de una
+	// transacción y sigue siendo de la petición
+	private static String explain(String sql, Object[] parameters, DataSource dataSource) {
+		try (Connection connection = dataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement("EXPLAIN " + sql)) {
+			if (parameters != null) {
+				for (int i = 0; i < parameters.length; i++) {
+					statement.setObject(i + 1, parameters[i]);
+				}
+			}
+			StringBuilder plan = new StringBuilder();
+			try (ResultSet result = statement.executeQuery()) {
+				while (result.next()) {
+					if (plan.length() > 0) {
+						plan.append('\n');
+					}
+					plan.append(result.getString(1));
+				}
+			}
+			return plan.toString();
+		} catch (SQLException e) {
+			log.debug("Could not explain {}", sql, e);
+			return null;
+		}
+	}
+
+	private SqlShape shapeOf(String sql) {
+		SqlShape shape = shapesBySql.get(sql);
+		if (shape != null) {
+			return shape;
+		}
+		String text = normalize(sql);
+		shape = shapes.get(text);
+		if (shape == null) {
+			if (shapes.size() >= maxShapes) {
+				return otherStatements;
+			}
+			shape = shapes.computeIfAbsent(text, SqlShape::new);
+		}
+		// Con literales en el SQL hay muchos textos por forma; sin límite se
+		// normalizan de nuevo cada vez
+		if (shapesBySql.size() < maxShapes) {
+			shapesBySql.put(sql, shape);
+		}
+		return shape;
+	}
+
+	static boolean touchesUsers(String sql) {
+		return USER_TABLES.matcher(sql).find();
+	}
+
+	static String normalize(String sql) {
+		String shape = STRING_LITERAL.matcher(sql).replaceAll("?");
+		shape = NUMBER_LITERAL.matcher(shape).replaceAll("?");
+		shape = IN_LIST.matcher(shape).replaceAll("in (?...)");
+		return WHITESPACE.matcher(shape).replaceAll(" ").trim();
+	}
+
+	/**
+	 * Las <code>limit</code> formas de sentencia con la ejecución más lenta,
+	 * de más a menos lenta.
+	 */
+	public List<Map<String, Object>> slowest(int limit) {
+		List<SqlShape> sorted = new ArrayList<>(shapes.values());
+		if (otherStatements.getCount() > 0) {
+			sorted.add(otherStatements);
+		}
+		sorted.sort(Comparator.comparingLong(SqlShape::getMaxNanos).reversed());
+
+		List<Map<String, Object>> slowest = new ArrayList<>();
+		for (SqlShape shape : sorted.subList(0, Math.min(Math.max(0, limit), sorted.size()))) {
+			slowest.add(shape.toMap());
+		}
+		return slowest;
+	}
+
+	private static String format(Object[] parameters) {
+		if (parameters == null) {
+			return "[]";
+		}
+		Object[] shown = new Object[parameters.length];
+		for (int i = 0; i < parameters.length; i++) {
+			String value = String.valueOf(parameters[i]);
+			shown[i] = value.length() > MAX_PARAMETER_LENGTH ? value.substring(0, MAX_PARAMETER_LENGTH) + "..." : value;
+		}
+		return Arrays.toString(shown);
+	}
+
+	static double millis(long nanos) {
+		return Math.round(nanos / 1_000.0) / 1_000.0;
+	}
+
+	/*
+	 * Las sentencias de una petición. Solo la usa el hilo de la petición.
+	 */
+	private static class RequestProfile {
+
+		private final HttpServletRequest request;
+
+		private int statements;
+
+		private long rows;
+
+		private long nanos;
+
+		RequestProfile(HttpServletRequest request) {
+			this.request = request;
+		}
+
+		void add(long nanos, long rows) {
+			this.statements++;
+			this.rows += Math.max(0, rows);
+			this.nanos += nanos;
+		}
+
+		// El patrón del controlador (p. ej. /api/books/{id}) en vez de la URI,
+		// para no tener un endpoint distinto por cada id
+		String endpoint() {
+			Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+			return request.getMethod() + " " + (pattern != null ? pattern : request.getRequestURI());
+		}
+
+	}
+
+}
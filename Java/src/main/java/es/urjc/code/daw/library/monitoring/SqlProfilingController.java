@@ -0,0 +1,26 @@
+package es.urjc.code.daw.library.monitoring;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/admin/sql")
+public class SqlProfilingController {
+
+	@Autowired
+	private SqlProfiler profiler;
+
+	@GetMapping("/slowest")
+	public ResponseEntity<List<Map<String, Object>>> getSlowest(@RequestParam(defaultValue = "10") int limit) {
+		return new ResponseEntity<>(profiler.slowest(limit), HttpStatus.OK);
+	}
+
+}
@@ -0,0 +1,34 @@
+package es.urjc.code.daw.library.monitoring;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sustituye el DataSource de la aplicación por un {@link ProfilingDataSource}
+ * antes de que lo reciban JPA, JdbcTemplate o la auditoría. Se desactiva con
+ * <code>library.sql.profiling.enabled=false</code>.
+ */
+@Component
+public class SqlProfilingPostProcessor implements BeanPostProcessor {
+
+	@Value("${library.sql.profiling.enabled:true}")
+	private boolean enabled;
+
+	// Se obtiene al crear el DataSource, no al registrar este post-procesador
+	@Autowired
+	private ObjectProvider<SqlProfiler> profiler;
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) {
+		if (enabled && bean instanceof DataSource && !(bean instanceof ProfilingDataSource)) {
+			return new ProfilingDataSource((DataSource) bean, profiler.getObject());
+		}
+		return bean;
+	}
+
+}
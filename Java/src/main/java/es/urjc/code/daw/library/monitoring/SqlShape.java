@@ -0,0 +1,93 @@
+package es.urjc.code.daw.library.monitoring;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Estadísticas acumuladas de una forma de sentencia SQL. Se actualiza desde
+ * todos los hilos sin bloqueos.
+ */
+class SqlShape {
+
+	private final String sql;
+
+	private final LongAdder count = new LongAdder();
+
+	private final LongAdder totalNanos = new LongAdder();
+
+	private final LongAdder rows = new LongAdder();
+
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	private final AtomicLong lastExplainMillis = new AtomicLong(Long.MIN_VALUE);
+
+	private volatile String slowestEndpoint;
+
+	private volatile String plan;
+
+	SqlShape(String sql) {
+		this.sql = sql;
+	}
+
+	/**
+	 * @return true si es la ejecución más lenta hasta ahora
+	 */
+	boolean add(long nanos, long rows) {
+		count.increment();
+		totalNanos.add(nanos);
+		if (rows > 0) {
+			this.rows.add(rows);
+		}
+		long max = maxNanos.get();
+		while (nanos > max) {
+			if (maxNanos.compareAndSet(max, nanos)) {
+				return true;
+			}
+			max = maxNanos.get();
+		}
+		return false;
+	}
+
+	// Solo uno de los hilos que llegan a la vez obtiene true
+	boolean shouldExplain(long nowMillis, long intervalMillis) {
+		long last = lastExplainMillis.get();
+		return (last == Long.MIN_VALUE || nowMillis - last >= intervalMillis)
+				&& lastExplainMillis.compareAndSet(last, nowMillis);
+	}
+
+	void setSlowestEndpoint(String slowestEndpoint) {
+		this.slowestEndpoint = slowestEndpoint;
+	}
+
+	void setPlan(String plan) {
+		if (plan != null) {
+			this.plan = plan;
+		}
+	}
+
+	long getCount() {
+		return count.sum();
+	}
+
+	long getMaxNanos() {
+		return maxNanos.get();
+	}
+
+	Map<String, Object> toMap() {
+		long count = this.count.sum();
+		long total = totalNanos.sum();
+		Map<String, Object> map = new LinkedHashMap<>();
+		map.put("sql", sql);
+		map.put("count", count);
+		map.put("rows", rows.sum());
+		map.put("totalMillis", SqlProfiler.millis(total));
+		map.put("meanMillis", count > 0 ? SqlProfiler.millis(total / count) : 0.0);
+		map.put("maxMillis", SqlProfiler.millis(maxNanos.get()));
+		map.put("slowestEndpoint", slowestEndpoint);
+		map.put("plan", plan);
+		return map;
+	}
+
+}
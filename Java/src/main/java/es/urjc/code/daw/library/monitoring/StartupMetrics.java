@@ -0,0 +1,83 @@
+package es.urjc.code.daw.library.monitoring;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Mide, desde el arranque de la JVM, cuánto tarda la aplicación en estar
+ * lista y en servir su primera petición (la primera que termina después de
+ * estar lista). Es lo que decide lo rápido que entra en servicio un nodo
+ * nuevo al escalar.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class StartupMetrics extends OncePerRequestFilter {
+
+	private static final Logger log = LoggerFactory.getLogger(StartupMetrics.class);
+
+	private final long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+
+	private final AtomicBoolean firstRequestSeen = new AtomicBoolean();
+
+	private volatile long readyMillis = -1;
+
+	private volatile long firstRequestMillis = -1;
+
+	private volatile long firstRequestDurationMillis = -1;
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void ready() {
+		readyMillis = System.currentTimeMillis() - jvmStartMillis;
+		log.info("Ready {} ms after JVM start", readyMillis);
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+
+		if (readyMillis < 0 || firstRequestSeen.get()) {
+			chain.doFilter(request, response);
+			return;
+		}
+
+		long start = System.currentTimeMillis();
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			if (firstRequestSeen.compareAndSet(false, true)) {
+				long end = System.currentTimeMillis();
+				firstRequestDurationMillis = end - start;
+				firstRequestMillis = end - jvmStartMillis;
+				log.info("First request ({} {}) served {} ms after JVM start, in {} ms", request.getMethod(),
+						request.getRequestURI(), firstRequestMillis, firstRequestDurationMillis);
+			}
+		}
+	}
+
+	// Los valores que aún no se conocen son -1
+	public Map<String, Long> toMap() {
+		Map<String, Long> metrics = new LinkedHashMap<>();
+		metrics.put("readyMillis", readyMillis);
+		metrics.put("firstRequestMillis", firstRequestMillis);
+		metrics.put("firstRequestDurationMillis", firstRequestDurationMillis);
+		return metrics;
+	}
+
+}
@@ -0,0 +1,24 @@
+package es.urjc.code.daw.library.monitoring;
+
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/api/admin")
+public class StartupMetricsController {
+
+	@Autowired
+	private StartupMetrics metrics;
+
+	@GetMapping("/startup")
+	public ResponseEntity<Map<String, Long>> getStartup() {
+		return new ResponseEntity<>(metrics.toMap(), HttpStatus.OK);
+	}
+
+}
@@ -0,0 +1,27 @@
+package es.urjc.code.daw.library.monitoring;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Evento JFR del renderizado de una plantilla Mustache, desde que el
+ * controlador devuelve la vista hasta que la respuesta está escrita.
+ */
+@Name("es.urjc.code.daw.library.ViewRender")
+@Label("View Render")
+@Category({ "Library", "Web" })
+@Description("Rendering of a Mustache view")
+@StackTrace(false)
+public class ViewRenderEvent extends Event {
+
+	@Label("View")
+	public String view;
+
+	@Label("URI")
+	public String uri;
+
+}
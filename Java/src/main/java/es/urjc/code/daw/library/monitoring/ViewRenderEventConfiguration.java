@@ -0,0 +1,56 @@
+package es.urjc.code.daw.library.monitoring;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.ModelAndView;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class ViewRenderEventConfiguration implements WebMvcConfigurer {
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(new ViewRenderEventInterceptor());
+	}
+}
+
+/*
+ * postHandle se llama justo antes de renderizar la vista y afterCompletion
+ * después, así que el evento mide solo el renderizado.
+ */
+class ViewRenderEventInterceptor implements HandlerInterceptor {
+
+	private static final String EVENT = ViewRenderEventInterceptor.class.getName() + ".EVENT";
+
+	@Override
+	public void postHandle(HttpServletRequest request, HttpServletResponse response, Object handler,
+			ModelAndView modelAndView) throws Exception {
+
+		if (modelAndView == null || modelAndView.getViewName() == null
+				|| modelAndView.getViewName().startsWith("redirect:")) {
+			return;
+		}
+		ViewRenderEvent event = new ViewRenderEvent();
+		if (event.isEnabled()) {
+			event.view = modelAndView.getViewName();
+			event.uri = request.getRequestURI();
+			event.begin();
+			request.setAttribute(EVENT, event);
+		}
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception ex) throws Exception {
+
+		ViewRenderEvent event = (ViewRenderEvent) request.getAttribute(EVENT);
+		if (event != null) {
+			event.commit();
+		}
+	}
+
+}
@@ -0,0 +1,41 @@
+package es.urjc.code.daw.library.rest;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.http.converter.smile.MappingJackson2SmileHttpMessageConverter;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+
+/**
+ * Adds CBOR (application/cbor) and Smile (application/x-jackson-smile) to the
+ * formats the REST API can read and write. The format is chosen with the
+ * Accept and Content-Type headers; JSON is still the default.
+ * 
+ * Every mapper is built from the Spring Boot builder, so they share the same
+ * modules and settings as the JSON one, including Afterburner, which replaces
+ * reflective getter/setter calls with generated accessors.
+ */
+@Configuration
+public class BinaryFormatsConfiguration {
+
+	@Bean
+	public Module afterburnerModule() {
+		return new AfterburnerModule();
+	}
+
+	@Bean
+	public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+		return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+	}
+
+	@Bean
+	public MappingJackson2SmileHttpMessageConverter smileHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+		return new MappingJackson2SmileHttpMessageConverter(builder.factory(new SmileFactory()).build());
+	}
+
+}
@@ -1,11 +1,14 @@
 package es.urjc.code.daw.library.rest;
 
-import java.util.Collection;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
@@ -13,23 +16,106 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
 
+import es.urjc.code.daw.library.audit.AuditAction;
+import es.urjc.code.daw.library.audit.AuditChannel;
+import es.urjc.code.daw.library.audit.AuditLog;
 import es.urjc.code.daw.library.book.Book;
+import es.urjc.code.daw.library.book.BookChangeSet;
+import es.urjc.code.daw.library.book.BookLookup;
+import es.urjc.code.daw.library.book.BookQuery;
 import es.urjc.code.daw.library.book.BookService;
+import es.urjc.code.daw.library.book.BookSuggestions;
+import es.urjc.code.daw.library.book.BookSummary;
 
 @RestController
 @RequestMapping("/api/books")
 public class BookRestController {
 
+	private static final int MAX_CHANGES_PAGE = 1000;
+
+	private static final int MAX_LOOKUP_IDS = 10000;
+
+	private static final int MAX_BOOKS_PAGE = 1000;
+
+	private static final int MAX_SUGGESTIONS = 50;
+
 	@Autowired
 	private BookService service;
 
+	@Autowired
+	private CatalogueSnapshots snapshots;
+
+	@Autowired
+	private BookSuggestions suggestions;
+
+	@Autowired
+	private AuditLog auditLog;
+
 	@GetMapping("/")
-	public Collection<Book> getBooks() {
-		return service.findAll();
+	public ResponseEntity<?> getBooks(@RequestHeader HttpHeaders headers,
+			@RequestParam(required = false) String sort,
+			@RequestParam(required = false) String prefix,
+			@RequestParam(required = false) Integer limit) {
+
+		if (sort != null || prefix != null || limit != null) {
+			return findPage(sort, prefix, limit);
+		}
+
+		// The snapshot only has committed books; queued writes must be visible to whoever made them
+		CatalogueSnapshot snapshot = service.hasPendingWrites() ? null : snapshots.current();
+		if (snapshot == null || !acceptsJson(headers)) {
+			return new ResponseEntity<>(service.findAll(), HttpStatus.OK);
+		}
+
+		if (snapshot.getETag().equals(headers.getFirst(HttpHeaders.IF_NONE_MATCH))) {
+			return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(snapshot.getETag()).build();
+		}
+
+		ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+				.contentType(MediaType.APPLICATION_JSON)
+				.eTag(snapshot.getETag())
+				.header(HttpHeaders.VARY, HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING);
+
+		if (acceptsGzip(headers)) {
+			return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(snapshot.getGzip());
+		}
+		return response.body(snapshot.getJson());
+	}
+
+	@GetMapping(value = "/", params = "ids")
+	public ResponseEntity<BookLookup> getBooksById(@RequestParam List<Long> ids) {
+
+		return lookup(ids);
+	}
+
+	@PostMapping("/lookup")
+	public ResponseEntity<BookLookup> lookupBooks(@RequestBody List<Long> ids) {
+
+		return lookup(ids);
+	}
+
+	@GetMapping("/suggest")
+	public ResponseEntity<List<BookSummary>> suggest(@RequestParam String prefix,
+			@RequestParam(defaultValue = "10") int limit) {
+
+		if (limit < 1) {
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+
+		return new ResponseEntity<>(suggestions.suggest(prefix, Math.min(limit, MAX_SUGGESTIONS)), HttpStatus.OK);
+	}
+
+	@GetMapping("/changes")
+	public BookChangeSet getChanges(@RequestParam(defaultValue = "0") long since,
+			@RequestParam(defaultValue = "100") int limit) {
+
+		return service.findChanges(since, Math.max(1, Math.min(limit, MAX_CHANGES_PAGE)));
 	}
 
 	@GetMapping("/{id}")
@@ -49,16 +135,37 @@ public class BookRestController {
 	@ResponseStatus(HttpStatus.CREATED)
 	public Book createBook(@RequestBody Book book) {
 
-		return service.save(book);
+		Book saved = service.save(book);
+		auditLog.record(AuditChannel.REST, AuditAction.CREATE, saved);
+		return saved;
+	}
+
+	/*
+	 * Ingestion of many books at once. With write-behind enabled the books are
+	 * queued and committed in batches together with other concurrent writes;
+	 * the response is sent once all of them are durable.
+	 */
+	@PostMapping("/batch")
+	@ResponseStatus(HttpStatus.CREATED)
+	public CompletableFuture<List<Book>> createBooks(@RequestBody List<Book> books) {
+
+		// The batch may complete on another thread, so the user is read here
+		String user = auditLog.currentUser();
+		return service.saveAllAsync(books).thenApply(saved -> {
+			for (Book book : saved) {
+				auditLog.record(user, AuditChannel.REST, AuditAction.CREATE, book.getId(), book.getTitle());
+			}
+			return saved;
+		});
 	}
 
 	@PutMapping("/{id}")
 	public ResponseEntity<Book> updateBook(@PathVariable long id, @RequestBody Book updatedBook) {
 
-		if (service.exist(id)) {
-			
+		if (service.update(id, updatedBook) > 0) {
+
 			updatedBook.setId(id);
-			service.save(updatedBook);
+			auditLog.record(AuditChannel.REST, AuditAction.UPDATE, id, updatedBook.getTitle());
 
 			return new ResponseEntity<>(updatedBook, HttpStatus.OK);
 		} else {
@@ -69,13 +176,59 @@ public class BookRestController {
 	@DeleteMapping("/{id}")
 	public ResponseEntity<Book> deleteBook(@PathVariable long id) {
 
-		try {
-			service.delete(id);
+		if (service.delete(id) > 0) {
+			auditLog.record(AuditChannel.REST, AuditAction.DELETE, id, null);
 			return new ResponseEntity<>(null, HttpStatus.OK);
-
-		} catch (EmptyResultDataAccessException e) {
+		} else {
 			return new ResponseEntity<>(null, HttpStatus.NOT_FOUND);
 		}
 	}
 
+	// Orden, filtro por prefijo del título y límite resueltos en la base de datos
+	private ResponseEntity<?> findPage(String sort, String prefix, Integer limit) {
+
+		BookQuery.Sort order;
+		if (sort == null || sort.equals("id")) {
+			order = BookQuery.Sort.ID;
+		} else if (sort.equals("title")) {
+			order = BookQuery.Sort.TITLE;
+		} else {
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+
+		if (limit != null && limit < 1) {
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+		int pageSize = limit == null ? MAX_BOOKS_PAGE : Math.min(limit, MAX_BOOKS_PAGE);
+
+		return new ResponseEntity<>(service.findPage(new BookQuery(prefix, order, pageSize)), HttpStatus.OK);
+	}
+
+	private ResponseEntity<BookLookup> lookup(List<Long> ids) {
+
+		if (ids.size() > MAX_LOOKUP_IDS || ids.contains(null)) {
+			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+		}
+
+		return new ResponseEntity<>(service.findAllById(ids), HttpStatus.OK);
+	}
+
+	private static boolean acceptsJson(HttpHeaders headers) {
+		List<MediaType> accept = new ArrayList<>(headers.getAccept());
+		if (accept.isEmpty()) {
+			return true;
+		}
+		MediaType.sortBySpecificityAndQuality(accept);
+		return accept.get(0).isCompatibleWith(MediaType.APPLICATION_JSON);
+	}
+
+	private static boolean acceptsGzip(HttpHeaders headers) {
+		for (String encoding : headers.getValuesAsList(HttpHeaders.ACCEPT_ENCODING)) {
+			if (encoding.trim().toLowerCase().startsWith("gzip") && !encoding.replace(" ", "").endsWith(";q=0")) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 }
@@ -0,0 +1,72 @@
+package es.urjc.code.daw.library.rest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.util.DigestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import es.urjc.code.daw.library.book.Book;
+
+/**
+ * Immutable, already serialized copy of the whole catalogue as returned by
+ * <code>GET /api/books/</code>, in plain and gzip encoded JSON.
+ * 
+ * The byte arrays are handed out without copying so they can be written
+ * straight to the response. They must never be modified.
+ */
+final class CatalogueSnapshot {
+
+	private final long version;
+
+	private final byte[] json;
+
+	private final byte[] gzip;
+
+	private final String eTag;
+
+	private CatalogueSnapshot(long version, byte[] json, byte[] gzip) {
+		this.version = version;
+		this.json = json;
+		this.gzip = gzip;
+		this.eTag = "\"" + DigestUtils.md5DigestAsHex(json) + "\"";
+	}
+
+	static CatalogueSnapshot of(long version, List<Book> books, ObjectMapper mapper) {
+		try {
+			byte[] json = mapper.writeValueAsBytes(books);
+			return new CatalogueSnapshot(version, json, gzip(json));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	long getVersion() {
+		return version;
+	}
+
+	byte[] getJson() {
+		return json;
+	}
+
+	byte[] getGzip() {
+		return gzip;
+	}
+
+	String getETag() {
+		return eTag;
+	}
+
+	private static byte[] gzip(byte[] data) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+			gzip.write(data);
+		}
+		return out.toByteArray();
+	}
+
+}
@@ -0,0 +1,122 @@
+package es.urjc.code.daw.library.rest;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import es.urjc.code.daw.library.book.BookChangedEvent;
+import es.urjc.code.daw.library.book.BookService;
+import es.urjc.code.daw.library.book.BooksInvalidatedEvent;
+
+/**
+ * Keeps the current {@link CatalogueSnapshot}. Every committed write bumps the
+ * version and schedules a rebuild in a background thread; the new snapshot
+ * replaces the old one with a single atomic swap. Readers never wait for a
+ * rebuild: while the snapshot is behind the last write they get
+ * <code>null</code> and serialize the list themselves. Changes made by other
+ * nodes arrive as a {@link BooksInvalidatedEvent} and are handled the same way.
+ */
+@Component
+public class CatalogueSnapshots {
+
+	private static final Logger log = LoggerFactory.getLogger(CatalogueSnapshots.class);
+
+	@Autowired
+	private BookService service;
+
+	@Autowired
+	private ObjectMapper mapper;
+
+	private final AtomicReference<CatalogueSnapshot> current = new AtomicReference<>();
+
+	private final AtomicLong writeVersion = new AtomicLong();
+
+	private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+		Thread thread = new Thread(r, "catalogue-snapshot");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Returns the snapshot if it reflects every committed write, or
+	 * <code>null</code> (and schedules a rebuild) if it does not.
+	 */
+	CatalogueSnapshot current() {
+		CatalogueSnapshot snapshot = current.get();
+		if (snapshot == null || snapshot.getVersion() != writeVersion.get()) {
+			requestRebuild();
+			return null;
+		}
+		return snapshot;
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void onReady() {
+		requestRebuild();
+	}
+
+	@TransactionalEventListener
+	public void onBookChanged(BookChangedEvent event) {
+		writeVersion.incrementAndGet();
+		requestRebuild();
+	}
+
+	// Libros cambiados en otro nodo
+	@EventListener
+	public void onBooksInvalidated(BooksInvalidatedEvent event) {
+		writeVersion.incrementAndGet();
+		requestRebuild();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	private void requestRebuild() {
+		if (rebuilding.compareAndSet(false, true)) {
+			executor.execute(this::rebuild);
+		}
+	}
+
+	private void rebuild() {
+
+		boolean built = false;
+		try {
+			long version;
+			do {
+				version = writeVersion.get();
+				current.set(CatalogueSnapshot.of(version, service.findAllCommitted(), mapper));
+			} while (version != writeVersion.get());
+			built = true;
+
+		} catch (RuntimeException e) {
+			log.warn("Could not rebuild the catalogue snapshot", e);
+
+		} finally {
+			rebuilding.set(false);
+		}
+
+		// A write may have arrived between the last check and releasing the flag
+		if (built && current.get().getVersion() != writeVersion.get()) {
+			requestRebuild();
+		}
+	}
+
+}
@@ -0,0 +1,178 @@
+package es.urjc.code.daw.library.security;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * Self-tuning limit of concurrent requests (AIMD). Latencies are collected in
+ * sampling windows, in a histogram per status class, so that fast 304s and
+ * 404s are not compared with full responses. When a window closes, the median
+ * of each class is compared with that class's baseline, the lowest median
+ * seen and slowly forgotten so that it follows changes in the system. If any
+ * class is over "tolerance" times its baseline, the limit shrinks by 10%, at
+ * most once per window. Between decreases, every request at least as fast as
+ * its baseline allows grows the limit by one while the limit is being used,
+ * so it recovers at the pace of the traffic.
+ */
+final class AdaptiveConcurrencyLimit {
+
+	// 2xx (and 1xx), 3xx, 4xx and 5xx
+	private static final int STATUS_CLASSES = 4;
+
+	// Four buckets per power of two, up to 2^40 ns
+	private static final int BUCKETS = 164;
+
+	// Classes with fewer samples in a window do not count
+	private static final int MIN_SAMPLES = 10;
+
+	private final int minLimit;
+
+	private final int maxLimit;
+
+	private final double tolerance;
+
+	private final long windowNanos;
+
+	private final AtomicInteger limit;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	// Only written by the thread that closes a window
+	private final AtomicLongArray baselineNanos = new AtomicLongArray(STATUS_CLASSES);
+
+	private final AtomicReference<Window> window;
+
+	AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, long windowNanos,
+			long nowNanos) {
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.tolerance = tolerance;
+		this.windowNanos = windowNanos;
+		this.limit = new AtomicInteger(Math.max(minLimit, Math.min(maxLimit, initialLimit)));
+		this.window = new AtomicReference<>(new Window(nowNanos));
+		for (int i = 0; i < STATUS_CLASSES; i++) {
+			baselineNanos.set(i, Long.MAX_VALUE);
+		}
+	}
+
+	boolean tryAcquire() {
+		for (;;) {
+			int current = inFlight.get();
+			if (current >= limit.get()) {
+				return false;
+			}
+			if (inFlight.compareAndSet(current, current + 1)) {
+				return true;
+			}
+		}
+	}
+
+	void release(long latencyNanos, int status) {
+		release(latencyNanos, status, System.nanoTime());
+	}
+
+	void release(long latencyNanos, int status, long nowNanos) {
+		int inFlightBefore = inFlight.getAndDecrement();
+		int statusClass = statusClass(status);
+
+		Window current = window.get();
+		if (nowNanos - current.start >= windowNanos) {
+			Window next = new Window(nowNanos);
+			if (window.compareAndSet(current, next)) {
+				close(current);
+				current = next;
+			} else {
+				current = window.get();
+			}
+		}
+		current.counts.incrementAndGet(statusClass * BUCKETS + bucket(latencyNanos));
+
+		int currentLimit = limit.get();
+		if (latencyNanos <= baselineNanos.get(statusClass) * tolerance && inFlightBefore * 2 >= currentLimit) {
+			// If another thread changed it meanwhile, its adjustment wins
+			limit.compareAndSet(currentLimit, Math.min(maxLimit, currentLimit + 1));
+		}
+	}
+
+	int getLimit() {
+		return limit.get();
+	}
+
+	int getInFlight() {
+		return inFlight.get();
+	}
+
+	private void close(Window closed) {
+		boolean overloaded = false;
+		for (int statusClass = 0; statusClass < STATUS_CLASSES; statusClass++) {
+			long samples = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				samples += closed.counts.get(statusClass * BUCKETS + i);
+			}
+			if (samples < MIN_SAMPLES) {
+				continue;
+			}
+			long median = closed.percentile(statusClass, samples, 0.5);
+			long baseline = baselineNanos.get(statusClass);
+			if (baseline != Long.MAX_VALUE) {
+				baseline += baseline >> 5;
+			}
+			baseline = Math.min(baseline, median);
+			baselineNanos.set(statusClass, baseline);
+			if (median > baseline * tolerance) {
+				overloaded = true;
+			}
+		}
+		if (overloaded) {
+			limit.updateAndGet(current -> Math.max(minLimit, (int) (current * 0.9)));
+		}
+	}
+
+	private static int statusClass(int status) {
+		int statusClass = status / 100 - 2;
+		return statusClass >= 0 && statusClass < STATUS_CLASSES ? statusClass : 0;
+	}
+
+	private static int bucket(long nanos) {
+		if (nanos < 4) {
+			return (int) Math.max(0, nanos);
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+		int index = exponent * 4 + (int) ((nanos >>> (exponent - 2)) & 3);
+		return Math.min(BUCKETS - 1, index);
+	}
+
+	// Lowest latency that falls in the bucket
+	private static long lowerBound(int bucket) {
+		if (bucket < 8) {
+			return bucket;
+		}
+		return (4L + (bucket & 3)) << (bucket / 4 - 2);
+	}
+
+	private static final class Window {
+
+		private final long start;
+
+		private final AtomicLongArray counts = new AtomicLongArray(STATUS_CLASSES * BUCKETS);
+
+		Window(long start) {
+			this.start = start;
+		}
+
+		long percentile(int statusClass, long samples, double percentile) {
+			long rank = Math.max(1, (long) Math.ceil(samples * percentile));
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts.get(statusClass * BUCKETS + i);
+				if (seen >= rank) {
+					return lowerBound(i);
+				}
+			}
+			return lowerBound(BUCKETS - 1);
+		}
+
+	}
+
+}
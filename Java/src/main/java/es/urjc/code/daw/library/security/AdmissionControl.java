@@ -0,0 +1,183 @@
+package es.urjc.code.daw.library.security;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * State of the REST API admission control (see IpAdmissionFilter and
+ * AdmissionControlFilter): token buckets per IP, checked before
+ * authentication (one for anonymous requests and another one for requests
+ * with credentials, so that password checks cannot be flooded), a token
+ * bucket per authenticated user and an adaptive concurrency limit per
+ * endpoint class.
+ *
+ * All of it is lock-free: a ConcurrentHashMap of buckets updated with
+ * compareAndSet, and atomic counters for concurrency.
+ *
+ * Limits apply once the application is ready, so the warm-up traffic that
+ * runs before (see WarmUp) is neither limited nor taken as the baseline
+ * latency.
+ */
+@Component
+public class AdmissionControl {
+
+	// Endpoint classes, each with its own concurrency limit
+	enum EndpointClass {
+
+		// The book listing, which reads the whole table
+		LIST,
+
+		READ,
+
+		WRITE;
+
+		static EndpointClass of(HttpServletRequest request) {
+			String path = request.getRequestURI().substring(request.getContextPath().length());
+			if (!path.startsWith("/api/books")) {
+				return null;
+			}
+			String method = request.getMethod();
+			if (method.equals("GET")) {
+				return path.equals("/api/books/") && request.getParameter("ids") == null ? LIST : READ;
+			}
+			if (method.equals("POST") && path.equals("/api/books/lookup")) {
+				return READ;
+			}
+			return WRITE;
+		}
+	}
+
+	// Kinds of client, each with its own token bucket per key
+	enum Client {
+
+		// Requests without credentials, per IP
+		ANONYMOUS,
+
+		// Requests whose credentials are still to be checked, per IP
+		CREDENTIALS,
+
+		// Authenticated users, per user name
+		USER
+	}
+
+	// How often (in requests) to check whether buckets must be purged
+	private static final int PURGE_EVERY = 4096;
+
+	@Value("${library.admission.anonymous.rate:200}")
+	private double anonymousRate;
+
+	@Value("${library.admission.anonymous.burst:400}")
+	private int anonymousBurst;
+
+	@Value("${library.admission.credentials.rate:500}")
+	private double credentialsRate;
+
+	@Value("${library.admission.credentials.burst:1000}")
+	private int credentialsBurst;
+
+	@Value("${library.admission.user.rate:500}")
+	private double userRate;
+
+	@Value("${library.admission.user.burst:1000}")
+	private int userBurst;
+
+	// Above this number of buckets, the full ones are dropped
+	@Value("${library.admission.max-keys:10000}")
+	private int maxKeys;
+
+	@Value("${library.admission.concurrency.initial:50}")
+	private int initialConcurrency;
+
+	@Value("${library.admission.concurrency.min:4}")
+	private int minConcurrency;
+
+	@Value("${library.admission.concurrency.max:200}")
+	private int maxConcurrency;
+
+	@Value("${library.admission.concurrency.latency-tolerance:2.0}")
+	private double latencyTolerance;
+
+	// Latencies are compared once per window, and the limit shrinks at most once per window
+	@Value("${library.admission.concurrency.window-ms:100}")
+	private long windowMillis;
+
+	private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+	private final AtomicLong requests = new AtomicLong();
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	private final Map<EndpointClass, AdaptiveConcurrencyLimit> limits = new EnumMap<>(EndpointClass.class);
+
+	private volatile boolean active;
+
+	@PostConstruct
+	public void init() {
+		long now = System.nanoTime();
+		for (EndpointClass endpoint : EndpointClass.values()) {
+			limits.put(endpoint, new AdaptiveConcurrencyLimit(initialConcurrency, minConcurrency, maxConcurrency,
+					latencyTolerance, TimeUnit.MILLISECONDS.toNanos(windowMillis), now));
+		}
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void activate() {
+		active = true;
+	}
+
+	boolean isActive() {
+		return active;
+	}
+
+	/*
+	 * Takes a token from the client's bucket. Returns 0 if the request is
+	 * admitted, or otherwise the nanoseconds the client has to wait.
+	 */
+	long acquireToken(Client client, String key) {
+		long now = System.nanoTime();
+		if (requests.incrementAndGet() % PURGE_EVERY == 0 && buckets.size() > maxKeys) {
+			buckets.values().removeIf(bucket -> bucket.isFull(now));
+		}
+		TokenBucket bucket = buckets.computeIfAbsent(client.name() + ":" + key, k -> newBucket(client, now));
+		long wait = bucket.tryAcquire(now);
+		if (wait > 0) {
+			rejected.incrementAndGet();
+		}
+		return wait;
+	}
+
+	private TokenBucket newBucket(Client client, long now) {
+		switch (client) {
+		case ANONYMOUS:
+			return new TokenBucket(anonymousRate, anonymousBurst, now);
+		case CREDENTIALS:
+			return new TokenBucket(credentialsRate, credentialsBurst, now);
+		default:
+			return new TokenBucket(userRate, userBurst, now);
+		}
+	}
+
+	AdaptiveConcurrencyLimit limit(EndpointClass endpoint) {
+		return limits.get(endpoint);
+	}
+
+	void rejectedByConcurrency() {
+		rejected.incrementAndGet();
+	}
+
+	public long getRejected() {
+		return rejected.get();
+	}
+
+}
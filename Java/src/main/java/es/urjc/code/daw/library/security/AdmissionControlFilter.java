@@ -0,0 +1,144 @@
+package es.urjc.code.daw.library.security;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import es.urjc.code.daw.library.security.AdmissionControl.Client;
+import es.urjc.code.daw.library.security.AdmissionControl.EndpointClass;
+
+/*
+ * Filter of the REST API security chain. It is not a @Component, so Spring
+ * Boot does not also register it for every request. It goes after basic
+ * authentication so the user is known: authenticated users take a token from
+ * their own bucket (the others were already limited per IP by
+ * IpAdmissionFilter) and every request counts against the concurrency limit
+ * of its endpoint class.
+ *
+ * Requests that are not admitted get an immediate 429 with a Retry-After
+ * header, without reaching the controller.
+ *
+ * A request that goes asynchronous (e.g. a batch write, answered once the
+ * write-behind commits it) keeps its concurrency slot until it completes, and
+ * its latency is measured up to then.
+ */
+class AdmissionControlFilter extends OncePerRequestFilter {
+
+	private final AdmissionControl admission;
+
+	AdmissionControlFilter(AdmissionControl admission) {
+		this.admission = admission;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+
+		if (!admission.isActive()) {
+			chain.doFilter(request, response);
+			return;
+		}
+
+		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		if (isAuthenticated(authentication)) {
+			long wait = admission.acquireToken(Client.USER, authentication.getName());
+			if (wait > 0) {
+				reject(response, wait);
+				return;
+			}
+		}
+
+		EndpointClass endpoint = EndpointClass.of(request);
+		AdaptiveConcurrencyLimit limit = endpoint != null ? admission.limit(endpoint) : null;
+		if (limit != null && !limit.tryAcquire()) {
+			admission.rejectedByConcurrency();
+			reject(response, TimeUnit.SECONDS.toNanos(1));
+			return;
+		}
+
+		long start = System.nanoTime();
+		boolean async = false;
+		try {
+			chain.doFilter(request, response);
+			if (limit != null && request.isAsyncStarted()) {
+				request.getAsyncContext().addListener(new AsyncRelease(limit, start, response));
+				async = true;
+			}
+		} finally {
+			if (limit != null && !async) {
+				limit.release(System.nanoTime() - start, response.getStatus());
+			}
+		}
+	}
+
+	// Releases the slot of an asynchronous request once, whichever way it ends
+	private static final class AsyncRelease implements AsyncListener {
+
+		private final AdaptiveConcurrencyLimit limit;
+
+		private final long start;
+
+		private final HttpServletResponse response;
+
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		AsyncRelease(AdaptiveConcurrencyLimit limit, long start, HttpServletResponse response) {
+			this.limit = limit;
+			this.start = start;
+			this.response = response;
+		}
+
+		@Override
+		public void onComplete(AsyncEvent event) {
+			release(response.getStatus());
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			release(HttpStatus.SERVICE_UNAVAILABLE.value());
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			release(HttpStatus.INTERNAL_SERVER_ERROR.value());
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+			// A new asynchronous cycle of the same request, the slot is still held
+			event.getAsyncContext().addListener(this);
+		}
+
+		private void release(int status) {
+			if (released.compareAndSet(false, true)) {
+				limit.release(System.nanoTime() - start, status);
+			}
+		}
+	}
+
+	static boolean isAuthenticated(Authentication authentication) {
+		return authentication != null && authentication.isAuthenticated()
+				&& !(authentication instanceof AnonymousAuthenticationToken);
+	}
+
+	static void reject(HttpServletResponse response, long waitNanos) {
+		long seconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+		response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+		response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(seconds));
+	}
+
+}
@@ -0,0 +1,52 @@
+package es.urjc.code.daw.library.security;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import es.urjc.code.daw.library.security.AdmissionControl.Client;
+
+/*
+ * Filter of the REST API security chain that goes before basic
+ * authentication. Clients not yet authenticated take a token from the bucket
+ * of their IP, so that floods, and in particular floods of credentials that
+ * would each cost a BCrypt check, are rejected before doing any work. Users
+ * already authenticated by their session are limited by
+ * AdmissionControlFilter.
+ */
+class IpAdmissionFilter extends OncePerRequestFilter {
+
+	private final AdmissionControl admission;
+
+	IpAdmissionFilter(AdmissionControl admission) {
+		this.admission = admission;
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+
+		if (!admission.isActive()
+				|| AdmissionControlFilter.isAuthenticated(SecurityContextHolder.getContext().getAuthentication())) {
+			chain.doFilter(request, response);
+			return;
+		}
+
+		Client client = request.getHeader(HttpHeaders.AUTHORIZATION) != null ? Client.CREDENTIALS : Client.ANONYMOUS;
+		long wait = admission.acquireToken(client, request.getRemoteAddr());
+		if (wait > 0) {
+			AdmissionControlFilter.reject(response, wait);
+			return;
+		}
+
+		chain.doFilter(request, response);
+	}
+
+}
@@ -1,12 +1,16 @@
 package es.urjc.code.daw.library.security;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.WebSecurityConfigurerAdapter;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
+
+import es.urjc.code.daw.library.warmup.WarmUpAuthenticationProvider;
 
 @Configuration
 @Order(1)
@@ -15,6 +19,15 @@ public class RestSecurityConfig extends WebSecurityConfigurerAdapter {
 	@Autowired
 	public UserRepositoryAuthProvider userRepoAuthProvider;
 
+	@Autowired
+	private WarmUpAuthenticationProvider warmUpAuthProvider;
+
+	@Autowired
+	private AdmissionControl admissionControl;
+
+	@Value("${library.admission.enabled:true}")
+	private boolean admissionEnabled;
+
 	@Override
 	protected void configure(HttpSecurity http) throws Exception {
 
@@ -22,6 +35,12 @@ public class RestSecurityConfig extends WebSecurityConfigurerAdapter {
 		
 		http.authorizeRequests().antMatchers(HttpMethod.GET, "/api/logIn").authenticated();
 		
+		// Looking up several books by id is a read even though it is a POST
+		http.authorizeRequests().antMatchers(HttpMethod.POST, "/api/books/lookup").permitAll();
+
+		// Diagnostics are only for administrators
+		http.authorizeRequests().antMatchers("/api/admin/**").hasRole("ADMIN");
+
 		// URLs that need authentication to access to it
 		http.authorizeRequests().antMatchers(HttpMethod.POST, "/api/books/**").hasRole("USER");
 		http.authorizeRequests().antMatchers(HttpMethod.PUT, "/api/books/**").hasRole("USER");
@@ -36,6 +55,12 @@ public class RestSecurityConfig extends WebSecurityConfigurerAdapter {
 		// Use Http Basic Authentication
 		http.httpBasic();
 
+		// Rate limits per IP before the credentials are checked, per user and concurrency once the user is known
+		if (admissionEnabled) {
+			http.addFilterBefore(new IpAdmissionFilter(admissionControl), BasicAuthenticationFilter.class);
+			http.addFilterAfter(new AdmissionControlFilter(admissionControl), BasicAuthenticationFilter.class);
+		}
+
 		// Do not redirect when logout
 		http.logout().logoutSuccessHandler((rq, rs, a) -> {	});
 	}
@@ -43,7 +68,8 @@ public class RestSecurityConfig extends WebSecurityConfigurerAdapter {
 	@Override
 	protected void configure(AuthenticationManagerBuilder auth) throws Exception {
 
-		// Database authentication provider
+		// Temporary warm-up user, kept in memory, then the database
+		auth.authenticationProvider(warmUpAuthProvider);
 		auth.authenticationProvider(userRepoAuthProvider);
 	}
 }
\ No newline at end of file
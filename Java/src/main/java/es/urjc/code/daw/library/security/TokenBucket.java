@@ -0,0 +1,45 @@
+package es.urjc.code.daw.library.security;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Lock-free token bucket, implemented as GCRA: instead of counting tokens it
+ * keeps a single theoretical arrival time, updated with one compareAndSet.
+ * It allows bursts of up to "burst" requests and "rate" requests per second
+ * in the long run.
+ */
+final class TokenBucket {
+
+	private final long intervalNanos;
+
+	private final long burstNanos;
+
+	private final AtomicLong theoreticalArrival;
+
+	TokenBucket(double ratePerSecond, int burst, long nowNanos) {
+		this.intervalNanos = (long) (1_000_000_000L / ratePerSecond);
+		this.burstNanos = burst * intervalNanos;
+		this.theoreticalArrival = new AtomicLong(nowNanos);
+	}
+
+	// 0 if the request is admitted; otherwise nanoseconds until a token is available
+	long tryAcquire(long nowNanos) {
+		for (;;) {
+			long arrival = theoreticalArrival.get();
+			long next = (arrival - nowNanos > 0 ? arrival : nowNanos) + intervalNanos;
+			long excess = next - nowNanos - burstNanos;
+			if (excess > 0) {
+				return excess;
+			}
+			if (theoreticalArrival.compareAndSet(arrival, next)) {
+				return 0;
+			}
+		}
+	}
+
+	// A full bucket is the same as a new one, so it can be dropped
+	boolean isFull(long nowNanos) {
+		return theoreticalArrival.get() - nowNanos <= 0;
+	}
+
+}
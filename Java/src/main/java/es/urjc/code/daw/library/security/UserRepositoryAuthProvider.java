@@ -14,6 +14,7 @@ import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.stereotype.Component;
 
+import es.urjc.code.daw.library.monitoring.AuthenticationEvent;
 import es.urjc.code.daw.library.user.User;
 import es.urjc.code.daw.library.user.UserComponent;
 import es.urjc.code.daw.library.user.UserRepository;
@@ -40,13 +41,35 @@ public class UserRepositoryAuthProvider implements AuthenticationProvider {
 		String username = authentication.getName();
 		String password = (String) authentication.getCredentials();
 
-		User user = userRepository.findByName(username);
+		AuthenticationEvent event = new AuthenticationEvent();
+		event.begin();
+		event.user = username;
 
-		if (user == null) {
-			throw new BadCredentialsException("User not found");
+		User user;
+		boolean matches;
+		try {
+			long start = System.nanoTime();
+			user = userRepository.findByName(username);
+			event.lookupTime = System.nanoTime() - start;
+
+			if (user == null) {
+				throw new BadCredentialsException("User not found");
+			}
+
+			start = System.nanoTime();
+			matches = new BCryptPasswordEncoder().matches(password, user.getPasswordHash());
+			event.passwordCheckTime = System.nanoTime() - start;
+			event.success = matches;
+		} catch (RuntimeException e) {
+			if (!(e instanceof AuthenticationException)) {
+				event.error = e.getClass().getName();
+			}
+			throw e;
+		} finally {
+			event.commit();
 		}
 
-		if (!new BCryptPasswordEncoder().matches(password, user.getPasswordHash())) {
+		if (!matches) {
 
 			throw new BadCredentialsException("Wrong password");
 		} else {
@@ -0,0 +1,242 @@
+package es.urjc.code.daw.library.warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.web.ServerProperties;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import es.urjc.code.daw.library.user.User;
+
+/**
+ * Calentamiento del JIT antes de que la instancia se declare lista. Los
+ * ApplicationRunner se ejecutan con el servidor ya escuchando pero antes de
+ * ApplicationReadyEvent, así que se puede recorrer la aplicación por HTTP
+ * (seguridad, controladores, Jackson, Hibernate y Mustache) antes de recibir
+ * tráfico real.
+ *
+ * Las peticiones las hace un usuario temporal con contraseña aleatoria y solo
+ * ROLE_USER, que existe solo en memoria ({@link WarmUpAuthenticationProvider}).
+ * Cada una se atiende dentro de una transacción que se deshace al terminar
+ * ({@link WarmUpTrafficFilter}), así que sus escrituras nunca se confirman:
+ * no quedan en las tablas, en el log de cambios ni en los demás nodos. Por
+ * eso las lecturas y la edición de un libro concreto usan uno que ya exista.
+ * Las peticiones se hacen por rondas y se para cuando la latencia media de
+ * varias rondas seguidas apenas cambia, o al agotar el tiempo máximo.
+ *
+ * Se activa con <code>library.warmup.enabled=true</code>.
+ */
+@Component
+public class WarmUp implements ApplicationRunner {
+
+	private static final Logger log = LoggerFactory.getLogger(WarmUp.class);
+
+	private static final String TITLE = "Warm-up book ";
+
+	private static final int REQUESTS = 6;
+
+	// Las que necesitan un libro existente
+	private static final int BOOK_REQUESTS = 3;
+
+	@Value("${library.warmup.enabled:false}")
+	private boolean enabled;
+
+	@Value("${library.warmup.budget-ms:30000}")
+	private long budgetMillis;
+
+	// Libros de cada POST /api/books/batch
+	@Value("${library.warmup.batch-size:10}")
+	private int batchSize;
+
+	@Value("${library.warmup.round-iterations:20}")
+	private int roundIterations;
+
+	// Variación relativa de la latencia media por debajo de la cual una ronda cuenta como estable
+	@Value("${library.warmup.tolerance:0.1}")
+	private double tolerance;
+
+	@Value("${library.warmup.stable-rounds:3}")
+	private int stableRounds;
+
+	@Autowired
+	private ApplicationContext context;
+
+	@Autowired
+	private ServerProperties server;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	private volatile int rounds;
+
+	private volatile long durationMillis = -1;
+
+	private volatile boolean stable;
+
+	// Usuario temporal mientras dura el calentamiento
+	private volatile User user;
+
+	private volatile String password;
+
+	@Override
+	public void run(ApplicationArguments args) {
+
+		if (!enabled || !(context instanceof WebServerApplicationContext)) {
+			return;
+		}
+
+		long start = System.nanoTime();
+		long deadline = start + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+
+		String name = "warmup-" + UUID.randomUUID();
+		password = randomPassword();
+		user = new User(name, password, "ROLE_USER");
+
+		double firstMillis = 0;
+		double lastMillis = 0;
+		try {
+			WarmUpClient client = new WarmUpClient(baseUrl(), name, password);
+			Long bookId = anyBookId(client);
+
+			int stableCount = 0;
+			while (stableCount < stableRounds && System.nanoTime() < deadline) {
+				double millis = round(client, bookId);
+				if (rounds == 0) {
+					firstMillis = millis;
+				} else if (Math.abs(millis - lastMillis) <= tolerance * lastMillis) {
+					stableCount++;
+				} else {
+					stableCount = 0;
+				}
+				lastMillis = millis;
+				rounds++;
+			}
+			stable = stableCount >= stableRounds;
+
+			client.send("POST", "/api/logOut", null, true);
+
+		} catch (IOException | RuntimeException e) {
+			log.warn("Warm-up aborted: {}", e.toString());
+		} finally {
+			user = null;
+			password = null;
+		}
+
+		durationMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+		log.info("Warm-up {} after {} rounds in {} ms; mean latency {} ms in the first round, {} ms in the last",
+				stable ? "stable" : "out of time", rounds, durationMillis, String.format("%.2f", firstMillis),
+				String.format("%.2f", lastMillis));
+	}
+
+	public int getRounds() {
+		return rounds;
+	}
+
+	// -1 si no se ha hecho calentamiento
+	public long getDurationMillis() {
+		return durationMillis;
+	}
+
+	public boolean isStable() {
+		return stable;
+	}
+
+	boolean isWarmUpUser(String name) {
+		User current = user;
+		return current != null && current.getName().equals(name);
+	}
+
+	/**
+	 * @return el usuario temporal si las credenciales son las suyas, o
+	 *         <code>null</code>
+	 */
+	User authenticate(String name, String password) {
+		User current = user;
+		String expected = this.password;
+		if (current == null || expected == null || password == null || !current.getName().equals(name)) {
+			return null;
+		}
+		boolean matches = MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8),
+				password.getBytes(StandardCharsets.UTF_8));
+		return matches ? current : null;
+	}
+
+	// Un libro del catálogo para las peticiones que leen o editan uno concreto, o null si está vacío
+	private Long anyBookId(WarmUpClient client) throws IOException {
+		JsonNode books = objectMapper.readTree(client.get("/api/books/?limit=1"));
+		return books.size() > 0 ? books.get(0).get("id").asLong() : null;
+	}
+
+	/*
+	 * Una ronda recorre las operaciones de la API REST y de la web. Lo que se
+	 * crea o edita se deshace al terminar cada petición. Devuelve la latencia
+	 * media por petición.
+	 */
+	private double round(WarmUpClient client, Long bookId) throws IOException {
+		List<Map<String, String>> batch = new ArrayList<>(batchSize);
+		for (int i = 0; i < batchSize; i++) {
+			batch.add(book(i));
+		}
+		String batchJson = objectMapper.writeValueAsString(batch);
+
+		long start = System.nanoTime();
+		for (int i = 0; i < roundIterations; i++) {
+			String json = objectMapper.writeValueAsString(book(i));
+			client.send("POST", "/api/books/", json, true);
+			client.send("POST", "/api/books/batch", batchJson, true);
+			client.get("/api/books/");
+			client.get("/api/books/?sort=title&prefix=warm&limit=20");
+			client.get("/api/books/suggest?prefix=warm");
+
+			if (bookId != null) {
+				client.get("/api/books/" + bookId);
+				client.send("PUT", "/api/books/" + bookId, json, true);
+				client.get("/books/" + bookId);
+			}
+			client.get("/");
+		}
+		int requests = REQUESTS + (bookId != null ? BOOK_REQUESTS : 0);
+		return TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / 1000.0 / (roundIterations * requests);
+	}
+
+	private static Map<String, String> book(int i) {
+		Map<String, String> book = new LinkedHashMap<>();
+		book.put("title", TITLE + i);
+		book.put("description", "Synthetic book " + i + " used to warm up the JIT before serving traffic");
+		return book;
+	}
+
+	private String baseUrl() {
+		boolean https = server.getSsl() != null && server.getSsl().isEnabled();
+		String contextPath = server.getServlet().getContextPath() != null ? server.getServlet().getContextPath() : "";
+		int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+		return (https ? "https" : "http") + "://localhost:" + port + contextPath;
+	}
+
+	private static String randomPassword() {
+		byte[] bytes = new byte[24];
+		new SecureRandom().nextBytes(bytes);
+		return Base64.getEncoder().encodeToString(bytes);
+	}
+
+}
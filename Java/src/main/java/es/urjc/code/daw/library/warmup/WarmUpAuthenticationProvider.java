@@ -0,0 +1,54 @@
+package es.urjc.code.daw.library.warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import es.urjc.code.daw.library.user.User;
+import es.urjc.code.daw.library.user.UserComponent;
+
+/**
+ * Autentica al usuario temporal del calentamiento, que no se guarda en la
+ * tabla de usuarios. Con cualquier otro usuario devuelve <code>null</code> y
+ * Spring Security prueba con el siguiente proveedor.
+ */
+@Component
+public class WarmUpAuthenticationProvider implements AuthenticationProvider {
+
+	@Autowired
+	private WarmUp warmUp;
+
+	@Autowired
+	private UserComponent userComponent;
+
+	@Override
+	public Authentication authenticate(Authentication authentication) {
+
+		String password = (String) authentication.getCredentials();
+		User user = warmUp.authenticate(authentication.getName(), password);
+		if (user == null) {
+			return null;
+		}
+
+		userComponent.setLoggedUser(user);
+
+		List<GrantedAuthority> roles = new ArrayList<>();
+		for (String role : user.getRoles()) {
+			roles.add(new SimpleGrantedAuthority(role));
+		}
+		return new UsernamePasswordAuthenticationToken(user.getName(), password, roles);
+	}
+
+	@Override
+	public boolean supports(Class<?> authentication) {
+		return UsernamePasswordAuthenticationToken.class.isAssignableFrom(authentication);
+	}
+
+}
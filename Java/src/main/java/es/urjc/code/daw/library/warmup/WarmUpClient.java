@@ -0,0 +1,136 @@
+package es.urjc.code.daw.library.warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.List;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/*
+ * Cliente HTTP mínimo para que el calentamiento pase por Tomcat, Spring
+ * Security, Jackson y Mustache igual que una petición real. Solo se conecta a
+ * la propia instancia por localhost, así que acepta su certificado sin
+ * validarlo. Conserva la cookie de sesión para no crear una sesión por
+ * petición.
+ */
+class WarmUpClient {
+
+	private final String baseUrl;
+
+	private final String authorization;
+
+	private final SSLSocketFactory sslSocketFactory = trustAll();
+
+	private String sessionCookie;
+
+	WarmUpClient(String baseUrl, String username, String password) {
+		this.baseUrl = baseUrl;
+		this.authorization = "Basic "
+				+ Base64.getEncoder().encodeToString((username + ":" + password).getBytes(StandardCharsets.UTF_8));
+	}
+
+	String get(String path) throws IOException {
+		return send("GET", path, null, false);
+	}
+
+	String send(String method, String path, String json, boolean authenticated) throws IOException {
+
+		HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+		if (connection instanceof HttpsURLConnection) {
+			((HttpsURLConnection) connection).setSSLSocketFactory(sslSocketFactory);
+			((HttpsURLConnection) connection).setHostnameVerifier((host, session) -> true);
+		}
+		connection.setRequestMethod(method);
+		connection.setInstanceFollowRedirects(false);
+		connection.setConnectTimeout(5000);
+		connection.setReadTimeout(30000);
+		if (authenticated) {
+			connection.setRequestProperty("Authorization", authorization);
+		}
+		if (sessionCookie != null) {
+			connection.setRequestProperty("Cookie", sessionCookie);
+		}
+		if (json != null) {
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "application/json");
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(json.getBytes(StandardCharsets.UTF_8));
+			}
+		}
+
+		int status = connection.getResponseCode();
+		String body = read(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+		rememberSession(connection.getHeaderFields().get("Set-Cookie"));
+
+		if (status >= 400) {
+			throw new IOException(method + " " + path + " returned " + status);
+		}
+		return body;
+	}
+
+	// Leer la respuesta entera permite reutilizar la conexión
+	private static String read(InputStream in) throws IOException {
+		if (in == null) {
+			return "";
+		}
+		try (InputStream stream = in) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = stream.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+			return new String(out.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+
+	private void rememberSession(List<String> cookies) {
+		if (cookies == null) {
+			return;
+		}
+		for (String cookie : cookies) {
+			if (cookie.startsWith("JSESSIONID=")) {
+				int end = cookie.indexOf(';');
+				sessionCookie = end > 0 ? cookie.substring(0, end) : cookie;
+			}
+		}
+	}
+
+	private static SSLSocketFactory trustAll() {
+		TrustManager trustAll = new X509TrustManager() {
+
+			@Override
+			public void checkClientTrusted(X509Certificate[] chain, String authType) {
+			}
+
+			@Override
+			public void checkServerTrusted(X509Certificate[] chain, String authType) {
+			}
+
+			@Override
+			public X509Certificate[] getAcceptedIssuers() {
+				return new X509Certificate[0];
+			}
+		};
+		try {
+			SSLContext context = SSLContext.getInstance("TLS");
+			context.init(null, new TrustManager[] { trustAll }, null);
+			return context.getSocketFactory();
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,27 @@
+package es.urjc.code.daw.library.warmup;
+
+/**
+ * Marca el hilo que atiende una petición del calentamiento, que se deshace al
+ * terminar (ver {@link WarmUpTrafficFilter}). Sus acciones no llegan a
+ * ocurrir, así que no se auditan.
+ */
+public final class WarmUpTraffic {
+
+	private static final ThreadLocal<Boolean> ACTIVE = new ThreadLocal<>();
+
+	private WarmUpTraffic() {
+	}
+
+	public static boolean isActive() {
+		return ACTIVE.get() != null;
+	}
+
+	static void begin() {
+		ACTIVE.set(Boolean.TRUE);
+	}
+
+	static void end() {
+		ACTIVE.remove();
+	}
+
+}
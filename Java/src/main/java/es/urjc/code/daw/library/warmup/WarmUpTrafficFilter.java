@@ -0,0 +1,59 @@
+package es.urjc.code.daw.library.warmup;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Atiende las peticiones del usuario temporal del calentamiento dentro de una
+ * transacción que se deshace siempre al terminar. BookService escribe dentro
+ * de la transacción de quien le llama, así que nada de lo que hacen se
+ * confirma, y los listeners que esperan al commit (log de cambios, cachés,
+ * invalidaciones a otros nodos) no llegan a enterarse. Va detrás de Spring
+ * Security, que ya ha comprobado su contraseña aleatoria.
+ */
+@Component
+public class WarmUpTrafficFilter extends OncePerRequestFilter {
+
+	@Autowired
+	private WarmUp warmUp;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+			throws ServletException, IOException {
+
+		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+		if (authentication == null || !warmUp.isWarmUpUser(authentication.getName())) {
+			chain.doFilter(request, response);
+			return;
+		}
+
+		WarmUpTraffic.begin();
+		TransactionStatus transaction = transactionManager.getTransaction(new DefaultTransactionDefinition());
+		try {
+			chain.doFilter(request, response);
+		} finally {
+			try {
+				transactionManager.rollback(transaction);
+			} finally {
+				WarmUpTraffic.end();
+			}
+		}
+	}
+
+}
@@ -2,6 +2,8 @@ package es.urjc.code.daw.library.web;
 
 import java.util.Optional;
 
+import javax.servlet.http.HttpServletResponse;
+
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
@@ -10,6 +12,9 @@ import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 
+import es.urjc.code.daw.library.audit.AuditAction;
+import es.urjc.code.daw.library.audit.AuditChannel;
+import es.urjc.code.daw.library.audit.AuditLog;
 import es.urjc.code.daw.library.book.Book;
 import es.urjc.code.daw.library.book.BookService;
 import es.urjc.code.daw.library.user.UserComponent;
@@ -23,6 +28,9 @@ public class BookWebController {
 	@Autowired
 	private UserComponent userComponent;
 
+	@Autowired
+	private AuditLog auditLog;
+
 	@ModelAttribute
 	public void addAttributes(Model model) {
 		
@@ -41,7 +49,7 @@ public class BookWebController {
 	@GetMapping("/")
 	public String showBooks(Model model) {
 
-		model.addAttribute("books", service.findAll());
+		model.addAttribute("books", service.findAllSummaries());
 		
 		return "books";
 	}
@@ -63,16 +71,11 @@ public class BookWebController {
 	@GetMapping("/removebook/{id}")
 	public String removeBook(Model model, @PathVariable long id) {
 		
-		Optional<Book> op = service.findOne(id);
-		if(op.isPresent()) {
-			Book book = op.get();
-			service.delete(id);
-			model.addAttribute("book", book);
-			return "redirect:/";
-		}else {
-			return "redirect:/";
+		if (service.delete(id) > 0) {
+			auditLog.record(AuditChannel.WEB, AuditAction.DELETE, id, null);
 		}
 		
+		return "redirect:/";
 	}
 	
 	@GetMapping("/newbook")
@@ -86,6 +89,7 @@ public class BookWebController {
 		
 		
 		Book newBook = service.save(book);
+		auditLog.record(AuditChannel.WEB, AuditAction.CREATE, newBook);
 		
 		return "redirect:/books/" + newBook.getId();
 	}
@@ -105,10 +109,17 @@ public class BookWebController {
 	}
 	
 	@PostMapping("/editbook")
-	public String editBookProcess(Book book) {
-		
-		
-		service.save(book);
+	public String editBookProcess(Book book, HttpServletResponse response) {
+		
+		if (book.getId() != null) {
+			if (service.update(book.getId(), book) == 0) {
+				response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+				return "bookNotFound";
+			}
+			auditLog.record(AuditChannel.WEB, AuditAction.UPDATE, book.getId(), book.getTitle());
+		} else {
+			auditLog.record(AuditChannel.WEB, AuditAction.CREATE, service.save(book));
+		}
 		
 		return "bookEdited";
 	}
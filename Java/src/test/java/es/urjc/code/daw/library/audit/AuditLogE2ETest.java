@@ -0,0 +1,73 @@
+package es.urjc.code.daw.library.audit;
+
+import static es.urjc.code.daw.library.rest.TestUtils.*;
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import io.restassured.RestAssured;
+import io.restassured.http.ContentType;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class AuditLogE2ETest {
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    @BeforeEach
+    public void setup() {
+        RestAssured.port = port;
+        RestAssured.useRelaxedHTTPSValidation();
+        RestAssured.baseURI = "https://localhost:" + port;
+    }
+
+    @Test
+    @DisplayName("[E2E] Book changes through the REST API are audited with their user")
+    void givenLoggedUsersWhenChangeBookThenChangesAreAudited() throws InterruptedException {
+        int id = given().auth().basic(USER_USERNAME, USER_PASSWORD)
+                .contentType(ContentType.JSON).body("{\"title\":\"Audited\",\"description\":\"Description\"}")
+                .post(BOOKS_ENDPOINT).then().statusCode(HttpStatus.CREATED.value())
+                .extract().path("id");
+
+        given().auth().basic(ADMIN_USERNAME, ADMIN_PASSWORD).delete(BOOKS_ENDPOINT + id).then()
+                .statusCode(HttpStatus.OK.value());
+
+        List<Map<String, Object>> rows = awaitAuditRows(id, 2);
+        assertThat(rows.get(0).get("USERNAME"), is(USER_USERNAME));
+        assertThat(rows.get(0).get("ACTION"), is("CREATE"));
+        assertThat(rows.get(0).get("TITLE"), is("Audited"));
+        assertThat(rows.get(1).get("USERNAME"), is(ADMIN_USERNAME));
+        assertThat(rows.get(1).get("ACTION"), is("DELETE"));
+        assertThat(rows.get(1).get("CHANNEL"), is("REST"));
+    }
+
+    // The audit log is written in the background
+    private List<Map<String, Object>> awaitAuditRows(long bookId, int count) throws InterruptedException {
+        List<Map<String, Object>> rows = null;
+        for (int i = 0; i < 100; i++) {
+            rows = jdbc.queryForList("select username, channel, action, title from book_audit where book_id = ? order by id",
+                    bookId);
+            if (rows.size() >= count) {
+                return rows;
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("Audit rows not written: " + rows);
+    }
+
+}
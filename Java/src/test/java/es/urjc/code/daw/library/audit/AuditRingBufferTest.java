@@ -0,0 +1,195 @@
+package es.urjc.code.daw.library.audit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import es.urjc.code.daw.library.audit.AuditRingBuffer.OverflowPolicy;
+
+class AuditRingBufferTest {
+
+    // Records are reused by the ring, so the sink keeps the book ids only
+    static class CollectingSink implements AuditSink {
+
+        final List<Long> bookIds = Collections.synchronizedList(new ArrayList<>());
+
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+
+        volatile CountDownLatch gate = new CountDownLatch(0);
+
+        // A batch with this book id is always rejected
+        volatile long poisonBookId = -1;
+
+        @Override
+        public void write(List<AuditRecord> batch) throws IOException {
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (AuditRecord record : batch) {
+                if (record.getBookId() == poisonBookId) {
+                    throw new IOException("Rejected record " + poisonBookId);
+                }
+            }
+            batchSizes.add(batch.size());
+            for (AuditRecord record : batch) {
+                bookIds.add(record.getBookId());
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Events from many producers are all written, in batches, even when the ring fills up")
+    void givenManyProducersWhenPublishThenEveryEventIsWritten() throws Exception {
+        CollectingSink sink = new CollectingSink();
+        AuditRingBuffer buffer = new AuditRingBuffer(64, 16, OverflowPolicy.BLOCK, 10_000, 5, sink);
+
+        int producers = 8;
+        int perProducer = 5000;
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        for (int p = 0; p < producers; p++) {
+            long first = (long) p * perProducer;
+            executor.execute(() -> {
+                for (long id = first; id < first + perProducer; id++) {
+                    buffer.publish(id, "user", AuditChannel.REST, AuditAction.CREATE, id, "Title");
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+        buffer.close(10_000);
+
+        List<Long> sorted = new ArrayList<>(sink.bookIds);
+        Collections.sort(sorted);
+        assertThat(sorted, is(LongStream.range(0, producers * perProducer).boxed().collect(Collectors.toList())));
+        assertThat(buffer.getDropped(), is(0L));
+        assertThat(sink.batchSizes.stream().mapToInt(Integer::intValue).max().getAsInt(), greaterThan(1));
+    }
+
+    @Test
+    @DisplayName("With the drop policy a full ring loses new events instead of blocking")
+    void givenFullRingWhenDropPolicyThenEventsAreDropped() throws Exception {
+        CollectingSink sink = new CollectingSink();
+        sink.gate = new CountDownLatch(1);
+        AuditRingBuffer buffer = new AuditRingBuffer(4, 4, OverflowPolicy.DROP, 10_000, 5, sink);
+
+        int published = 0;
+        for (long id = 0; id < 20; id++) {
+            if (buffer.publish(id, null, AuditChannel.WEB, AuditAction.DELETE, id, null)) {
+                published++;
+            }
+        }
+        sink.gate.countDown();
+        buffer.close(10_000);
+
+        assertThat(buffer.getDropped(), is(20L - published));
+        assertThat(sink.bookIds.size(), is(published));
+    }
+
+    @Test
+    @DisplayName("Closing writes everything published before")
+    void givenPendingEventsWhenCloseThenTheyAreFlushed() throws Exception {
+        CollectingSink sink = new CollectingSink();
+        sink.gate = new CountDownLatch(1);
+        AuditRingBuffer buffer = new AuditRingBuffer(16, 16, OverflowPolicy.BLOCK, 10_000, 5, sink);
+
+        for (long id = 0; id < 10; id++) {
+            buffer.publish(id, "admin", AuditChannel.REST, AuditAction.UPDATE, id, "Title");
+        }
+        sink.gate.countDown();
+        buffer.close(10_000);
+
+        assertThat(sink.bookIds, contains(0L, 1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L));
+    }
+
+    @Test
+    @DisplayName("A record the sink always rejects is dead-lettered and the rest of its batch is written")
+    void givenRejectedRecordWhenRetriesRunOutThenOnlyThatRecordIsDeadLettered() throws Exception {
+        CollectingSink sink = new CollectingSink();
+        sink.gate = new CountDownLatch(1);
+        sink.poisonBookId = 2;
+        AuditRingBuffer buffer = new AuditRingBuffer(16, 16, OverflowPolicy.BLOCK, 10_000, 2, sink);
+
+        for (long id = 0; id < 5; id++) {
+            buffer.publish(id, "admin", AuditChannel.REST, AuditAction.UPDATE, id, "Title");
+        }
+        sink.gate.countDown();
+        buffer.close(10_000);
+
+        assertThat(sink.bookIds, contains(0L, 1L, 3L, 4L));
+        assertThat(buffer.getDeadLettered(), is(1L));
+        assertThat(buffer.getBacklog(), is(0L));
+    }
+
+    @Test
+    @DisplayName("With the block policy a producer waits at most the block timeout and then drops the event")
+    void givenFullRingWhenBlockTimesOutThenEventIsDropped() throws Exception {
+        CollectingSink sink = new CollectingSink();
+        sink.gate = new CountDownLatch(1);
+        AuditRingBuffer buffer = new AuditRingBuffer(4, 4, OverflowPolicy.BLOCK, 50, 5, sink);
+
+        for (long id = 0; id < 4; id++) {
+            buffer.publish(id, null, AuditChannel.WEB, AuditAction.DELETE, id, null);
+        }
+        long start = System.nanoTime();
+        boolean published = buffer.publish(4, null, AuditChannel.WEB, AuditAction.DELETE, 4, null);
+        long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        sink.gate.countDown();
+        buffer.close(10_000);
+
+        assertThat(published, is(false));
+        assertThat(waitedMillis, greaterThanOrEqualTo(50L));
+        assertThat(buffer.getDropped(), is(1L));
+        assertThat(sink.bookIds, contains(0L, 1L, 2L, 3L));
+    }
+
+    @Test
+    @DisplayName("Every event published while the buffer closes is either written or counted as dropped")
+    void givenProducersWhenCloseThenNoEventIsLostSilently() throws Exception {
+        for (int round = 0; round < 20; round++) {
+            CollectingSink sink = new CollectingSink();
+            AuditRingBuffer buffer = new AuditRingBuffer(1024, 64, OverflowPolicy.BLOCK, 10_000, 5, sink);
+
+            int producers = 4;
+            AtomicLong published = new AtomicLong();
+            CountDownLatch started = new CountDownLatch(producers);
+            ExecutorService executor = Executors.newFixedThreadPool(producers);
+            for (int p = 0; p < producers; p++) {
+                executor.execute(() -> {
+                    started.countDown();
+                    for (long id = 0; id < 2000; id++) {
+                        if (buffer.publish(id, "user", AuditChannel.REST, AuditAction.CREATE, id, "Title")) {
+                            published.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            started.await();
+            buffer.close(10_000);
+            executor.shutdown();
+            executor.awaitTermination(30, TimeUnit.SECONDS);
+
+            assertThat(sink.bookIds.size(), is((int) published.get()));
+            assertThat(published.get() + buffer.getDropped(), is((long) producers * 2000));
+        }
+    }
+
+}
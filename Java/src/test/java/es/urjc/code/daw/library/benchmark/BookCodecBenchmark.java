@@ -0,0 +1,99 @@
+package es.urjc.code.daw.library.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+
+import es.urjc.code.daw.library.book.Book;
+
+/**
+ * Encode/decode time of a list of books in each format supported by the REST
+ * API, with and without Afterburner. The payload size of every combination is
+ * printed during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookCodecBenchmark {
+
+    private static final TypeReference<List<Book>> BOOK_LIST = new TypeReference<List<Book>>() {};
+
+    @Param({ "1000", "100000" })
+    int books;
+
+    @Param({ "json", "cbor", "smile" })
+    String format;
+
+    @Param({ "false", "true" })
+    boolean afterburner;
+
+    ObjectMapper mapper;
+
+    List<Book> catalogue;
+
+    byte[] encoded;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        mapper = new ObjectMapper(factory(format));
+        if (afterburner) {
+            mapper.registerModule(new AfterburnerModule());
+        }
+
+        catalogue = new ArrayList<>(books);
+        for (int i = 0; i < books; i++) {
+            Book book = new Book("Title " + i, "Description of the book number " + i + " with some more text to be realistic");
+            book.setId(i);
+            catalogue.add(book);
+        }
+
+        encoded = mapper.writeValueAsBytes(catalogue);
+        System.out.println("\n[payload] format=" + format + " books=" + books + " bytes=" + encoded.length);
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return mapper.writeValueAsBytes(catalogue);
+    }
+
+    @Benchmark
+    public List<Book> decode() throws IOException {
+        return mapper.readValue(encoded, BOOK_LIST);
+    }
+
+    private static JsonFactory factory(String format) {
+        switch (format) {
+        case "cbor":
+            return new CBORFactory();
+        case "smile":
+            return new SmileFactory();
+        default:
+            return new JsonFactory();
+        }
+    }
+
+}
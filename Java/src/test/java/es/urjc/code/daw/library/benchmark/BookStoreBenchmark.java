@@ -0,0 +1,98 @@
+package es.urjc.code.daw.library.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import es.urjc.code.daw.library.Application;
+import es.urjc.code.daw.library.book.Book;
+import es.urjc.code.daw.library.book.BookService;
+import es.urjc.code.daw.library.book.BookStore;
+
+/**
+ * findOne/findAll latency of each BookStore, measured on the store selected
+ * by the profile of a full application context. The used heap after loading
+ * the books is printed during setup; both runs include the embedded H2, so
+ * the difference between them is the cost of the in-memory table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookStoreBenchmark {
+
+    @Param({ "jpa", "memory" })
+    String store;
+
+    @Param({ "10000" })
+    int books;
+
+    ConfigurableApplicationContext context;
+
+    BookStore bookStore;
+
+    long[] ids;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SpringApplication application = new SpringApplication(Application.class);
+        if ("memory".equals(store)) {
+            application.setAdditionalProfiles("memory");
+        }
+        context = application.run("--server.port=0", "--logging.level.root=WARN");
+
+        List<Book> catalogue = new ArrayList<>(books);
+        for (int i = 0; i < books; i++) {
+            catalogue.add(new Book("Title " + i, "Description of the book number " + i));
+        }
+        List<Book> saved = context.getBean(BookService.class).saveAllAsync(catalogue).join();
+
+        ids = new long[saved.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = saved.get(i).getId();
+        }
+        bookStore = context.getBean(BookStore.class);
+
+        System.gc();
+        long used = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        System.out.println("\n[heap] store=" + store + " books=" + books + " usedMB=" + used / (1024 * 1024));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Optional<Book> findOne() {
+        return bookStore.findById(ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+    }
+
+    @Benchmark
+    public List<Book> findAll() {
+        return bookStore.findAll();
+    }
+
+}
@@ -0,0 +1,71 @@
+package es.urjc.code.daw.library.benchmark;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import es.urjc.code.daw.library.book.CompressedTextConverter;
+
+/**
+ * Write (compress) and read (decompress) overhead of storing book descriptions
+ * compressed. The stored size against plain UTF-8 is printed during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DescriptionCompressionBenchmark {
+
+    private static final String SAMPLE = "En el año 53 a. C. el cónsul Craso cruzó el Éufrates para conquistar Oriente, "
+            + "pero su ejército fue destrozado en Carrhae. Una legión entera cayó prisionera de los partos. "
+            + "Nadie sabe a ciencia cierta qué pasó con aquella legión perdida. ";
+
+    @Param({ "300", "5000", "50000" })
+    int length;
+
+    CompressedTextConverter converter = new CompressedTextConverter();
+
+    String description;
+
+    byte[] stored;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        StringBuilder text = new StringBuilder(length);
+        int word = 0;
+        while (text.length() < length) {
+            // Some variation so the text is not a trivially repeated block
+            text.append(SAMPLE, 0, SAMPLE.length() - (word++ % 7)).append(word).append(' ');
+        }
+        description = text.substring(0, length);
+        stored = converter.convertToDatabaseColumn(description);
+
+        int plain = description.getBytes(StandardCharsets.UTF_8).length;
+        System.out.println("\n[size] chars=" + length + " utf8=" + plain + " stored=" + stored.length);
+    }
+
+    @Benchmark
+    public byte[] write() {
+        return converter.convertToDatabaseColumn(description);
+    }
+
+    @Benchmark
+    public String read() {
+        return converter.convertToEntityAttribute(stored);
+    }
+
+}
@@ -0,0 +1,66 @@
+package es.urjc.code.daw.library.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import es.urjc.code.daw.library.book.BookJournal;
+
+/**
+ * Startup recovery time of the book journal: open (which replays the whole
+ * log and rebuilds the index) and close. The journal is written once per trial
+ * with every book updated once, so half of the records are dead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = { "-Xmx4g" })
+public class JournalRecoveryBenchmark {
+
+    @Param({ "10000000" })
+    int records;
+
+    Path path;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        path = Files.createTempFile("books", ".journal");
+        int books = records / 2;
+        try (BookJournal journal = BookJournal.open(path, false)) {
+            for (int i = 0; i < records; i++) {
+                journal.put(i % books, "Title " + i, "Description " + i);
+            }
+        }
+        System.out.println("\n[journal] records=" + records + " bytes=" + Files.size(path));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+    }
+
+    @Benchmark
+    public int recover() throws IOException {
+        try (BookJournal journal = BookJournal.open(path, false)) {
+            return journal.size();
+        }
+    }
+
+}
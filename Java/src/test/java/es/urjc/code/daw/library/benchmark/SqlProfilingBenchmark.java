@@ -0,0 +1,89 @@
+package es.urjc.code.daw.library.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import es.urjc.code.daw.library.Application;
+import es.urjc.code.daw.library.book.Book;
+import es.urjc.code.daw.library.book.BookService;
+import es.urjc.code.daw.library.book.BookStore;
+
+/**
+ * Overhead of the SQL profiling wrappers: findAll through the JPA store and
+ * a plain JDBC query over the same books, with the application DataSource
+ * wrapped in ProfilingDataSource and without it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SqlProfilingBenchmark {
+
+    @Param({ "true", "false" })
+    boolean profiling;
+
+    @Param({ "1000" })
+    int books;
+
+    ConfigurableApplicationContext context;
+
+    BookStore bookStore;
+
+    JdbcTemplate jdbc;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SpringApplication application = new SpringApplication(Application.class);
+        context = application.run("--server.port=0", "--logging.level.root=WARN",
+                "--library.sql.profiling.enabled=" + profiling);
+
+        List<Book> catalogue = new ArrayList<>(books);
+        for (int i = 0; i < books; i++) {
+            catalogue.add(new Book("Title " + i, "Description of the book number " + i));
+        }
+        context.getBean(BookService.class).saveAllAsync(catalogue).join();
+
+        bookStore = context.getBean(BookStore.class);
+        jdbc = new JdbcTemplate(context.getBean(DataSource.class));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public List<Book> findAll() {
+        return bookStore.findAll();
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> jdbcFindAll() {
+        return jdbc.queryForList("select id, title from book");
+    }
+
+}
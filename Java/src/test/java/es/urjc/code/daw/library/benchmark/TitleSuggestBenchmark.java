@@ -0,0 +1,90 @@
+package es.urjc.code.daw.library.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import es.urjc.code.daw.library.book.BookSummary;
+import es.urjc.code.daw.library.book.TitleTrie;
+
+/**
+ * Latency of title suggestions over a trie with 1M synthetic Spanish titles.
+ * The heap retained by the trie (titles included) is printed during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Xmx2g" })
+public class TitleSuggestBenchmark {
+
+    private static final String[] WORDS = { "la", "el", "de", "los", "sueños", "acero", "neón", "vida", "secreta",
+            "mente", "casi", "sin", "querer", "poemas", "legión", "perdida", "canción", "ciudad", "cristal", "noche",
+            "árbol", "memoria", "jardín", "río", "último", "invierno", "corazón", "sombra", "mar", "héroe" };
+
+    @Param({ "1000000" })
+    int titles;
+
+    TitleTrie trie;
+
+    String[] prefixes;
+
+    int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Random random = new Random(42);
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        System.gc();
+        long before = memory.getHeapMemoryUsage().getUsed();
+
+        trie = new TitleTrie(titles);
+        StringBuilder title = new StringBuilder();
+        for (int id = 1; id <= titles; id++) {
+            title.setLength(0);
+            int words = 2 + random.nextInt(5);
+            for (int w = 0; w < words; w++) {
+                title.append(w == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+            }
+            title.append(' ').append(id);
+            trie.put(id, title.toString());
+        }
+
+        System.gc();
+        long after = memory.getHeapMemoryUsage().getUsed();
+        System.out.println("\n[footprint] titles=" + trie.size() + " heap=" + (after - before) / (1024 * 1024)
+                + "MB bytes/title=" + (after - before) / titles);
+
+        prefixes = new String[] { "l", "la", "la leg", "suenos de acero", "arbol memoria", "corazon sin querer 1",
+                "xyz" };
+    }
+
+    @Benchmark
+    public List<BookSummary> suggestTop10() {
+        return trie.suggest(prefixes[next++ % prefixes.length], 10);
+    }
+
+    @Benchmark
+    public void rename() {
+        long id = 1 + (next++ % titles);
+        trie.put(id, "Nuevo título " + id);
+    }
+
+}
@@ -0,0 +1,131 @@
+package es.urjc.code.daw.library.book;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+class BookInvalidationsTest {
+
+    private final LocalInvalidationTransport transport = new LocalInvalidationTransport();
+
+    private final List<BookInvalidations> nodes = new ArrayList<>();
+
+    @AfterEach
+    void closeNodes() {
+        nodes.forEach(BookInvalidations::close);
+    }
+
+    private BookInvalidations node(BookService service, List<Object> events) {
+        return node(service, events, 10_000);
+    }
+
+    private BookInvalidations node(BookService service, List<Object> events, int maxVersions) {
+        BookInvalidations node = new BookInvalidations(transport, service, events::add, 100, 3_600_000,
+                maxVersions, 3_600_000);
+        nodes.add(node);
+        return node;
+    }
+
+    @Test
+    @DisplayName("Changes of one node invalidate the books of the others in one batch")
+    void givenChangesOnOneNodeWhenFlushThenOtherNodesInvalidate() {
+        BookService serviceA = mock(BookService.class);
+        BookService serviceB = mock(BookService.class);
+        List<Object> eventsA = new ArrayList<>();
+        List<Object> eventsB = new ArrayList<>();
+        BookInvalidations a = node(serviceA, eventsA);
+        node(serviceB, eventsB);
+
+        a.onBookChanged(new BookChangedEvent(1, 10, false));
+        verify(serviceB, never()).invalidate(any());
+
+        a.onBookChanged(new BookChangedEvent(2, 11, true));
+        a.flush();
+
+        verify(serviceB).invalidate(Arrays.asList(1L, 2L));
+        assertThat(eventsB, hasSize(1));
+        assertThat(((BooksInvalidatedEvent) eventsB.get(0)).getBookIds(), contains(1L, 2L));
+
+        verify(serviceA, never()).invalidate(any());
+        assertThat(eventsA, is(empty()));
+    }
+
+    @Test
+    @DisplayName("Messages older than the last change applied to a book are ignored")
+    void givenLateMessageWhenReceivedThenIgnored() {
+        BookService service = mock(BookService.class);
+        List<Object> events = new ArrayList<>();
+        BookInvalidations node = node(service, events);
+
+        transport.publish(new BookInvalidation("other", new long[] { 1, 2 }, new long[] { 20, 21 }));
+        transport.publish(new BookInvalidation("another", new long[] { 1, 2, 3 }, new long[] { 15, 21, 5 }));
+
+        // Cambio local más reciente que el mensaje que llega después
+        node.onBookChanged(new BookChangedEvent(4, 30, false));
+        transport.publish(new BookInvalidation("other", new long[] { 4 }, new long[] { 25 }));
+
+        verify(service).invalidate(Arrays.asList(1L, 2L));
+        verify(service).invalidate(Arrays.asList(3L));
+        assertThat(events, hasSize(2));
+    }
+
+    @Test
+    @DisplayName("Only the versions of the most recently changed books are remembered")
+    void givenManyChangedBooksWhenReceivedThenVersionsAreBounded() {
+        BookService service = mock(BookService.class);
+        BookInvalidations node = node(service, new ArrayList<>(), 10);
+
+        for (long id = 1; id <= 1000; id++) {
+            transport.publish(new BookInvalidation("other", new long[] { id }, new long[] { id }));
+        }
+        assertThat(node.trackedVersions(), lessThanOrEqualTo(10));
+
+        // El último libro sigue recordado y su mensaje repetido se ignora
+        transport.publish(new BookInvalidation("other", new long[] { 1000 }, new long[] { 1000 }));
+        verify(service, times(1)).invalidate(Arrays.asList(1000L));
+    }
+
+    @Test
+    @DisplayName("The JDBC transport delivers batches published by any node")
+    void givenJdbcTransportWhenPublishThenOtherTransportsReceive() throws InterruptedException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1");
+
+        try (JdbcInvalidationTransport first = new JdbcInvalidationTransport(dataSource, 10, 60_000);
+                JdbcInvalidationTransport second = new JdbcInvalidationTransport(dataSource, 10, 60_000)) {
+
+            List<BookInvalidation> received = new CopyOnWriteArrayList<>();
+            second.subscribe(received::add);
+
+            first.publish(new BookInvalidation("first", new long[] { 7, 8 }, new long[] { 100, 101 }));
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (received.isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertThat(received, hasSize(1));
+            BookInvalidation invalidation = received.get(0);
+            assertThat(invalidation.getNode(), is("first"));
+            assertThat(invalidation.size(), is(2));
+            assertThat(invalidation.getBookId(1), is(8L));
+            assertThat(invalidation.getSeq(1), is(101L));
+        }
+    }
+
+}
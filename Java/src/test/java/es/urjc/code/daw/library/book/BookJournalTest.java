@@ -0,0 +1,136 @@
+package es.urjc.code.daw.library.book;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+class BookJournalTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    @DisplayName("Books written to the journal are recovered after reopening it")
+    void givenWrittenBooksWhenReopenThenRecovered() throws Exception {
+        Path path = dir.resolve("books.journal");
+
+        try (BookJournal journal = BookJournal.open(path, false)) {
+            journal.put(1, "Título 1", "Descripción 1");
+            journal.put(2, "Title 2", null);
+            journal.put(1, "Título 1 bis", "Descripción 1 bis");
+            journal.put(3, "Title 3", "Description 3");
+            journal.delete(3);
+        }
+
+        try (BookJournal journal = BookJournal.open(path, false)) {
+            assertThat(journal.size(), is(2));
+            assertThat(journal.maxId(), is(3L));
+            assertThat(journal.read(1).getTitle(), is("Título 1 bis"));
+            assertThat(journal.read(1).getDescription(), is("Descripción 1 bis"));
+            assertThat(journal.read(2).getDescription(), is(nullValue()));
+            assertThat(journal.read(3), is(nullValue()));
+        }
+    }
+
+    @Test
+    @DisplayName("A torn record at the end of the journal is discarded on recovery")
+    void givenTornTailWhenReopenThenPreviousRecordsSurvive() throws Exception {
+        Path path = dir.resolve("books.journal");
+
+        try (BookJournal journal = BookJournal.open(path, false)) {
+            journal.put(1, "Title 1", "Description 1");
+            journal.put(2, "Title 2", "Description 2");
+        }
+
+        // Corrupt one byte of the payload of the second record
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            int firstLength = file.readInt();
+            long second = 8 + firstLength;
+            file.seek(second + 8 + 10);
+            file.write(0x7f);
+        }
+
+        try (BookJournal journal = BookJournal.open(path, false)) {
+            assertThat(journal.size(), is(1));
+            assertThat(journal.read(1).getTitle(), is("Title 1"));
+
+            journal.put(3, "Title 3", "Description 3");
+        }
+
+        try (BookJournal journal = BookJournal.open(path, false)) {
+            assertThat(journal.size(), is(2));
+            assertThat(journal.read(3).getTitle(), is("Title 3"));
+        }
+    }
+
+    @Test
+    @DisplayName("Compaction keeps only live records and their content")
+    void givenDeadRecordsWhenCompactThenFileShrinksAndBooksSurvive() throws Exception {
+        Path path = dir.resolve("books.journal");
+        // Long enough for the log to outgrow the initial mapping of the file
+        String padding = String.join("", Collections.nCopies(1000, "x"));
+
+        try (BookJournal journal = BookJournal.open(path, false)) {
+            for (int i = 0; i < 20_000; i++) {
+                journal.put(i % 10, "Title " + i, "Description " + i + padding);
+            }
+            long sizeBefore = Files.size(path);
+
+            assertThat(journal.compactIfWasteful(0.5), is(true));
+
+            assertThat(Files.size(path), lessThan(sizeBefore));
+            assertThat(journal.size(), is(10));
+            assertThat(journal.read(9).getTitle(), is("Title 19999"));
+
+            journal.put(10, "Title 10", "Description 10");
+        }
+        assertThat(Files.exists(dir.resolve("books.journal.compact")), is(false));
+
+        try (BookJournal journal = BookJournal.open(path, false)) {
+            assertThat(journal.size(), is(11));
+            assertThat(journal.read(0).getTitle(), is("Title 19990"));
+            assertThat(journal.read(0).getDescription(), is("Description 19990" + padding));
+            assertThat(journal.read(10).getTitle(), is("Title 10"));
+        }
+    }
+
+    @Test
+    @DisplayName("Ids are never handed out twice, even after deleting, compacting and reopening")
+    void givenDeletedAndCompactedBooksWhenNextIdThenNotReused() throws Exception {
+        Path path = dir.resolve("books.journal");
+        long last;
+
+        try (BookJournal journal = BookJournal.open(path, false)) {
+            long first = journal.nextId();
+            last = journal.nextId();
+            journal.put(first, "Title 1", "Description 1");
+            journal.put(last, "Title 2", "Description 2");
+            journal.delete(last);
+            journal.compact();
+
+            assertThat(journal.nextId(), is(last + 1));
+            journal.use(last + 500);
+            assertThat(journal.nextId(), is(last + 501));
+            last += 501;
+        }
+
+        try (BookJournal journal = BookJournal.open(path, false)) {
+            assertThat(journal.nextId(), greaterThan(last));
+            journal.compact();
+        }
+
+        try (BookJournal journal = BookJournal.open(path, false)) {
+            assertThat(journal.size(), is(1));
+            assertThat(journal.nextId(), greaterThan(last));
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package es.urjc.code.daw.library.book;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector=es.urjc.code.daw.library.book.BookSqlCounter")
+class BookQueryPlanTest {
+
+    private static final String INDEX = "BOOK_NORMALIZED_TITLE_IDX";
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    @Autowired
+    BookService bookService;
+
+    @AfterEach
+    void tearDown() {
+        BookSqlCounter.reset(0);
+    }
+
+    // Explains the SQL that Hibernate issued for the query, with the same parameters
+    private String explain(BookQuery query, Object... parameters) {
+        BookSqlCounter.reset(0);
+        bookService.findPage(query);
+        String sql = BookSqlCounter.lastBookSelect();
+        assertThat(sql, notNullValue());
+        return jdbc.queryForObject("explain " + sql, String.class, parameters);
+    }
+
+    @Test
+    @DisplayName("Prefix filtering sorted by title is resolved with the normalized title index")
+    void givenPrefixAndTitleSortWhenExplainThenUsesIndex() {
+        String plan = explain(new BookQuery("la", BookQuery.Sort.TITLE, 10), "la%", "\\", 10);
+
+        assertThat(BookSqlCounter.lastBookSelect(), containsString("like ? escape ?"));
+        assertThat(plan, containsStringIgnoringCase(INDEX));
+        assertThat(plan, containsString("index sorted"));
+    }
+
+    @Test
+    @DisplayName("Sorting every book by title reads the index in order instead of sorting")
+    void givenTitleSortWhenExplainThenReadsIndexInOrder() {
+        String plan = explain(new BookQuery(null, BookQuery.Sort.TITLE, 10), 10);
+
+        assertThat(plan, containsStringIgnoringCase(INDEX));
+        assertThat(plan, containsString("index sorted"));
+    }
+
+    @Test
+    @DisplayName("The Spanish sample titles are found without their accents")
+    void givenSampleBooksWhenFindPageByPrefixThenIgnoresAccents() {
+        List<String> titles = bookService.findPage(new BookQuery("la legion", BookQuery.Sort.TITLE, 10)).stream()
+                .map(Book::getTitle).collect(Collectors.toList());
+
+        assertThat(titles, contains("LA LEGIÓN PERDIDA"));
+    }
+
+    @Test
+    @DisplayName("Updating a title keeps the normalized title in sync")
+    void givenUpdatedTitleWhenFindPageThenFoundByNewTitle() {
+        Book book = bookService.save(new Book("Título viejo", "Description"));
+        bookService.update(book.getId(), new Book("Canción nueva", "Description"));
+
+        assertThat(bookService.findPage(new BookQuery("cancion nueva", BookQuery.Sort.ID, 10)).stream()
+                .map(Book::getId).collect(Collectors.toList()), contains(book.getId()));
+        assertThat(bookService.findPage(new BookQuery("titulo viejo", BookQuery.Sort.ID, 10)), empty());
+    }
+
+}
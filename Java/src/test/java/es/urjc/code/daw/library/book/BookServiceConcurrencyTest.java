@@ -0,0 +1,197 @@
+package es.urjc.code.daw.library.book;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import es.urjc.code.daw.library.rest.CatalogueSnapshots;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector=es.urjc.code.daw.library.book.BookSqlCounter")
+class BookServiceConcurrencyTest {
+
+    private static final int CALLERS = 16;
+
+    @Autowired
+    BookService bookService;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    // Its background rebuild after each save runs its own SELECT on the book table
+    @MockBean
+    CatalogueSnapshots catalogueSnapshots;
+
+    ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        BookSqlCounter.reset(0);
+    }
+
+    @Test
+    @DisplayName("Concurrent lookups of the same book run a single query")
+    void givenConcurrentCallersWhenFindOneThenOnlyOneSelectRuns() throws Exception {
+        Book book = bookService.save(new Book("Title 1", "Description 1"));
+        BookSqlCounter.reset(300);
+
+        List<Optional<Book>> results = runConcurrently(() -> bookService.findOne(book.getId()));
+
+        assertThat(BookSqlCounter.bookSelects(), is(1));
+        for (Optional<Book> result : results) {
+            assertThat(result.isPresent(), is(true));
+            assertThat(result.get().getTitle(), is(book.getTitle()));
+        }
+    }
+
+    @Test
+    @DisplayName("Concurrent listings run a single query")
+    void givenConcurrentCallersWhenFindAllThenOnlyOneSelectRuns() throws Exception {
+        bookService.save(new Book("Title 1", "Description 1"));
+        BookSqlCounter.reset(300);
+
+        List<List<Book>> results = runConcurrently(() -> bookService.findAll());
+
+        assertThat(BookSqlCounter.bookSelects(), is(1));
+        for (List<Book> result : results) {
+            assertThat(result, is(sameInstance(results.get(0))));
+        }
+    }
+
+    @Test
+    @DisplayName("A failed load is propagated to every waiting caller")
+    void givenFailingLoaderWhenConcurrentCallersThenAllReceiveTheError() throws Exception {
+        SingleFlight<Long, String> flight = new SingleFlight<>(5000);
+        CountDownLatch loaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger loads = new AtomicInteger();
+
+        Future<String> leader = executor.submit(() -> flight.load(1L, () -> {
+            loads.incrementAndGet();
+            loaderStarted.countDown();
+            await(release);
+            throw new IllegalStateException("boom");
+        }));
+        loaderStarted.await();
+
+        List<Future<String>> waiters = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            waiters.add(executor.submit(() -> flight.load(1L, () -> {
+                loads.incrementAndGet();
+                return "unexpected";
+            })));
+        }
+        Thread.sleep(100);
+        release.countDown();
+
+        assertCause(leader, IllegalStateException.class);
+        for (Future<String> waiter : waiters) {
+            assertCause(waiter, IllegalStateException.class);
+        }
+        assertThat(loads.get(), is(1));
+    }
+
+    @Test
+    @DisplayName("Waiting callers give up after the configured timeout")
+    void givenSlowLoaderWhenTimeoutExpiresThenWaiterFails() throws Exception {
+        SingleFlight<Long, String> flight = new SingleFlight<>(50);
+        CountDownLatch loaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        executor.submit(() -> flight.load(1L, () -> {
+            loaderStarted.countDown();
+            await(release);
+            return "late";
+        }));
+        loaderStarted.await();
+
+        assertThrows(QueryTimeoutException.class, () -> flight.load(1L, () -> "unexpected"));
+        release.countDown();
+    }
+
+    @Test
+    @DisplayName("A change waits for the one still in flight, so sequences become visible in order")
+    void givenUncommittedChangeWhenAnotherBookIsSavedThenItCommitsAfterWithHigherSeq() throws Exception {
+        TransactionTemplate transactions = new TransactionTemplate(transactionManager);
+        CountDownLatch firstSaved = new CountDownLatch(1);
+        CountDownLatch commitFirst = new CountDownLatch(1);
+        long since = bookService.lastChangeSeq();
+
+        Future<?> first = executor.submit(() -> transactions.execute(status -> {
+            bookService.save(new Book("First", "Description"));
+            firstSaved.countDown();
+            await(commitFirst);
+            return null;
+        }));
+        firstSaved.await();
+        Future<Book> second = executor.submit(() -> bookService.save(new Book("Second", "Description")));
+
+        Thread.sleep(200);
+        assertThat(second.isDone(), is(false));
+        assertThat(bookService.findChanges(since, 10).getChanges(), is(empty()));
+
+        commitFirst.countDown();
+        first.get();
+        second.get();
+
+        List<BookChange> changes = bookService.findChanges(since, 10).getChanges();
+        assertThat(changes, hasSize(2));
+        assertThat(changes.get(0).getBook().getTitle(), is("First"));
+        assertThat(changes.get(1).getBook().getTitle(), is("Second"));
+        assertThat(changes.get(1).getSeq(), is(changes.get(0).getSeq() + 1));
+    }
+
+    private <T> List<T> runConcurrently(Callable<T> call) throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<T>> futures = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            futures.add(executor.submit(() -> {
+                start.await();
+                return call.call();
+            }));
+        }
+        start.countDown();
+
+        List<T> results = new ArrayList<>();
+        for (Future<T> future : futures) {
+            results.add(future.get());
+        }
+        return results;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void assertCause(Future<?> future, Class<? extends Throwable> type) {
+        ExecutionException e = assertThrows(ExecutionException.class, future::get);
+        assertThat(e.getCause(), instanceOf(type));
+    }
+
+}
@@ -0,0 +1,105 @@
+package es.urjc.code.daw.library.book;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static es.urjc.code.daw.library.rest.TestUtils.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * BookService with write-behind enabled. Batches are flushed when they reach
+ * three writes, and never because of the delay, so the tests decide when the
+ * queued writes reach the database.
+ */
+@SpringBootTest(properties = { "library.books.write-behind.enabled=true",
+        "library.books.write-behind.batch-size=3", "library.books.write-behind.max-delay-ms=600000" })
+@AutoConfigureMockMvc
+class BookServiceWriteBehindTest {
+
+    @Autowired
+    BookService bookService;
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Test
+    @DisplayName("Every read sees the queued writes before they are committed")
+    void givenQueuedWritesWhenReadingThenTheyAreVisible() throws Exception {
+        Book renamed = bookService.save(new Book("Queued title", "Description 1"));
+        Book deleted = bookService.save(new Book("Queued delete", "Description 2"));
+
+        Book rename = new Book("Queued renamed", "Description 1");
+        rename.setId(renamed.getId());
+        CompletableFuture<Book> renaming = bookService.saveAsync(rename);
+        CompletableFuture<Void> deleting = bookService.deleteAsync(deleted.getId());
+
+        assertThat(renaming.isDone(), is(false));
+        assertThat(titles(bookService.findAll()), both(hasItem("Queued renamed")).and(not(hasItem("Queued delete"))));
+
+        BookLookup lookup = bookService.findAllById(Arrays.asList(renamed.getId(), deleted.getId()));
+        assertThat(titles(lookup.getBooks()), contains("Queued renamed"));
+        assertThat(lookup.getMissing(), contains(deleted.getId()));
+
+        assertThat(titles(bookService.findPage(new BookQuery("queued", BookQuery.Sort.TITLE, 10))),
+                contains("Queued renamed"));
+        assertThat(titles(bookService.findPage(new BookQuery("queued r", BookQuery.Sort.ID, 10))),
+                contains("Queued renamed"));
+
+        mockMvc.perform(get(BOOKS_ENDPOINT))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$[*].title", both(hasItem("Queued renamed")).and(not(hasItem("Queued delete")))));
+
+        // The third write fills the batch
+        bookService.saveAsync(new Book("Queued new", "Description 3")).get(5, TimeUnit.SECONDS);
+        assertThat(renaming.get(5, TimeUnit.SECONDS).getTitle(), is("Queued renamed"));
+        deleting.get(5, TimeUnit.SECONDS);
+
+        assertThat(bookService.hasPendingWrites(), is(false));
+        assertThat(titles(bookService.findAllCommitted()),
+                both(hasItem("Queued renamed")).and(not(hasItem("Queued delete"))));
+    }
+
+    @Test
+    @DisplayName("A batch of books posted to the API is answered once it is committed")
+    @WithMockUser(username = USER_USERNAME, password = USER_PASSWORD, roles = "USER")
+    void givenBatchOfBooksWhenPostedThenCreatedTogether() throws Exception {
+        MvcResult result = mockMvc.perform(post(BOOKS_ENDPOINT + "batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("[{\"title\":\"Batch 1\"},{\"title\":\"Batch 2\"},{\"title\":\"Batch 3\"}]"))
+            .andExpect(request().asyncStarted())
+            .andReturn();
+
+        mockMvc.perform(asyncDispatch(result))
+            .andExpect(status().isCreated())
+            .andExpect(jsonPath("$[*].title", contains("Batch 1", "Batch 2", "Batch 3")))
+            .andExpect(jsonPath("$[*].id", everyItem(notNullValue())));
+
+        assertThat(titles(bookService.findAllCommitted()), hasItems("Batch 1", "Batch 2", "Batch 3"));
+    }
+
+    private static List<String> titles(List<Book> books) {
+        return books.stream().map(Book::getTitle).collect(Collectors.toList());
+    }
+
+}
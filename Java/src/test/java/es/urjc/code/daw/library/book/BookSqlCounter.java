@@ -0,0 +1,58 @@
+package es.urjc.code.daw.library.book;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Hibernate statement inspector that counts the SELECTs issued against the
+ * book table, remembers the last one and can slow them down so that
+ * concurrent callers overlap.
+ */
+public class BookSqlCounter implements StatementInspector {
+
+    private static final Pattern BOOK_SELECT = Pattern.compile("^select .* from book\\b.*", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+    private static final AtomicInteger bookSelects = new AtomicInteger();
+
+    private static volatile long delayMillis;
+
+    private static volatile String lastBookSelect;
+
+    public static void reset(long delay) {
+        bookSelects.set(0);
+        delayMillis = delay;
+        lastBookSelect = null;
+    }
+
+    public static int bookSelects() {
+        return bookSelects.get();
+    }
+
+    public static String lastBookSelect() {
+        return lastBookSelect;
+    }
+
+    @Override
+    public String inspect(String sql) {
+        if (BOOK_SELECT.matcher(sql).matches()) {
+            bookSelects.incrementAndGet();
+            lastBookSelect = sql;
+            sleep(delayMillis);
+        }
+        return sql;
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+package es.urjc.code.daw.library.book;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+class BookSuggestionsTest {
+
+    private final BookService service = mock(BookService.class);
+
+    private final BookSuggestions suggestions = new BookSuggestions();
+
+    BookSuggestionsTest() {
+        ReflectionTestUtils.setField(suggestions, "service", service);
+    }
+
+    private static Book book(long id, String title) {
+        Book book = new Book(title, "Description");
+        book.setId(id);
+        return book;
+    }
+
+    private List<String> titles(String prefix) {
+        return suggestions.suggest(prefix, 10).stream().map(BookSummary::getTitle).collect(Collectors.toList());
+    }
+
+    @Test
+    @DisplayName("Before the titles are loaded, suggestions are read from the store")
+    void givenNotLoadedWhenSuggestThenReadsStore() {
+        when(service.findPage(any())).thenReturn(Arrays.asList(book(1, "Lazarillo de Tormes")));
+
+        assertThat(titles("laz"), contains("Lazarillo de Tormes"));
+    }
+
+    @Test
+    @DisplayName("A change committed while loading is not overwritten by the older titles")
+    void givenChangeDuringLoadWhenLoadedThenKeepsChange() {
+        when(service.findAllSummaries()).thenAnswer(invocation -> {
+            suggestions.onBookChanged(new BookChangedEvent(1, 10, false, "Nuevo título"));
+            suggestions.onBookChanged(new BookChangedEvent(2, 11, true));
+            return Arrays.asList(new BookSummary(1L, "Viejo título"), new BookSummary(2L, "Borrado"),
+                    new BookSummary(3L, "Otro"));
+        });
+
+        suggestions.load();
+
+        assertThat(titles("nuevo"), contains("Nuevo título"));
+        assertThat(titles("viejo"), is(empty()));
+        assertThat(titles("borrado"), is(empty()));
+        assertThat(titles("otro"), contains("Otro"));
+    }
+
+    @Test
+    @DisplayName("An invalidation read before a local change does not put back the old title")
+    void givenChangeDuringInvalidationWhenReadEndsThenKeepsChange() {
+        when(service.findAllSummaries()).thenReturn(Collections.singletonList(new BookSummary(1L, "Primero")));
+        suggestions.load();
+
+        when(service.findAllById(any())).thenAnswer(invocation -> {
+            suggestions.onBookChanged(new BookChangedEvent(1, 20, false, "Tercero"));
+            return new BookLookup(Arrays.asList(book(1, "Segundo")), Collections.emptyList());
+        });
+
+        suggestions.onBooksInvalidated(new BooksInvalidatedEvent(Arrays.asList(1L)));
+
+        assertThat(titles(""), contains("Tercero"));
+    }
+
+    @Test
+    @DisplayName("Of two overlapping invalidations, the one that read last wins")
+    void givenOverlappingInvalidationsWhenReadsEndThenLatestReadWins() {
+        when(service.findAllSummaries()).thenReturn(Collections.singletonList(new BookSummary(1L, "Primero")));
+        suggestions.load();
+
+        AtomicInteger reads = new AtomicInteger();
+        when(service.findAllById(any())).thenAnswer(invocation -> {
+            if (reads.incrementAndGet() == 1) {
+                // The second invalidation starts and ends while the first one reads
+                suggestions.onBooksInvalidated(new BooksInvalidatedEvent(Arrays.asList(1L)));
+                return new BookLookup(Arrays.asList(book(1, "Segundo")), Collections.emptyList());
+            }
+            return new BookLookup(Arrays.asList(book(1, "Tercero")), Collections.emptyList());
+        });
+
+        suggestions.onBooksInvalidated(new BooksInvalidatedEvent(Arrays.asList(1L)));
+
+        assertThat(titles(""), contains("Tercero"));
+    }
+
+}
@@ -0,0 +1,59 @@
+package es.urjc.code.daw.library.book;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+class BookTableTest {
+
+    @Test
+    @DisplayName("Table behaves like a map under random puts and removes, across resizes")
+    void givenRandomOperationsWhenComparedWithHashMapThenSameContents() {
+        BookTable table = new BookTable(4);
+        Map<Long, String> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 100_000; i++) {
+            long id = random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                assertThat(table.remove(id), is(expected.remove(id) != null));
+            } else {
+                String title = "Title " + random.nextInt(100);
+                table.put(id, title, new byte[] { CompressedTextConverter.PLAIN });
+                expected.put(id, title);
+            }
+        }
+
+        assertThat(table.size(), is(expected.size()));
+        for (long id = 0; id < 5_000; id++) {
+            assertThat(table.contains(id), is(expected.containsKey(id)));
+            assertThat(table.title(id), is(expected.get(id)));
+        }
+        long[] ids = table.ids();
+        assertThat(ids.length, is(expected.size()));
+        for (int i = 1; i < ids.length; i++) {
+            assertThat(ids[i], greaterThan(ids[i - 1]));
+        }
+    }
+
+    @Test
+    @DisplayName("Titles are stored as given, without interning them")
+    void givenEqualTitlesWhenPutThenTitlesAreKeptAsGiven() {
+        BookTable table = new BookTable(4);
+        String first = new String("Title");
+        String second = new String("Title");
+
+        table.put(1, first, null);
+        table.put(2, second, null);
+
+        assertThat(table.title(1), is(sameInstance(first)));
+        assertThat(table.title(2), is(sameInstance(second)));
+    }
+
+}
@@ -0,0 +1,198 @@
+package es.urjc.code.daw.library.book;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import es.urjc.code.daw.library.book.BookWriteBehind.BookWrite;
+
+class BookWriteBehindTest {
+
+    /**
+     * Records every batch and returns the books as they were written.
+     */
+    static class RecordingWriter implements BookWriteBehind.BatchWriter {
+
+        final List<List<BookWrite>> batches = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public List<Book> write(List<BookWrite> batch) {
+            batches.add(new ArrayList<>(batch));
+            List<Book> results = new ArrayList<>();
+            for (BookWrite write : batch) {
+                results.add(write.getBook());
+            }
+            return results;
+        }
+    }
+
+    @Test
+    @DisplayName("Writes to the same book are merged and every caller sees the last one")
+    void givenSeveralWritesToSameBookWhenFlushedThenOnlyLastIsWritten() throws Exception {
+        RecordingWriter writer = new RecordingWriter();
+        BookWriteBehind queue = new BookWriteBehind(100, 100, 60_000, writer);
+
+        CompletableFuture<Book> first = queue.save(book(1, "Title 1"));
+        CompletableFuture<Book> second = queue.save(book(1, "Title 2"));
+
+        assertThat(queue.find(1).getBook().getTitle(), is("Title 2"));
+
+        queue.close();
+
+        assertThat(writer.batches, hasSize(1));
+        assertThat(writer.batches.get(0), hasSize(1));
+        assertThat(first.get(1, TimeUnit.SECONDS).getTitle(), is("Title 2"));
+        assertThat(second.get(1, TimeUnit.SECONDS).getTitle(), is("Title 2"));
+        assertThat(queue.find(1), is(nullValue()));
+    }
+
+    @Test
+    @DisplayName("A batch is flushed as soon as it reaches the batch size")
+    void givenFullBatchWhenEnqueuedThenFlushedWithoutWaitingForDelay() throws Exception {
+        RecordingWriter writer = new RecordingWriter();
+        BookWriteBehind queue = new BookWriteBehind(100, 2, 60_000, writer);
+
+        CompletableFuture<Book> first = queue.save(book(1, "Title 1"));
+        CompletableFuture<Book> second = queue.save(book(2, "Title 2"));
+
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        assertThat(writer.batches, hasSize(1));
+
+        queue.close();
+    }
+
+    @Test
+    @DisplayName("A partial batch is flushed once the maximum delay expires")
+    void givenPartialBatchWhenDelayExpiresThenFlushed() throws Exception {
+        RecordingWriter writer = new RecordingWriter();
+        BookWriteBehind queue = new BookWriteBehind(100, 100, 50, writer);
+
+        queue.save(book(1, "Title 1")).get(5, TimeUnit.SECONDS);
+
+        assertThat(writer.batches, hasSize(1));
+
+        queue.close();
+    }
+
+    @Test
+    @DisplayName("A failed batch fails every caller in it")
+    void givenFailingWriterWhenFlushedThenCallersFail() throws Exception {
+        BookWriteBehind queue = new BookWriteBehind(100, 100, 10, batch -> {
+            throw new IllegalStateException("boom");
+        });
+
+        CompletableFuture<Book> save = queue.save(book(1, "Title 1"));
+        CompletableFuture<Book> delete = queue.delete(2);
+
+        queue.close();
+
+        assertThat(save.isCompletedExceptionally(), is(true));
+        assertThat(delete.isCompletedExceptionally(), is(true));
+    }
+
+    @Test
+    @DisplayName("When a batch fails its writes are retried one by one and only the bad one fails")
+    void givenBadWriteInBatchWhenFlushedThenOnlyItsCallerFails() throws Exception {
+        RecordingWriter recorder = new RecordingWriter();
+        BookWriteBehind queue = new BookWriteBehind(100, 3, 60_000, batch -> {
+            for (BookWrite write : batch) {
+                if (!write.isDelete() && write.getBook().getTitle().equals("Bad")) {
+                    throw new IllegalStateException("boom");
+                }
+            }
+            return recorder.write(batch);
+        });
+
+        CompletableFuture<Book> good = queue.save(book(1, "Good"));
+        CompletableFuture<Book> bad = queue.save(book(2, "Bad"));
+        CompletableFuture<Book> delete = queue.delete(3);
+
+        assertThat(good.get(5, TimeUnit.SECONDS).getTitle(), is("Good"));
+        assertThat(delete.get(5, TimeUnit.SECONDS), is(nullValue()));
+        ExecutionException e = assertThrows(ExecutionException.class, () -> bad.get(5, TimeUnit.SECONDS));
+        assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+        assertThat(queue.find(2), is(nullValue()));
+
+        queue.close();
+    }
+
+    @Test
+    @DisplayName("Writes enqueued after closing fail instead of throwing")
+    void givenClosedQueueWhenEnqueueThenFutureFails() throws Exception {
+        BookWriteBehind queue = new BookWriteBehind(100, 100, 10, new RecordingWriter());
+        queue.close();
+
+        CompletableFuture<Book> save = queue.save(book(1, "Title 1"));
+
+        assertThat(save.isCompletedExceptionally(), is(true));
+    }
+
+    @Test
+    @DisplayName("Queued writes of existing books are exposed by id, the newest one per book")
+    void givenQueuedWritesWhenPendingByIdThenNewestPerBook() throws Exception {
+        BookWriteBehind queue = new BookWriteBehind(100, 100, 60_000, new RecordingWriter());
+
+        queue.save(book(1, "Title 1"));
+        queue.delete(1);
+        queue.save(new Book("New", "Description"));
+
+        assertThat(queue.hasPending(), is(true));
+        assertThat(queue.pendingById().keySet(), contains(1L));
+        assertThat(queue.pendingById().get(1L).isDelete(), is(true));
+
+        queue.close();
+        assertThat(queue.hasPending(), is(false));
+    }
+
+    @Test
+    @DisplayName("A synchronous write can wait for the queued write of its book")
+    void givenQueuedWriteWhenWhenWrittenThenCompletesAfterCommit() throws Exception {
+        BookWriteBehind queue = new BookWriteBehind(100, 100, 60_000, new RecordingWriter());
+
+        queue.save(book(1, "Title 1"));
+        CompletableFuture<Void> written = queue.whenWritten(1);
+
+        assertThat(written.isDone(), is(false));
+        assertThat(queue.whenWritten(2).isDone(), is(true));
+
+        queue.close();
+        written.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    @DisplayName("An interrupted flusher commits what is queued and closes instead of hanging")
+    void givenInterruptedFlusherWhenWaitingForBatchThenQueuedWritesComplete() throws Exception {
+        RecordingWriter recording = new RecordingWriter();
+        BookWriteBehind queue = new BookWriteBehind(100, 2, 60_000, batch -> {
+            // The interrupt hits the flusher while it waits for the next partial batch
+            Thread.currentThread().interrupt();
+            return recording.write(batch);
+        });
+
+        queue.save(book(1, "Title 1"));
+        queue.save(book(2, "Title 2")).get(5, TimeUnit.SECONDS);
+        CompletableFuture<Book> third = queue.save(book(3, "Title 3"));
+
+        assertThat(third.get(5, TimeUnit.SECONDS).getTitle(), is("Title 3"));
+        assertThat(queue.save(book(4, "Title 4")).isCompletedExceptionally(), is(true));
+        queue.close();
+    }
+
+    private static Book book(long id, String title) {
+        Book book = new Book(title, "Description");
+        book.setId(id);
+        return book;
+    }
+
+}
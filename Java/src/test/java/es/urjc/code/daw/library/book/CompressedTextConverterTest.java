@@ -0,0 +1,108 @@
+package es.urjc.code.daw.library.book;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+class CompressedTextConverterTest {
+
+    private final CompressedTextConverter converter = new CompressedTextConverter();
+
+    private static String repeat(String text, int times) {
+        return String.join("", Collections.nCopies(times, text));
+    }
+
+    @Test
+    @DisplayName("Long texts are deflated and read back unchanged")
+    void givenLongTextWhenConvertedThenDeflatedAndRoundTrips() {
+        String text = repeat("Érase una vez un libro muy largo. ", 100);
+
+        byte[] data = converter.convertToDatabaseColumn(text);
+
+        assertThat(data[0], is(CompressedTextConverter.DEFLATED));
+        assertThat(data.length, lessThan(text.length()));
+        assertThat(converter.convertToEntityAttribute(data), is(text));
+    }
+
+    @Test
+    @DisplayName("Short texts are stored as plain UTF-8 and read back unchanged")
+    void givenShortTextWhenConvertedThenPlainAndRoundTrips() {
+        String text = "Descripción";
+
+        byte[] data = converter.convertToDatabaseColumn(text);
+
+        assertThat(data[0], is(CompressedTextConverter.PLAIN));
+        assertThat(converter.convertToEntityAttribute(data), is(text));
+    }
+
+    @Test
+    @DisplayName("Null and empty texts round-trip")
+    void givenNullOrEmptyTextWhenConvertedThenRoundTrips() {
+        assertThat(converter.convertToDatabaseColumn(null), is(nullValue()));
+        assertThat(converter.convertToEntityAttribute(null), is(nullValue()));
+        assertThat(converter.convertToEntityAttribute(converter.convertToDatabaseColumn("")), is(""));
+        assertThat(converter.convertToEntityAttribute(new byte[0]), is(""));
+    }
+
+    @Test
+    @DisplayName("Texts are deflated from 256 UTF-8 bytes on")
+    void givenTextsAroundThresholdWhenConvertedThenOnlyLongOnesDeflated() {
+        String below = repeat("a", 255);
+        String atThreshold = repeat("a", 256);
+
+        byte[] belowData = converter.convertToDatabaseColumn(below);
+        byte[] atThresholdData = converter.convertToDatabaseColumn(atThreshold);
+
+        assertThat(belowData[0], is(CompressedTextConverter.PLAIN));
+        assertThat(atThresholdData[0], is(CompressedTextConverter.DEFLATED));
+        assertThat(converter.convertToEntityAttribute(belowData), is(below));
+        assertThat(converter.convertToEntityAttribute(atThresholdData), is(atThreshold));
+    }
+
+    @Test
+    @DisplayName("Texts that do not shrink when deflated are stored plain")
+    void givenIncompressibleTextWhenConvertedThenPlain() {
+        StringBuilder text = new StringBuilder();
+        for (char c = 0x4e00; text.length() < 300; c += 7) {
+            text.append(c);
+        }
+
+        byte[] data = converter.convertToDatabaseColumn(text.toString());
+
+        assertThat(converter.convertToEntityAttribute(data), is(text.toString()));
+    }
+
+    @Test
+    @DisplayName("A truncated deflated text is rejected instead of returned shorter")
+    void givenTruncatedDataWhenReadThenRejected() {
+        byte[] data = converter.convertToDatabaseColumn(repeat("Érase una vez un libro muy largo. ", 100));
+
+        byte[] truncated = Arrays.copyOf(data, data.length / 2);
+
+        assertThrows(IllegalArgumentException.class, () -> converter.convertToEntityAttribute(truncated));
+    }
+
+    @Test
+    @DisplayName("Corrupted data is rejected")
+    void givenCorruptedDataWhenReadThenRejected() {
+        byte[] data = converter.convertToDatabaseColumn(repeat("Érase una vez un libro muy largo. ", 100));
+
+        byte[] wrongLength = data.clone();
+        wrongLength[4]++;
+        byte[] garbage = data.clone();
+        Arrays.fill(garbage, 5, garbage.length, (byte) 0xff);
+
+        assertThrows(IllegalArgumentException.class, () -> converter.convertToEntityAttribute(wrongLength));
+        assertThrows(IllegalArgumentException.class, () -> converter.convertToEntityAttribute(garbage));
+        assertThrows(IllegalArgumentException.class,
+                () -> converter.convertToEntityAttribute(new byte[] { CompressedTextConverter.DEFLATED, 0, 0 }));
+        assertThrows(IllegalArgumentException.class, () -> converter.convertToEntityAttribute(new byte[] { 7 }));
+    }
+
+}
@@ -0,0 +1,124 @@
+package es.urjc.code.daw.library.book;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+class InMemoryBookStoreTest {
+
+    private final BookStore database = mock(BookStore.class);
+
+    private final BookChangeRepository changes = mock(BookChangeRepository.class);
+
+    private final InMemoryBookStore store = new InMemoryBookStore(database, changes);
+
+    /**
+     * Runs the writes as one transaction and returns its synchronizations,
+     * so the test decides when its commit reaches the store.
+     */
+    private static List<TransactionSynchronization> transaction(Runnable writes) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            writes.run();
+            return TransactionSynchronizationManager.getSynchronizations();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static void commit(List<TransactionSynchronization> synchronizations) {
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+    }
+
+    private static Book book(long id, String title) {
+        Book book = new Book(title, "Description");
+        book.setId(id);
+        return book;
+    }
+
+    @Test
+    @DisplayName("A commit applied late does not overwrite a newer one")
+    void givenCommitsAppliedOutOfOrderWhenFindThenNewestWins() {
+        when(database.update(anyLong(), any(), any())).thenReturn(1);
+
+        List<TransactionSynchronization> older = transaction(() -> {
+            store.update(1, "Older", "Description");
+            store.recorded(1, 1);
+        });
+        List<TransactionSynchronization> newer = transaction(() -> {
+            store.update(1, "Newer", "Description");
+            store.recorded(1, 2);
+        });
+        commit(newer);
+        commit(older);
+
+        assertThat(store.findById(1).get().getTitle(), is("Newer"));
+    }
+
+    @Test
+    @DisplayName("A save applied after a newer delete does not bring the book back")
+    void givenDeleteCommittedBeforeOlderSaveWhenFindThenDeleted() {
+        when(database.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(database.delete(1)).thenReturn(1);
+
+        List<TransactionSynchronization> save = transaction(() -> {
+            store.save(book(1, "Title"));
+            store.recorded(1, 1);
+        });
+        List<TransactionSynchronization> delete = transaction(() -> {
+            store.delete(1);
+            store.recorded(1, 2);
+        });
+        commit(delete);
+        commit(save);
+
+        assertThat(store.findById(1).isPresent(), is(false));
+    }
+
+    @Test
+    @DisplayName("Rolled back writes never reach the table")
+    void givenRolledBackWriteWhenFindThenUnchanged() {
+        when(database.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        transaction(() -> {
+            store.save(book(1, "Title"));
+            store.recorded(1, 1);
+        });
+
+        assertThat(store.findById(1).isPresent(), is(false));
+    }
+
+    @Test
+    @DisplayName("A refresh does not undo a newer local commit, but replaces older ones")
+    void givenLocalCommitWhenRefreshThenComparesSequences() {
+        when(database.update(anyLong(), any(), any())).thenReturn(1);
+        when(database.findAllById(any())).thenReturn(Arrays.asList(book(1, "Remote")));
+
+        commit(transaction(() -> {
+            store.update(1, "Local", "Description");
+            store.recorded(1, 5);
+        }));
+
+        when(changes.findByBookIdIn(any())).thenReturn(Arrays.asList(new BookChange(4, 1, false)));
+        store.refresh(Collections.singletonList(1L));
+        assertThat(store.findById(1).get().getTitle(), is("Local"));
+
+        when(changes.findByBookIdIn(any())).thenReturn(Arrays.asList(new BookChange(6, 1, false)));
+        store.refresh(Collections.singletonList(1L));
+        assertThat(store.findById(1).get().getTitle(), is("Remote"));
+    }
+
+}
@@ -0,0 +1,122 @@
+package es.urjc.code.daw.library.book;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+class JournalBookStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private JournalBookStore store;
+
+    @BeforeEach
+    void setup() throws Exception {
+        store = new JournalBookStore(BookJournal.open(dir.resolve("books.journal"), false), 3600, 0.5);
+    }
+
+    @AfterEach
+    void close() throws Exception {
+        store.close();
+    }
+
+    /**
+     * Runs the writes as one transaction and returns its synchronizations,
+     * so the test decides when its commit reaches the store.
+     */
+    private static List<TransactionSynchronization> transaction(Runnable writes) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            writes.run();
+            return TransactionSynchronizationManager.getSynchronizations();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static void commit(List<TransactionSynchronization> synchronizations) {
+        synchronizations.forEach(synchronization -> synchronization.beforeCommit(false));
+        synchronizations.forEach(TransactionSynchronization::afterCommit);
+    }
+
+    @Test
+    @DisplayName("Writes reach the journal when their transaction commits, and never if it rolls back")
+    void givenWritesWhenCommittedOrRolledBackThenOnlyCommittedAppended() {
+        Book[] saved = new Book[2];
+
+        List<TransactionSynchronization> committed = transaction(() -> {
+            saved[0] = store.save(new Book("Title 1", "Description 1"));
+            store.recorded(saved[0].getId(), 1);
+            assertThat(store.update(saved[0].getId(), "Title 1 bis", "Description 1"), is(1));
+            store.recorded(saved[0].getId(), 2);
+        });
+        transaction(() -> {
+            saved[1] = store.save(new Book("Title 2", "Description 2"));
+            store.recorded(saved[1].getId(), 3);
+        });
+
+        assertThat(store.findById(saved[0].getId()).isPresent(), is(false));
+        commit(committed);
+
+        assertThat(store.findById(saved[0].getId()).get().getTitle(), is("Title 1 bis"));
+        assertThat(store.existsById(saved[1].getId()), is(false));
+        assertThat(saved[1].getId(), is(not(saved[0].getId())));
+    }
+
+    @Test
+    @DisplayName("An update committed late does not bring back a book deleted after it")
+    void givenDeleteCommittedBeforeOlderUpdateWhenFindThenDeleted() {
+        Book book = store.save(new Book("Title", "Description"));
+
+        List<TransactionSynchronization> update = transaction(() -> {
+            store.update(book.getId(), "Title bis", "Description");
+            store.recorded(book.getId(), 1);
+        });
+        List<TransactionSynchronization> delete = transaction(() -> {
+            assertThat(store.delete(book.getId()), is(1));
+            store.recorded(book.getId(), 2);
+        });
+        commit(delete);
+        commit(update);
+
+        assertThat(store.findById(book.getId()).isPresent(), is(false));
+    }
+
+    @Test
+    @DisplayName("A write the full journal rejects fails its commit instead of being lost after it")
+    void givenFullJournalWhenCommitThenWriteFails() throws Exception {
+        JournalBookStore small = new JournalBookStore(BookJournal.open(dir.resolve("small.journal"), false, 4096),
+                3600, 0.5);
+        try {
+            char[] description = new char[8192];
+            Arrays.fill(description, 'x');
+            Book[] saved = new Book[1];
+
+            List<TransactionSynchronization> transaction = transaction(() -> {
+                saved[0] = small.save(new Book("Title", new String(description)));
+                small.recorded(saved[0].getId(), 1);
+            });
+
+            assertThrows(UncheckedIOException.class, () -> commit(transaction));
+            assertThat(small.existsById(saved[0].getId()), is(false));
+        } finally {
+            small.close();
+        }
+    }
+
+}
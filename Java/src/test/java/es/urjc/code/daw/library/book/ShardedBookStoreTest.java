@@ -0,0 +1,222 @@
+package es.urjc.code.daw.library.book;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+class ShardedBookStoreTest {
+
+    private final String name = UUID.randomUUID().toString();
+
+    private final List<ShardedBookStore> stores = new ArrayList<>();
+
+    private final DriverManagerDataSource main = new DriverManagerDataSource(
+            "jdbc:h2:mem:" + name + "-main;DB_CLOSE_DELAY=-1", "sa", "");
+
+    private final TransactionTemplate transactions = new TransactionTemplate(new DataSourceTransactionManager(main));
+
+    @AfterEach
+    void closeStores() {
+        stores.forEach(ShardedBookStore::close);
+    }
+
+    private BookShards shards(String set, int count) {
+        return BookShards.open("jdbc:h2:mem:" + name + "-" + set + "-%d;DB_CLOSE_DELAY=-1", count);
+    }
+
+    private ShardedBookStore store(BookShards shards) {
+        ShardedBookStore store = new ShardedBookStore(shards, main, 60_000);
+        stores.add(store);
+        return store;
+    }
+
+    private static int rows(BookShards shards, int shard) {
+        return shards.shard(shard).queryForObject("select count(*) from book", Integer.class);
+    }
+
+    private int outboxRows() {
+        return new JdbcTemplate(main).queryForObject("select count(*) from book_outbox", Integer.class);
+    }
+
+    // As BookService does: the write and its change in the same transaction
+    private long saveInTransaction(ShardedBookStore store, Book book, long seq, boolean rollback) {
+        return transactions.execute(status -> {
+            long id = store.save(book).getId();
+            store.recorded(id, seq);
+            if (rollback) {
+                status.setRollbackOnly();
+            }
+            return id;
+        });
+    }
+
+    @Test
+    @DisplayName("New books get unique ids spread evenly over the shards")
+    void givenNewBooksWhenSaveThenIdsAreSpreadOverShards() {
+        BookShards shards = shards("a", 3);
+        ShardedBookStore store = store(shards);
+
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            ids.add(store.save(new Book("Title " + i, "Description " + i)).getId());
+        }
+
+        assertThat(ids.stream().distinct().count(), is(30L));
+        assertThat(ids, not(hasItem(0L)));
+        for (int shard = 0; shard < 3; shard++) {
+            assertThat(rows(shards, shard), is(10));
+        }
+        for (Long id : ids) {
+            assertThat(store.findById(id).get().getTitle(), is("Title " + ids.indexOf(id)));
+        }
+    }
+
+    @Test
+    @DisplayName("Nodes sharing the shards never hand out the same id, not even after deletes and restarts")
+    void givenTwoNodesWhenSaveAndDeleteThenIdsNeverRepeat() {
+        BookShards shards = shards("a", 3);
+        ShardedBookStore node1 = store(shards);
+        ShardedBookStore node2 = store(shards);
+
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ids.add(node1.save(new Book("Node 1 title " + i, "Description")).getId());
+            ids.add(node2.save(new Book("Node 2 title " + i, "Description")).getId());
+        }
+        for (Long id : ids) {
+            node1.delete(id);
+        }
+
+        ShardedBookStore restarted = store(shards);
+        for (int i = 0; i < 10; i++) {
+            ids.add(restarted.save(new Book("Title " + i, "Description")).getId());
+        }
+
+        assertThat(ids.stream().distinct().count(), is(30L));
+    }
+
+    @Test
+    @DisplayName("Listings gather every shard and come back ordered by id")
+    void givenBooksInSeveralShardsWhenFindAllThenMergedInOrder() {
+        ShardedBookStore store = store(shards("a", 4));
+        for (int i = 0; i < 25; i++) {
+            store.save(new Book("Title " + i, "Description " + i));
+        }
+
+        List<Long> ids = store.findAll().stream().map(Book::getId).collect(Collectors.toList());
+        List<Long> sorted = new ArrayList<>(ids);
+        sorted.sort(null);
+
+        assertThat(ids, hasSize(25));
+        assertThat(ids, is(sorted));
+        assertThat(store.findAllSummaries().stream().map(BookSummary::getId).collect(Collectors.toList()),
+                is(sorted));
+
+        List<Book> some = store.findAllById(Arrays.asList(sorted.get(0), sorted.get(7), sorted.get(13), -5L));
+        assertThat(some.stream().map(Book::getId).collect(Collectors.toList()),
+                containsInAnyOrder(sorted.get(0), sorted.get(7), sorted.get(13)));
+    }
+
+    @Test
+    @DisplayName("Updates and deletes only touch the shard of the book")
+    void givenBookWhenUpdateAndDeleteThenAffectsOneRow() {
+        ShardedBookStore store = store(shards("a", 2));
+        long id = store.save(new Book("Title", "Description")).getId();
+
+        assertThat(store.update(id, "New title", "New description"), is(1));
+        assertThat(store.findById(id).get().getDescription(), is("New description"));
+
+        assertThat(store.delete(id), is(1));
+        assertThat(store.delete(id), is(0));
+        assertThat(store.existsById(id), is(false));
+        assertThat(store.update(id, "Title", "Description"), is(0));
+    }
+
+    @Test
+    @DisplayName("Resharding keeps every book and new ids do not collide with old ones")
+    void givenThreeShardsWhenReshardToFiveThenBooksSurvive() {
+        BookShards three = shards("three", 3);
+        ShardedBookStore before = store(three);
+        for (int i = 0; i < 50; i++) {
+            before.save(new Book("Title " + i, "Description " + i));
+        }
+        List<Book> books = before.findAll();
+
+        BookShards five = shards("five", 5);
+        assertThat(BookResharder.reshard(three, five), is(50L));
+
+        ShardedBookStore after = store(five);
+        List<Book> resharded = after.findAll();
+        assertThat(resharded.stream().map(Book::getId).collect(Collectors.toList()),
+                is(books.stream().map(Book::getId).collect(Collectors.toList())));
+        assertThat(after.findById(books.get(42).getId()).get().getDescription(), is(books.get(42).getDescription()));
+
+        long lastId = books.get(books.size() - 1).getId();
+        for (int i = 0; i < 10; i++) {
+            long id = after.save(new Book("New " + i, "Description")).getId();
+            assertThat(id, greaterThan(lastId));
+            assertThat(after.findAll(), hasSize(51 + i));
+        }
+    }
+
+    @Test
+    @DisplayName("Writes of a transaction reach the shards only if it commits")
+    void givenTransactionWhenCommitOrRollbackThenShardsFollow() {
+        ShardedBookStore store = store(shards("a", 2));
+
+        long committed = saveInTransaction(store, new Book("Committed", "Description"), 1, false);
+        long rolledBack = saveInTransaction(store, new Book("Rolled back", "Description"), 2, true);
+
+        assertThat(store.findById(committed).get().getTitle(), is("Committed"));
+        assertThat(store.existsById(rolledBack), is(false));
+        assertThat(outboxRows(), is(0));
+
+        transactions.execute(status -> {
+            assertThat(store.delete(committed), is(1));
+            store.recorded(committed, 3);
+            assertThat(store.update(committed, "Title", "Description"), is(0));
+            return null;
+        });
+        assertThat(store.existsById(committed), is(false));
+    }
+
+    @Test
+    @DisplayName("A committed write that cannot be copied to its shard stays in the outbox until it is repaired")
+    void givenUnavailableShardWhenCommitThenRepairCopiesTheWrite() {
+        BookShards shards = shards("a", 1);
+        ShardedBookStore store = store(shards);
+        long id = saveInTransaction(store, new Book("Title", "Description"), 1, false);
+
+        transactions.execute(status -> {
+            store.update(id, "New title", "New description");
+            store.recorded(id, 2);
+            shards.shard(0).execute("alter table book rename to book_away");
+            return null;
+        });
+        shards.shard(0).execute("alter table book_away rename to book");
+
+        assertThat(store.findById(id).get().getTitle(), is("Title"));
+        assertThat(outboxRows(), is(1));
+
+        store.repair(0);
+
+        assertThat(store.findById(id).get().getTitle(), is("New title"));
+        assertThat(store.findById(id).get().getDescription(), is("New description"));
+        assertThat(outboxRows(), is(0));
+    }
+
+}
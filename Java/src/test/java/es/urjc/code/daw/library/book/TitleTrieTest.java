@@ -0,0 +1,77 @@
+package es.urjc.code.daw.library.book;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+class TitleTrieTest {
+
+    private static List<Long> ids(List<BookSummary> suggestions) {
+        return suggestions.stream().map(BookSummary::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    @DisplayName("Suggestions ignore case and accents and come out in alphabetical order")
+    void givenTitlesWhenSuggestThenMatchesPrefixInOrder() {
+        TitleTrie trie = new TitleTrie(16);
+        trie.put(1, "LA VIDA SECRETA DE LA MENTE");
+        trie.put(2, "LA LEGIÓN PERDIDA");
+        trie.put(3, "La legión");
+        trie.put(4, "SUEÑOS DE ACERO Y NEON");
+        trie.put(5, "Lámparas");
+
+        assertThat(ids(trie.suggest("la le", 10)), contains(3L, 2L));
+        assertThat(ids(trie.suggest("LA", 10)), contains(3L, 2L, 1L, 5L));
+        assertThat(ids(trie.suggest("la", 2)), contains(3L, 2L));
+        assertThat(ids(trie.suggest("sueños", 10)), contains(4L));
+        assertThat(ids(trie.suggest("suenos de acero y neon y mas", 10)), empty());
+        assertThat(ids(trie.suggest("x", 10)), empty());
+
+        assertThat(trie.suggest("legion", 10), empty());
+        assertThat(trie.suggest("la legion p", 10).get(0).getTitle(), is("LA LEGIÓN PERDIDA"));
+    }
+
+    @Test
+    @DisplayName("Renamed and removed books stop being suggested under their old title")
+    void givenRenamedAndRemovedBooksWhenSuggestThenOnlyCurrentTitles() {
+        TitleTrie trie = new TitleTrie(16);
+        trie.put(1, "Casi sin querer");
+        trie.put(2, "Casa de papel");
+        trie.put(3, "Casa");
+
+        trie.put(2, "Otra casa");
+        assertThat(ids(trie.suggest("cas", 10)), contains(3L, 1L));
+        assertThat(ids(trie.suggest("otra", 10)), contains(2L));
+
+        assertThat(trie.remove(3), is(true));
+        assertThat(trie.remove(3), is(false));
+        assertThat(ids(trie.suggest("cas", 10)), contains(1L));
+
+        trie.remove(1);
+        trie.remove(2);
+        assertThat(trie.size(), is(0));
+        assertThat(trie.suggest("", 10), empty());
+
+        trie.put(4, "Casi");
+        assertThat(ids(trie.suggest("c", 10)), contains(4L));
+    }
+
+    @Test
+    @DisplayName("Books with the same normalized title are all suggested")
+    void givenSameNormalizedTitleWhenSuggestThenAllIds() {
+        TitleTrie trie = new TitleTrie(16);
+        trie.put(7, "Canción");
+        trie.put(3, "CANCION");
+
+        assertThat(ids(trie.suggest("canc", 10)), contains(3L, 7L));
+
+        trie.remove(3);
+        assertThat(ids(trie.suggest("canc", 10)), contains(7L));
+    }
+
+}
@@ -0,0 +1,51 @@
+package es.urjc.code.daw.library.load;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Ids the scenarios read, update and delete: the books that existed when the
+ * test started plus the last ones it created. Deletes only take books created
+ * by the test, oldest first.
+ */
+class BookIds {
+
+    private static final int RECENT = 4096;
+
+    private final AtomicLongArray recent = new AtomicLongArray(RECENT);
+
+    private final AtomicLong written = new AtomicLong();
+
+    private final Queue<Long> created = new ConcurrentLinkedQueue<>();
+
+    BookIds(long... initial) {
+        for (long id : initial) {
+            remember(id);
+        }
+    }
+
+    void created(long id) {
+        remember(id);
+        created.add(id);
+    }
+
+    Long takeCreated() {
+        return created.poll();
+    }
+
+    long any() {
+        int known = (int) Math.min(written.get(), RECENT);
+        if (known == 0) {
+            return 1;
+        }
+        return recent.get(ThreadLocalRandom.current().nextInt(known));
+    }
+
+    private void remember(long id) {
+        recent.set((int) (written.getAndIncrement() % RECENT), id);
+    }
+
+}
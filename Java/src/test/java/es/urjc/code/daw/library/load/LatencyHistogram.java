@@ -0,0 +1,88 @@
+package es.urjc.code.daw.library.load;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in microseconds. Values below 1024 are
+ * counted exactly; above that every power of two is split in 512 buckets, so
+ * percentiles are exact to 0.2%.
+ */
+class LatencyHistogram {
+
+    private static final int EXACT = 1024;
+
+    private static final int SUB_BITS = 9;
+
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+    // Up to 2^40 us (12 days)
+    private static final int MAX_EXPONENT = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray(EXACT + (MAX_EXPONENT - 9) * SUB_BUCKETS);
+
+    void record(long micros) {
+        counts.incrementAndGet(index(Math.min(Math.max(0, micros), (1L << MAX_EXPONENT) - 1)));
+    }
+
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length(); i++) {
+            long count = other.counts.get(i);
+            if (count != 0) {
+                counts.addAndGet(i, count);
+            }
+        }
+    }
+
+    long count() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * @param quantile between 0 and 1, e.g. 0.999
+     * @return latency in microseconds, or 0 if nothing was recorded
+     */
+    long percentile(double quantile) {
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return value(i);
+            }
+        }
+        return value(snapshot.length - 1);
+    }
+
+    private static int index(long micros) {
+        if (micros < EXACT) {
+            return (int) micros;
+        }
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_EXPONENT - 1);
+        int sub = (int) (micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return EXACT + (exponent - 10) * SUB_BUCKETS + sub;
+    }
+
+    // Upper bound of the bucket
+    private static long value(int index) {
+        if (index < EXACT) {
+            return index;
+        }
+        int exponent = (index - EXACT) / SUB_BUCKETS + 10;
+        int sub = (index - EXACT) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+
+}
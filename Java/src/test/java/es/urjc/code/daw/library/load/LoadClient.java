@@ -0,0 +1,149 @@
+package es.urjc.code.daw.library.load;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+/**
+ * Minimal HTTPS client for the load test, on top of HttpURLConnection so the
+ * JDK keeps connections alive between requests. Like
+ * <code>useRelaxedHTTPSValidation()</code> in the E2E tests, it trusts the
+ * self-signed certificate of the local server.
+ */
+class LoadClient {
+
+    static class Response {
+
+        final int status;
+
+        final String body;
+
+        final String location;
+
+        final String sessionCookie;
+
+        Response(int status, String body, String location, String sessionCookie) {
+            this.status = status;
+            this.body = body;
+            this.location = location;
+            this.sessionCookie = sessionCookie;
+        }
+
+    }
+
+    private static final SSLSocketFactory TRUST_ALL = trustAll();
+
+    private final String baseUrl;
+
+    LoadClient(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    /**
+     * @param credentials "user:password" for basic authentication, or null
+     * @param cookie session cookie to send ("JSESSIONID=..."), or null
+     * @param contentType of the body, or null if there is none
+     */
+    Response send(String method, String path, String credentials, String cookie, String contentType, String body)
+            throws IOException {
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        if (connection instanceof HttpsURLConnection) {
+            ((HttpsURLConnection) connection).setSSLSocketFactory(TRUST_ALL);
+            ((HttpsURLConnection) connection).setHostnameVerifier((host, session) -> true);
+        }
+        connection.setRequestMethod(method);
+        connection.setInstanceFollowRedirects(false);
+        connection.setConnectTimeout(5000);
+        connection.setReadTimeout(30000);
+
+        if (credentials != null) {
+            connection.setRequestProperty("Authorization",
+                    "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8)));
+        }
+        if (cookie != null) {
+            connection.setRequestProperty("Cookie", cookie);
+        }
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", contentType);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body.getBytes(StandardCharsets.UTF_8));
+            }
+        }
+
+        int status = connection.getResponseCode();
+        String responseBody = read(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+        return new Response(status, responseBody, connection.getHeaderField("Location"),
+                sessionCookie(connection.getHeaderFields()));
+    }
+
+    // Reading the whole body lets the JDK reuse the connection
+    private static String read(InputStream in) throws IOException {
+        if (in == null) {
+            return "";
+        }
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String sessionCookie(Map<String, List<String>> headers) {
+        List<String> cookies = headers.get("Set-Cookie");
+        if (cookies != null) {
+            for (String cookie : cookies) {
+                if (cookie.startsWith("JSESSIONID=")) {
+                    return cookie.substring(0, cookie.indexOf(';') > 0 ? cookie.indexOf(';') : cookie.length());
+                }
+            }
+        }
+        return null;
+    }
+
+    private static SSLSocketFactory trustAll() {
+        TrustManager trustAll = new X509TrustManager() {
+
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {
+            }
+
+            @Override
+            public X509Certificate[] getAcceptedIssuers() {
+                return new X509Certificate[0];
+            }
+        };
+        try {
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(null, new TrustManager[] { trustAll }, null);
+            return context.getSocketFactory();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
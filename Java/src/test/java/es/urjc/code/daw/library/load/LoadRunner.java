@@ -0,0 +1,291 @@
+package es.urjc.code.daw.library.load;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import es.urjc.code.daw.library.Application;
+import static es.urjc.code.daw.library.rest.TestUtils.BOOKS_ENDPOINT;
+
+/**
+ * Load and soak test of the REST and web flows (see {@link Scenario}).
+ *
+ * <pre>
+ * mvn -Pload verify -DskipTests [-Dload.mode=soak] [-Dload.concurrency=32] [-Dload.duration-s=600]
+ * </pre>
+ *
+ * By default the application is started in this JVM on the port of
+ * <code>load.url</code>, which also lets the test read its heap and its
+ * number of HTTP sessions. With <code>-Dload.start=false</code> it runs
+ * against an application that is already up, without those figures.
+ *
+ * Every worker runs the scenarios back to back (a closed loop), so latencies
+ * are those seen by <code>load.concurrency</code> busy clients, not by an
+ * open arrival rate.
+ *
+ * In soak mode the heap (after a full GC) and the session count are sampled
+ * during the whole run; if either keeps growing past the configured rate once
+ * the warm-up is over, the run is reported as a leak and the process exits
+ * with status 1, as it does when the error rate is too high.
+ */
+public class LoadRunner {
+
+    private static final Pattern IDS = Pattern.compile("\"id\"\\s*:\\s*(\\d+)");
+
+    private final String url = System.getProperty("load.url", "https://localhost:8443");
+
+    private final boolean soak = "soak".equals(System.getProperty("load.mode", "load"));
+
+    private final int concurrency = Integer.getInteger("load.concurrency", 16);
+
+    private final long durationSeconds = Long.getLong("load.duration-s", soak ? 1800 : 60);
+
+    private final long warmupSeconds = Long.getLong("load.warmup-s", 10);
+
+    private final long reportSeconds = Long.getLong("load.report-interval-s", soak ? 60 : 10);
+
+    private final double maxErrorRate = Double.parseDouble(System.getProperty("load.max-error-rate", "0.01"));
+
+    private final double maxSessionGrowthPerMinute = Double
+            .parseDouble(System.getProperty("load.max-session-growth-per-min", "10"));
+
+    private final double maxHeapGrowthPerMinute = Double
+            .parseDouble(System.getProperty("load.max-heap-growth-mb-per-min", "5"));
+
+    private final Map<Scenario, Integer> mix = parseMix(
+            System.getProperty("load.mix", "list:30,get:40,create:10,update:10,delete:5,web:5"));
+
+    private final Map<Scenario, LatencyHistogram> latencies = new EnumMap<>(Scenario.class);
+
+    private final Map<Scenario, AtomicLong> errors = new EnumMap<>(Scenario.class);
+
+    private volatile boolean recording;
+
+    public static void main(String[] args) throws Exception {
+        System.exit(new LoadRunner().run() ? 0 : 1);
+    }
+
+    boolean run() throws Exception {
+
+        for (Scenario scenario : Scenario.values()) {
+            latencies.put(scenario, new LatencyHistogram());
+            errors.put(scenario, new AtomicLong());
+        }
+
+        ConfigurableApplicationContext application = null;
+        if (Boolean.parseBoolean(System.getProperty("load.start", "true"))) {
+            application = SpringApplication.run(Application.class, "--server.port=" + new URL(url).getPort());
+        }
+
+        try {
+            ServerProbe probe = new ServerProbe(application);
+            LoadClient client = new LoadClient(url);
+            BookIds ids = new BookIds(existingIds(client));
+
+            System.out.printf("%s: %d workers, %ds warm-up, %ds measured, mix %s against %s%n",
+                    soak ? "Soak" : "Load", concurrency, warmupSeconds, durationSeconds, mix, url);
+
+            long start = System.nanoTime();
+            long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+            long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+
+            List<Thread> workers = new ArrayList<>(concurrency);
+            for (int i = 0; i < concurrency; i++) {
+                Thread worker = new Thread(() -> work(client, ids, end), "load-worker-" + i);
+                worker.setDaemon(true);
+                workers.add(worker);
+                worker.start();
+            }
+
+            TimeUnit.NANOSECONDS.sleep(measureFrom - System.nanoTime());
+            recording = true;
+
+            List<ServerProbe.Sample> samples = new ArrayList<>();
+            samples.add(probe.sample(soak));
+            long previousCount = 0;
+            while (System.nanoTime() < end) {
+                TimeUnit.NANOSECONDS.sleep(Math.min(TimeUnit.SECONDS.toNanos(reportSeconds), end - System.nanoTime()));
+                ServerProbe.Sample sample = probe.sample(soak);
+                samples.add(sample);
+                long count = total().count();
+                System.out.printf("  +%4ds  %8.1f req/s  heap %s  sessions %s%n",
+                        TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - measureFrom),
+                        (count - previousCount) / (double) reportSeconds, megabytes(sample.heapBytes),
+                        sample.sessions < 0 ? "n/a" : sample.sessions);
+                previousCount = count;
+            }
+
+            for (Thread worker : workers) {
+                worker.join(TimeUnit.SECONDS.toMillis(35));
+            }
+
+            boolean errorsOk = report(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - measureFrom), samples);
+            boolean leaksOk = !soak || checkLeaks(samples);
+            return errorsOk && leaksOk;
+
+        } finally {
+            if (application != null) {
+                application.close();
+            }
+        }
+    }
+
+    private void work(LoadClient client, BookIds ids, long end) {
+        while (System.nanoTime() < end) {
+            Scenario scenario = pick();
+            long started = System.nanoTime();
+            boolean failed = false;
+            try {
+                scenario.run(client, ids);
+            } catch (Exception e) {
+                failed = true;
+            }
+            if (recording) {
+                latencies.get(scenario).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started));
+                if (failed) {
+                    errors.get(scenario).incrementAndGet();
+                }
+            }
+        }
+    }
+
+    private Scenario pick() {
+        int total = 0;
+        for (int weight : mix.values()) {
+            total += weight;
+        }
+        int ticket = ThreadLocalRandom.current().nextInt(total);
+        for (Map.Entry<Scenario, Integer> entry : mix.entrySet()) {
+            ticket -= entry.getValue();
+            if (ticket < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private boolean report(long seconds, List<ServerProbe.Sample> samples) {
+
+        System.out.printf("%n%-8s %10s %10s %8s %9s %9s %9s%n", "", "requests", "req/s", "errors", "p50 ms",
+                "p99 ms", "p999 ms");
+
+        long totalErrors = 0;
+        for (Scenario scenario : mix.keySet()) {
+            totalErrors += errors.get(scenario).get();
+            printRow(scenario.name(), latencies.get(scenario), errors.get(scenario).get(), seconds);
+        }
+        LatencyHistogram total = total();
+        printRow("TOTAL", total, totalErrors, seconds);
+
+        ServerProbe.Sample last = samples.get(samples.size() - 1);
+        System.out.printf("%nHeap %s, sessions %s%n", megabytes(last.heapBytes),
+                last.sessions < 0 ? "n/a" : last.sessions);
+
+        double errorRate = total.count() == 0 ? 1 : totalErrors / (double) total.count();
+        if (errorRate > maxErrorRate) {
+            System.out.printf("FAILED: error rate %.2f%% above %.2f%%%n", errorRate * 100, maxErrorRate * 100);
+            return false;
+        }
+        return true;
+    }
+
+    private static void printRow(String name, LatencyHistogram histogram, long errors, long seconds) {
+        long count = histogram.count();
+        System.out.printf("%-8s %10d %10.1f %7.2f%% %9.2f %9.2f %9.2f%n", name, count,
+                count / (double) Math.max(1, seconds), count == 0 ? 0 : errors * 100.0 / count,
+                histogram.percentile(0.5) / 1000.0, histogram.percentile(0.99) / 1000.0,
+                histogram.percentile(0.999) / 1000.0);
+    }
+
+    /*
+     * Growth per minute of heap and sessions, fitted by least squares over the
+     * samples taken after the first fifth of the run, when caches and pools
+     * have already filled up.
+     */
+    private boolean checkLeaks(List<ServerProbe.Sample> samples) {
+        List<ServerProbe.Sample> steady = samples.subList(samples.size() / 5, samples.size());
+        if (steady.size() < 3 || steady.get(0).heapBytes < 0) {
+            System.out.println("Not enough server samples to look for leaks");
+            return true;
+        }
+
+        double sessionsPerMinute = slopePerMinute(steady, true);
+        double heapMbPerMinute = slopePerMinute(steady, false) / (1024 * 1024);
+        System.out.printf("Growth: %.1f sessions/min, %.2f MB heap/min%n", sessionsPerMinute, heapMbPerMinute);
+
+        boolean ok = true;
+        if (sessionsPerMinute > maxSessionGrowthPerMinute) {
+            System.out.println("LEAK: HTTP sessions keep building up (are clients getting a new session per request?)");
+            ok = false;
+        }
+        if (heapMbPerMinute > maxHeapGrowthPerMinute) {
+            System.out.println("LEAK: live heap keeps growing");
+            ok = false;
+        }
+        return ok;
+    }
+
+    private static double slopePerMinute(List<ServerProbe.Sample> samples, boolean sessions) {
+        double t0 = samples.get(0).timeMillis;
+        double sumX = 0, sumY = 0, sumXY = 0, sumXX = 0;
+        for (ServerProbe.Sample sample : samples) {
+            double x = (sample.timeMillis - t0) / 60000.0;
+            double y = sessions ? sample.sessions : sample.heapBytes;
+            sumX += x;
+            sumY += y;
+            sumXY += x * y;
+            sumXX += x * x;
+        }
+        int n = samples.size();
+        double denominator = n * sumXX - sumX * sumX;
+        return denominator == 0 ? 0 : (n * sumXY - sumX * sumY) / denominator;
+    }
+
+    private LatencyHistogram total() {
+        LatencyHistogram total = new LatencyHistogram();
+        for (LatencyHistogram histogram : latencies.values()) {
+            total.add(histogram);
+        }
+        return total;
+    }
+
+    private static long[] existingIds(LoadClient client) throws Exception {
+        String json = client.send("GET", BOOKS_ENDPOINT, null, null, null, null).body;
+        List<Long> ids = new ArrayList<>();
+        Matcher matcher = IDS.matcher(json);
+        while (matcher.find()) {
+            ids.add(Long.parseLong(matcher.group(1)));
+        }
+        return ids.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private static String megabytes(long bytes) {
+        return bytes < 0 ? "n/a" : bytes / (1024 * 1024) + " MB";
+    }
+
+    private static Map<Scenario, Integer> parseMix(String mix) {
+        Map<Scenario, Integer> weights = new EnumMap<>(Scenario.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.trim().split(":");
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight > 0) {
+                weights.put(Scenario.valueOf(parts[0].trim().toUpperCase()), weight);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("The scenario mix is empty");
+        }
+        return weights;
+    }
+
+}
@@ -0,0 +1,141 @@
+package es.urjc.code.daw.library.load;
+
+import static es.urjc.code.daw.library.rest.TestUtils.*;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The flows exercised by the load test. The REST ones are the requests of
+ * BookRestControllerE2ETest (same endpoints and users); the web one logs in
+ * through the form, lists the books and logs out, as a browser would.
+ *
+ * Each run returns normally when the server answered as expected and throws
+ * otherwise.
+ */
+enum Scenario {
+
+    LIST {
+        @Override
+        void run(LoadClient client, BookIds ids) throws IOException {
+            expect(client.send("GET", BOOKS_ENDPOINT, null, null, null, null), 200);
+        }
+    },
+
+    GET {
+        @Override
+        void run(LoadClient client, BookIds ids) throws IOException {
+            long id = ids.any();
+            // It may have been deleted meanwhile
+            expect(client.send("GET", BOOKS_ENDPOINT + id, null, null, null, null), 200, 404);
+        }
+    },
+
+    CREATE {
+        @Override
+        void run(LoadClient client, BookIds ids) throws IOException {
+            LoadClient.Response response = expect(client.send("POST", BOOKS_ENDPOINT, USER_USERNAME + ":" + USER_PASSWORD,
+                    null, "application/json", bookJson("Load test book")), 201);
+            ids.created(id(response.body));
+        }
+    },
+
+    UPDATE {
+        @Override
+        void run(LoadClient client, BookIds ids) throws IOException {
+            long id = ids.any();
+            expect(client.send("PUT", BOOKS_ENDPOINT + id, USER_USERNAME + ":" + USER_PASSWORD, null,
+                    "application/json", bookJson("Load test book (updated)")), 200, 404);
+        }
+    },
+
+    DELETE {
+        @Override
+        void run(LoadClient client, BookIds ids) throws IOException {
+            // Only deletes books created by the load test itself
+            Long id = ids.takeCreated();
+            if (id == null) {
+                LIST.run(client, ids);
+                return;
+            }
+            expect(client.send("DELETE", BOOKS_ENDPOINT + id, ADMIN_USERNAME + ":" + ADMIN_PASSWORD, null, null,
+                    null), 200, 404);
+        }
+    },
+
+    WEB {
+        @Override
+        void run(LoadClient client, BookIds ids) throws IOException {
+            LoadClient.Response login = expect(client.send("GET", "/login", null, null, null, null), 200);
+            String cookie = login.sessionCookie;
+
+            LoadClient.Response loggedIn = expect(client.send("POST", "/login", null, cookie,
+                    "application/x-www-form-urlencoded", "username=" + USER_USERNAME + "&password=" + USER_PASSWORD
+                            + "&_csrf=" + csrf(login.body)), 302);
+            if (loggedIn.location == null || loggedIn.location.contains("loginerror")) {
+                throw new IllegalStateException("Web login failed");
+            }
+            // Spring Security changes the session id on login
+            if (loggedIn.sessionCookie != null) {
+                cookie = loggedIn.sessionCookie;
+            }
+
+            LoadClient.Response books = expect(client.send("GET", "/", null, cookie, null, null), 200);
+
+            expect(client.send("POST", "/logout", null, cookie, "application/x-www-form-urlencoded",
+                    "_csrf=" + csrf(books.body)), 302);
+        }
+    };
+
+    private static final Pattern ID = Pattern.compile("\"id\"\\s*:\\s*(\\d+)");
+
+    private static final Pattern CSRF = Pattern.compile("name=\"_csrf\" value=\"([^\"]+)\"");
+
+    abstract void run(LoadClient client, BookIds ids) throws IOException;
+
+    private static LoadClient.Response expect(LoadClient.Response response, int... statuses) {
+        for (int status : statuses) {
+            if (response.status == status) {
+                return response;
+            }
+        }
+        throw new UnexpectedStatusException(response.status);
+    }
+
+    private static String bookJson(String title) {
+        return "{\"title\":\"" + title + "\",\"description\":\"Description " + ThreadLocalRandom.current().nextInt()
+                + "\"}";
+    }
+
+    private static long id(String json) {
+        Matcher matcher = ID.matcher(json);
+        if (!matcher.find()) {
+            throw new IllegalStateException("No id in " + json);
+        }
+        return Long.parseLong(matcher.group(1));
+    }
+
+    private static String csrf(String html) {
+        Matcher matcher = CSRF.matcher(html);
+        if (!matcher.find()) {
+            throw new IllegalStateException("No CSRF token in the page");
+        }
+        return matcher.group(1);
+    }
+
+    static class UnexpectedStatusException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        UnexpectedStatusException(int status) {
+            super("Unexpected status " + status);
+            this.status = status;
+        }
+
+    }
+
+}
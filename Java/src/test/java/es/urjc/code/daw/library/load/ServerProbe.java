@@ -0,0 +1,69 @@
+package es.urjc.code.daw.library.load;
+
+import java.lang.management.ManagementFactory;
+
+import org.apache.catalina.Container;
+import org.apache.catalina.Context;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Reads the heap and the number of HTTP sessions of an application started
+ * in the same JVM as the load test. Against a remote server nothing can be
+ * read and every value is -1.
+ */
+class ServerProbe {
+
+    static class Sample {
+
+        final long timeMillis;
+
+        final long heapBytes;
+
+        final long sessions;
+
+        Sample(long timeMillis, long heapBytes, long sessions) {
+            this.timeMillis = timeMillis;
+            this.heapBytes = heapBytes;
+            this.sessions = sessions;
+        }
+
+    }
+
+    private final ConfigurableApplicationContext application;
+
+    ServerProbe(ConfigurableApplicationContext application) {
+        this.application = application;
+    }
+
+    /**
+     * @param afterGc run a full GC first, so that the heap figure is the live
+     *        set (as needed to tell a leak from garbage not collected yet)
+     */
+    Sample sample(boolean afterGc) {
+        if (application == null) {
+            return new Sample(System.currentTimeMillis(), -1, -1);
+        }
+        if (afterGc) {
+            System.gc();
+        }
+        long heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        return new Sample(System.currentTimeMillis(), heap, sessions());
+    }
+
+    private long sessions() {
+        if (!(application instanceof ServletWebServerApplicationContext)) {
+            return -1;
+        }
+        TomcatWebServer server = (TomcatWebServer) ((ServletWebServerApplicationContext) application).getWebServer();
+        long sessions = 0;
+        for (Container child : server.getTomcat().getHost().findChildren()) {
+            if (child instanceof Context && ((Context) child).getManager() != null) {
+                sessions += ((Context) child).getManager().getActiveSessions();
+            }
+        }
+        return sessions;
+    }
+
+}
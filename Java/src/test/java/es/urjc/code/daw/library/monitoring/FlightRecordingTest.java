@@ -0,0 +1,95 @@
+package es.urjc.code.daw.library.monitoring;
+
+import static es.urjc.code.daw.library.rest.TestUtils.*;
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+
+import es.urjc.code.daw.library.book.Book;
+import es.urjc.code.daw.library.book.BookService;
+import io.restassured.RestAssured;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "library.jfr.enabled=true")
+class FlightRecordingTest {
+
+    private static final String DUMP_ENDPOINT = "/api/admin/recording/dump";
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    BookService bookService;
+
+    @BeforeEach
+    public void setup() {
+        RestAssured.port = port;
+        RestAssured.useRelaxedHTTPSValidation();
+        RestAssured.baseURI = "https://localhost:" + port;
+    }
+
+    @Test
+    @DisplayName("Only admins can dump the flight recording")
+    void givenNotAdminWhenDumpThenRejected() {
+        given().post(DUMP_ENDPOINT).then().statusCode(HttpStatus.UNAUTHORIZED.value());
+
+        given().auth().basic(USER_USERNAME, USER_PASSWORD).post(DUMP_ENDPOINT).then()
+                .statusCode(HttpStatus.FORBIDDEN.value());
+    }
+
+    @Test
+    @DisplayName("Dump contains the book, authentication and render events")
+    void givenActivityWhenDumpThenEventsAreRecorded() throws Exception {
+        Book book = bookService.save(new Book("Recorded", "Description"));
+        bookService.findOne(book.getId());
+        assertThrows(IllegalArgumentException.class, () -> bookService.findChanges(0, 0));
+        given().get("/").then().statusCode(HttpStatus.OK.value());
+
+        String file = given().auth().basic(ADMIN_USERNAME, ADMIN_PASSWORD).post(DUMP_ENDPOINT).then()
+                .statusCode(HttpStatus.CREATED.value()).extract().path("file");
+
+        Path path = Paths.get(file);
+        try {
+            List<RecordedEvent> events = RecordingFile.readAllEvents(path);
+            Set<String> types = events.stream()
+                    .map(event -> event.getEventType().getName()).collect(Collectors.toSet());
+            assertThat(types, hasItems("es.urjc.code.daw.library.BookOperation",
+                    "es.urjc.code.daw.library.Authentication", "es.urjc.code.daw.library.ViewRender"));
+
+            RecordedEvent save = bookOperation(events, "save");
+            assertThat(save.getInt("rows"), is(1));
+            assertThat(save.getBoolean("failed"), is(false));
+
+            // Operations that throw are recorded too
+            assertThat(bookOperation(events, "findChanges").getBoolean("failed"), is(true));
+        } finally {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private static RecordedEvent bookOperation(List<RecordedEvent> events, String operation) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals("es.urjc.code.daw.library.BookOperation")
+                        && operation.equals(event.getString("operation")))
+                .findFirst().get();
+    }
+
+}
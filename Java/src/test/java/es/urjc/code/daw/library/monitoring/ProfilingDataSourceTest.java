@@ -0,0 +1,130 @@
+package es.urjc.code.daw.library.monitoring;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+
+import org.h2.jdbc.JdbcConnection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+class ProfilingDataSourceTest {
+
+    private SqlProfiler profiler;
+
+    private ProfilingDataSource dataSource;
+
+    @BeforeEach
+    void setup() throws SQLException {
+        profiler = new SqlProfiler();
+        ReflectionTestUtils.setField(profiler, "slowThresholdMillis", 0L);
+        ReflectionTestUtils.setField(profiler, "explain", true);
+        ReflectionTestUtils.setField(profiler, "maxShapes", 1000);
+        profiler.init();
+
+        dataSource = new ProfilingDataSource(
+                new DriverManagerDataSource("jdbc:h2:mem:profiling-test;DB_CLOSE_DELAY=-1", "sa", ""), profiler);
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("create table item (id bigint primary key, name varchar(50))");
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        profiler.shutdown();
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("drop all objects");
+        }
+    }
+
+    @Test
+    @DisplayName("Updates, batches and read rows are counted per statement shape")
+    void givenStatementsWhenExecutedThenRowsAreCounted() throws SQLException {
+        try (Connection connection = dataSource.getConnection()) {
+            try (PreparedStatement insert = connection.prepareStatement("insert into item (id, name) values (?, ?)")) {
+                for (long id = 1; id <= 3; id++) {
+                    insert.setLong(1, id);
+                    insert.setString(2, "Item " + id);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+            try (Statement statement = connection.createStatement()) {
+                assertThat(statement.executeUpdate("update item set name = 'Renamed' where id = 1"), is(1));
+                assertThat(statement.getConnection(), sameInstance(connection));
+            }
+            try (PreparedStatement select = connection.prepareStatement("select name from item where id > ?")) {
+                select.setFetchSize(10);
+                select.setLong(1, 0);
+                try (ResultSet result = select.executeQuery()) {
+                    assertThat(result.getStatement(), sameInstance(select));
+                    while (result.next()) {
+                        assertThat(result.getString(1), notNullValue());
+                    }
+                }
+            }
+        }
+
+        assertThat(shape("insert into item (id, name) values (?, ?)").get("rows"), is(3L));
+        assertThat(shape("update item set name = ? where id = ?").get("rows"), is(1L));
+        assertThat(shape("select name from item where id > ?").get("rows"), is(3L));
+    }
+
+    @Test
+    @DisplayName("Slow statements are explained on another connection, outside their transaction")
+    void givenSlowStatementInTransactionWhenExecutedThenItIsExplainedInTheBackground() throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement select = connection.prepareStatement("select name from item where id = ?")) {
+                select.setLong(1, 1);
+                try (ResultSet result = select.executeQuery()) {
+                    assertThat(result.next(), is(false));
+                }
+            }
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (shape("select name from item where id = ?").get("plan") == null
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(shape("select name from item where id = ?").get("plan"), notNullValue());
+
+            // The transaction of the statement is still open and its own
+            assertThat(connection.getAutoCommit(), is(false));
+            assertThat(connection.isWrapperFor(JdbcConnection.class), is(true));
+            connection.rollback();
+        }
+    }
+
+    @Test
+    @DisplayName("Statements that are not queries or updates are never explained")
+    void givenDdlWhenSlowThenItIsNotExplained() throws Exception {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("create index item_name on item (name)");
+        }
+        Thread.sleep(100);
+
+        assertThat(shape("create index item_name on item (name)").get("plan"), nullValue());
+    }
+
+    private Map<String, Object> shape(String sql) {
+        return profiler.slowest(100).stream()
+                .filter(shape -> sql.equals(shape.get("sql")))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No shape for " + sql));
+    }
+
+}
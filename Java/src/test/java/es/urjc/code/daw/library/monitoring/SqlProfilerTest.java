@@ -0,0 +1,108 @@
+package es.urjc.code.daw.library.monitoring;
+
+import static es.urjc.code.daw.library.rest.TestUtils.*;
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.startsWith;
+
+import java.util.List;
+import java.util.Objects;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+
+import io.restassured.RestAssured;
+
+// With a threshold of 0 every statement is slow, so all of them are explained
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "library.sql.slow-threshold-ms=0")
+class SqlProfilerTest {
+
+    private static final String SLOWEST_ENDPOINT = "/api/admin/sql/slowest";
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    DataSource dataSource;
+
+    @BeforeEach
+    public void setup() {
+        RestAssured.port = port;
+        RestAssured.useRelaxedHTTPSValidation();
+        RestAssured.baseURI = "https://localhost:" + port;
+    }
+
+    @Test
+    @DisplayName("The application DataSource is profiled")
+    void givenApplicationWhenGetDataSourceThenItIsProfiled() {
+        assertThat(dataSource, instanceOf(ProfilingDataSource.class));
+    }
+
+    @Test
+    @DisplayName("Slowest statement shapes are exposed to admins with their plan and endpoint")
+    void givenServedRequestsWhenGetSlowestThenShapesAreKnown() throws InterruptedException {
+        given().auth().basic(USER_USERNAME, USER_PASSWORD).get(BOOKS_ENDPOINT).then()
+                .statusCode(HttpStatus.OK.value());
+
+        // Plans are explained in the background
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!planKnown() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        given().auth().basic(ADMIN_USERNAME, ADMIN_PASSWORD).get(SLOWEST_ENDPOINT + "?limit=100").then()
+                .statusCode(HttpStatus.OK.value())
+                .body("count", everyItem(greaterThan(0)))
+                .body("plan", hasItem(notNullValue()))
+                .body("slowestEndpoint", hasItem(startsWith("GET /api/")));
+
+        given().auth().basic(ADMIN_USERNAME, ADMIN_PASSWORD).get(SLOWEST_ENDPOINT + "?limit=1").then()
+                .statusCode(HttpStatus.OK.value())
+                .body("$", hasSize(1));
+
+        given().auth().basic(USER_USERNAME, USER_PASSWORD).get(SLOWEST_ENDPOINT).then()
+                .statusCode(HttpStatus.FORBIDDEN.value());
+    }
+
+    private boolean planKnown() {
+        List<Object> plans = given().auth().basic(ADMIN_USERNAME, ADMIN_PASSWORD).get(SLOWEST_ENDPOINT + "?limit=100")
+                .jsonPath().getList("plan");
+        return plans.stream().anyMatch(Objects::nonNull);
+    }
+
+    @Test
+    @DisplayName("Statements that only differ in their literals have the same shape")
+    void givenLiteralsWhenNormalizeThenTheyAreReplaced() {
+        assertThat(SqlProfiler.normalize("select * from book  where title = 'It''s' and id in (1, 2,3) and x1 = 2.5"),
+                is("select * from book where title = ? and id in (?...) and x1 = ?"));
+        assertThat(SqlProfiler.normalize("select * from book where id in (?, ?)"),
+                is(SqlProfiler.normalize("select * from book where id in (?, ?, ?)")));
+    }
+
+    @Test
+    @DisplayName("Parameters of statements on the user tables are never logged")
+    void givenUserTableStatementsWhenCheckedThenTheyTouchUsers() {
+        assertThat(SqlProfiler.touchesUsers("select user0_.id as id1_3_ from user user0_ where user0_.name=?"), is(true));
+        assertThat(SqlProfiler.touchesUsers("insert into user (name, password_hash, id) values (?, ?, ?)"), is(true));
+        assertThat(SqlProfiler.touchesUsers("select roles0_.user_id from user_roles roles0_ where roles0_.user_id=?"),
+                is(true));
+        assertThat(SqlProfiler.touchesUsers("update \"USER\" set password_hash=? where id=?"), is(true));
+        assertThat(SqlProfiler.touchesUsers("select book0_.id from book book0_ where book0_.title like ?"), is(false));
+    }
+
+}
@@ -0,0 +1,55 @@
+package es.urjc.code.daw.library.monitoring;
+
+import static es.urjc.code.daw.library.rest.TestUtils.*;
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItem;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+
+import io.restassured.RestAssured;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("prod")
+class StartupMetricsTest {
+
+    private static final String STARTUP_ENDPOINT = "/api/admin/startup";
+
+    @LocalServerPort
+    int port;
+
+    @BeforeEach
+    public void setup() {
+        RestAssured.port = port;
+        RestAssured.useRelaxedHTTPSValidation();
+        RestAssured.baseURI = "https://localhost:" + port;
+    }
+
+    @Test
+    @DisplayName("With lazy initialization the sample data is still loaded at startup")
+    void givenProdProfileWhenStartedThenSampleBooksExist() {
+        given().get(BOOKS_ENDPOINT).then().statusCode(HttpStatus.OK.value())
+                .body("title", hasItem("CASI SIN QUERER"));
+    }
+
+    @Test
+    @DisplayName("Startup and first request times are exposed to admins")
+    void givenServedRequestWhenGetStartupThenTimesAreKnown() {
+        given().get(BOOKS_ENDPOINT).then().statusCode(HttpStatus.OK.value());
+
+        given().auth().basic(ADMIN_USERNAME, ADMIN_PASSWORD).get(STARTUP_ENDPOINT).then()
+                .statusCode(HttpStatus.OK.value())
+                .body("readyMillis", greaterThan(0))
+                .body("firstRequestMillis", greaterThan(0));
+
+        given().auth().basic(USER_USERNAME, USER_PASSWORD).get(STARTUP_ENDPOINT).then()
+                .statusCode(HttpStatus.FORBIDDEN.value());
+    }
+
+}
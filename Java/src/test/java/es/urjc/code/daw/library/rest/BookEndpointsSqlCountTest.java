@@ -0,0 +1,159 @@
+package es.urjc.code.daw.library.rest;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.view;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+
+import es.urjc.code.daw.library.book.Book;
+import es.urjc.code.daw.library.book.BookService;
+import static es.urjc.code.daw.library.rest.TestUtils.*;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+/**
+ * Exact number of SQL statements issued per endpoint, measured with Hibernate
+ * statistics. Writes pay one statement for the book itself plus three for the
+ * change log (delete previous entry, next sequence value, insert).
+ */
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+@AutoConfigureMockMvc
+class BookEndpointsSqlCountTest {
+
+    // Delete of the previous entry, increment and read of the sequence, insert of the entry
+    private static final long CHANGE_LOG_STATEMENTS = 4;
+
+    @Autowired
+    MockMvc mockMvc;
+
+    @Autowired
+    BookService bookService;
+
+    @Autowired
+    EntityManagerFactory entityManagerFactory;
+
+    // Background rebuilds would add their own queries to the statistics
+    @MockBean
+    CatalogueSnapshots catalogueSnapshots;
+
+    Statistics statistics;
+
+    Book book;
+
+    @BeforeEach
+    void setup() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        book = bookService.save(new Book("Title 1", "Description 1"));
+        statistics.clear();
+    }
+
+    @Test
+    @DisplayName("Getting a book runs one SELECT")
+    void givenBookWhenGetBookThenOneStatement() throws Exception {
+        mockMvc.perform(get(BOOKS_ENDPOINT + book.getId()))
+            .andExpect(status().isOk());
+
+        assertThat(statistics.getPrepareStatementCount(), is(1L));
+    }
+
+    @Test
+    @DisplayName("Creating a book runs the INSERT and its id, plus the change log")
+    @WithMockUser(username = USER_USERNAME, password = USER_PASSWORD, roles = "USER")
+    void givenNewBookWhenCreateBookThenExpectedStatements() throws Exception {
+        mockMvc.perform(post(BOOKS_ENDPOINT)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"title\":\"Title 2\",\"description\":\"Description 2\"}"))
+            .andExpect(status().isCreated());
+
+        assertThat(statistics.getPrepareStatementCount(), is(2 + CHANGE_LOG_STATEMENTS));
+    }
+
+    @Test
+    @DisplayName("Updating a book runs a single UPDATE plus the change log")
+    @WithMockUser(username = USER_USERNAME, password = USER_PASSWORD, roles = "USER")
+    void givenBookWhenUpdateBookThenSingleUpdate() throws Exception {
+        mockMvc.perform(put(BOOKS_ENDPOINT + book.getId())
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"title\":\"Title 2\",\"description\":\"Description 2\"}"))
+            .andExpect(status().isOk());
+
+        assertThat(statistics.getPrepareStatementCount(), is(1 + CHANGE_LOG_STATEMENTS));
+    }
+
+    @Test
+    @DisplayName("Updating a missing book runs only the UPDATE")
+    @WithMockUser(username = USER_USERNAME, password = USER_PASSWORD, roles = "USER")
+    void givenMissingBookWhenUpdateBookThenSingleStatement() throws Exception {
+        mockMvc.perform(put(BOOKS_ENDPOINT + (book.getId() + 1000))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"title\":\"Title 2\",\"description\":\"Description 2\"}"))
+            .andExpect(status().isNotFound());
+
+        assertThat(statistics.getPrepareStatementCount(), is(1L));
+    }
+
+    @Test
+    @DisplayName("Deleting a book runs a single DELETE plus the change log")
+    @WithMockUser(username = ADMIN_USERNAME, password = ADMIN_PASSWORD, roles = {"USER", "ADMIN"})
+    void givenBookWhenDeleteBookThenSingleDelete() throws Exception {
+        mockMvc.perform(delete(BOOKS_ENDPOINT + book.getId()))
+            .andExpect(status().isOk());
+
+        assertThat(statistics.getPrepareStatementCount(), is(1 + CHANGE_LOG_STATEMENTS));
+    }
+
+    @Test
+    @DisplayName("Deleting a missing book runs only the DELETE")
+    @WithMockUser(username = ADMIN_USERNAME, password = ADMIN_PASSWORD, roles = {"USER", "ADMIN"})
+    void givenMissingBookWhenDeleteBookThenSingleStatement() throws Exception {
+        mockMvc.perform(delete(BOOKS_ENDPOINT + (book.getId() + 1000)))
+            .andExpect(status().isNotFound());
+
+        assertThat(statistics.getPrepareStatementCount(), is(1L));
+    }
+
+    @Test
+    @DisplayName("Removing a book from the web runs a single DELETE plus the change log")
+    @WithMockUser(username = ADMIN_USERNAME, password = ADMIN_PASSWORD, roles = {"USER", "ADMIN"})
+    void givenBookWhenRemoveBookFromWebThenSingleDelete() throws Exception {
+        mockMvc.perform(get("/removebook/" + book.getId()))
+            .andExpect(status().is3xxRedirection());
+
+        assertThat(statistics.getPrepareStatementCount(), is(1 + CHANGE_LOG_STATEMENTS));
+    }
+
+    @Test
+    @DisplayName("Editing a missing book from the web runs only the UPDATE and shows not found")
+    @WithMockUser(username = USER_USERNAME, password = USER_PASSWORD, roles = "USER")
+    void givenMissingBookWhenEditBookFromWebThenNotFound() throws Exception {
+        mockMvc.perform(post("/editbook").with(csrf())
+                .param("id", String.valueOf(book.getId() + 1000))
+                .param("title", "Title 2")
+                .param("description", "Description 2"))
+            .andExpect(status().isNotFound())
+            .andExpect(view().name("bookNotFound"));
+
+        assertThat(statistics.getPrepareStatementCount(), is(1L));
+    }
+
+}
@@ -4,6 +4,9 @@ public final class TestUtils {
 
     // Endpoints
     public static final String BOOKS_ENDPOINT = "/api/books/";
+    public static final String CHANGES_ENDPOINT = "/api/books/changes";
+    public static final String LOOKUP_ENDPOINT = "/api/books/lookup";
+    public static final String SUGGEST_ENDPOINT = "/api/books/suggest";
 
     // Users info
     public static final String USER_USERNAME = "user";
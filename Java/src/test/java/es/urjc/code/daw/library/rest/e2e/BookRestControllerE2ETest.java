@@ -26,6 +26,7 @@ import static io.restassured.path.json.JsonPath.*;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -76,6 +77,39 @@ class BookRestControllerE2ETest {
                     .toArray()));
     }
 
+    @Test
+    @DisplayName("[E2E] Catalogue is served from the pre-serialized snapshot once it is rebuilt")
+    void givenRebuiltSnapshotWhenGetAllBooksThenSupportsConditionalRequests() throws InterruptedException {
+        Book book = bookService.save(new Book("Title 1", "Description 1"));
+
+        String eTag = awaitCatalogueETag();
+
+        given()
+            .header("If-None-Match", eTag)
+            .get(BOOKS_ENDPOINT)
+        .then()
+            .statusCode(HttpStatus.NOT_MODIFIED.value());
+
+        given()
+            .get(BOOKS_ENDPOINT)
+        .then()
+            .statusCode(HttpStatus.OK.value())
+            .header("ETag", eTag)
+            .body("title", hasItem(book.getTitle()));
+    }
+
+    private String awaitCatalogueETag() throws InterruptedException {
+        for (int i = 0; i < 50; i++) {
+            String eTag = given().get(BOOKS_ENDPOINT).getHeader("ETag");
+            if (eTag != null) {
+                return eTag;
+            }
+            Thread.sleep(100);
+        }
+        fail("Catalogue snapshot was not rebuilt");
+        return null;
+    }
+
     /**
      * Add book tests: [POST]/api/books/
      * @throws JSONException
@@ -154,6 +188,45 @@ class BookRestControllerE2ETest {
         assertThat(bookFromDb.get().getDescription(), is(book.getDescription()));
     }
 
+    /**
+     * Update book tests: [PUT]/api/books/{id}
+     */
+
+    @Test
+    @DisplayName("[E2E] Logged user can update a book with a long (compressed) description")
+    void givenLoggedUserWhenUpdateBookWithLongDescriptionThenRoundTrips() throws JSONException {
+        Book book = bookService.save(new Book("Title 1", "Description 1"));
+        String description = String.join("", Collections.nCopies(200, "Érase una vez un libro muy largo. "));
+
+        JSONObject jsonObj = new JSONObject()
+                                .put("title", "Title 2")
+                                .put("description", description);
+
+        Response response = given()
+                                .auth()
+                                    .basic(USER_USERNAME, USER_PASSWORD)
+                                .contentType(ContentType.JSON)
+                                .body(jsonObj.toString())
+                                .pathParam("id", book.getId())
+                                .put(BOOKS_ENDPOINT + "{id}")
+                                .andReturn();
+
+        Optional<Book> bookFromDb = bookService.findOne(book.getId());
+
+        if(!bookFromDb.isPresent()) fail();
+
+        assertThat(response.statusCode(), is(HttpStatus.OK.value()));
+        assertThat(bookFromDb.get().getTitle(), is("Title 2"));
+        assertThat(bookFromDb.get().getDescription(), is(description));
+
+        given()
+            .pathParam("id", book.getId())
+            .get(BOOKS_ENDPOINT + "{id}")
+        .then()
+            .statusCode(HttpStatus.OK.value())
+            .body("description", equalTo(description));
+    }
+
     /**
      * Delete book tests: [DELETE]/api/books/{id}
      */
@@ -202,4 +275,179 @@ class BookRestControllerE2ETest {
         assertThat(bookFromDb.isPresent(), is(false));
     }
 
+    /**
+     * Delta sync tests: [GET]/api/books/changes
+     */
+
+    @Test
+    @DisplayName("[E2E] Not logged user gets only the changes after the given sequence")
+    void givenSequenceWhenGetChangesThenReturnsOnlyNewerChanges() {
+        long since = bookService.lastChangeSeq();
+
+        Book kept = bookService.save(new Book("Title 1", "Description 1"));
+        Book removed = bookService.save(new Book("Title 2", "Description 2"));
+        bookService.delete(removed.getId());
+
+        given()
+            .queryParam("since", since)
+            .get(CHANGES_ENDPOINT)
+        .then()
+            .statusCode(HttpStatus.OK.value())
+            .body("changes", hasSize(2))
+            .body("changes[0].bookId", is(kept.getId().intValue()))
+            .body("changes[0].deleted", is(false))
+            .body("changes[0].book.title", is(kept.getTitle()))
+            .body("changes[1].bookId", is(removed.getId().intValue()))
+            .body("changes[1].deleted", is(true))
+            .body("changes[1].book", nullValue())
+            .body("hasMore", is(false));
+    }
+
+    @Test
+    @DisplayName("[E2E] Changes are returned in pages of the requested size")
+    void givenLimitWhenGetChangesThenReturnsPagedChanges() {
+        long since = bookService.lastChangeSeq();
+
+        bookService.save(new Book("Title 1", "Description 1"));
+        bookService.save(new Book("Title 2", "Description 2"));
+
+        Response firstPage = given()
+                                .queryParam("since", since)
+                                .queryParam("limit", 1)
+                                .get(CHANGES_ENDPOINT)
+                                .andReturn();
+
+        long lastSeq = from(firstPage.getBody().asString()).getLong("lastSeq");
+
+        assertThat(from(firstPage.getBody().asString()).getList("changes"), hasSize(1));
+        assertThat(from(firstPage.getBody().asString()).getBoolean("hasMore"), is(true));
+
+        given()
+            .queryParam("since", lastSeq)
+            .queryParam("limit", 1)
+            .get(CHANGES_ENDPOINT)
+        .then()
+            .statusCode(HttpStatus.OK.value())
+            .body("changes", hasSize(1))
+            .body("hasMore", is(false));
+    }
+
+    /**
+     * Multi-get tests: [GET]/api/books/?ids= and [POST]/api/books/lookup
+     */
+
+    @Test
+    @DisplayName("[E2E] Not logged user can get several books by id in request order")
+    void givenIdsWhenGetBooksByIdThenReturnsBooksInOrderAndMissingIds() {
+        Book first = bookService.save(new Book("Title 1", "Description 1"));
+        Book second = bookService.save(new Book("Title 2", "Description 2"));
+        long missingId = second.getId() + 1000;
+
+        given()
+            .queryParam("ids", second.getId() + "," + missingId + "," + first.getId())
+            .get(BOOKS_ENDPOINT)
+        .then()
+            .statusCode(HttpStatus.OK.value())
+            .body("books.id", contains(second.getId().intValue(), first.getId().intValue()))
+            .body("books.title", contains(second.getTitle(), first.getTitle()))
+            .body("missing", contains((int) missingId));
+    }
+
+    @Test
+    @DisplayName("[E2E] Not logged user can look up several books with a POST body")
+    void givenIdsInBodyWhenLookupBooksThenReturnsBooksInOrder() {
+        Book first = bookService.save(new Book("Title 1", "Description 1"));
+        Book second = bookService.save(new Book("Title 2", "Description 2"));
+
+        given()
+            .contentType(ContentType.JSON)
+            .body("[" + second.getId() + "," + first.getId() + "]")
+            .post(LOOKUP_ENDPOINT)
+        .then()
+            .statusCode(HttpStatus.OK.value())
+            .body("books.id", contains(second.getId().intValue(), first.getId().intValue()))
+            .body("missing", empty());
+    }
+
+    @Test
+    @DisplayName("[E2E] Looking up a null id is a bad request")
+    void givenNullIdInBodyWhenLookupBooksThenBadRequest() {
+        Book book = bookService.save(new Book("Title 1", "Description 1"));
+
+        given()
+            .contentType(ContentType.JSON)
+            .body("[" + book.getId() + ",null]")
+            .post(LOOKUP_ENDPOINT)
+        .then()
+            .statusCode(HttpStatus.BAD_REQUEST.value());
+    }
+
+    /**
+     * Listing tests: [GET]/api/books/?sort=&prefix=&limit=
+     */
+
+    @Test
+    @DisplayName("[E2E] Not logged user can list books by title prefix ignoring case and accents")
+    void givenPrefixWhenGetBooksSortedByTitleThenReturnsMatchingBooksInOrder() {
+        Book third = bookService.save(new Book("Ñandutí", "Description 3"));
+        Book first = bookService.save(new Book("ñandu azul", "Description 1"));
+        Book second = bookService.save(new Book("NANDÚ ROJO", "Description 2"));
+
+        given()
+            .queryParam("prefix", "ÑANDU")
+            .queryParam("sort", "title")
+            .get(BOOKS_ENDPOINT)
+        .then()
+            .statusCode(HttpStatus.OK.value())
+            .body("id", contains(first.getId().intValue(), second.getId().intValue(), third.getId().intValue()))
+            .body("[0]", not(hasKey("normalizedTitle")));
+
+        given()
+            .queryParam("prefix", "nandu")
+            .queryParam("sort", "id")
+            .queryParam("limit", 2)
+            .get(BOOKS_ENDPOINT)
+        .then()
+            .statusCode(HttpStatus.OK.value())
+            .body("title", contains(third.getTitle(), first.getTitle()));
+    }
+
+    @Test
+    @DisplayName("[E2E] Listing with an unknown sort or a non positive limit is a bad request")
+    void givenInvalidSortOrLimitWhenGetBooksThenBadRequest() {
+        given().queryParam("sort", "description").get(BOOKS_ENDPOINT)
+            .then().statusCode(HttpStatus.BAD_REQUEST.value());
+
+        given().queryParam("limit", 0).get(BOOKS_ENDPOINT)
+            .then().statusCode(HttpStatus.BAD_REQUEST.value());
+    }
+
+    /**
+     * Suggestions tests: [GET]/api/books/suggest?prefix=
+     */
+
+    @Test
+    @DisplayName("[E2E] Not logged user gets title suggestions that follow creations, updates and deletes")
+    void givenWrittenBooksWhenSuggestThenReflectsLatestTitles() {
+        Book created = bookService.save(new Book("Zoología fantástica", "Description 1"));
+        Book renamed = bookService.save(new Book("Zoo de cristal", "Description 2"));
+        bookService.update(renamed.getId(), new Book("Ciudad de cristal", "Description 2"));
+
+        given()
+            .queryParam("prefix", "ZOOLOGIA")
+            .get(SUGGEST_ENDPOINT)
+        .then()
+            .statusCode(HttpStatus.OK.value())
+            .body("id", contains(created.getId().intValue()))
+            .body("title", contains("Zoología fantástica"));
+
+        given().queryParam("prefix", "zoo de").get(SUGGEST_ENDPOINT)
+            .then().statusCode(HttpStatus.OK.value()).body("$", empty());
+
+        bookService.delete(created.getId());
+
+        given().queryParam("prefix", "zoologia").get(SUGGEST_ENDPOINT)
+            .then().statusCode(HttpStatus.OK.value()).body("$", empty());
+    }
+
 }
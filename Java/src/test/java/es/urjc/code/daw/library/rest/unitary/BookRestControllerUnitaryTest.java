@@ -16,17 +16,24 @@ import static org.springframework.test.web.servlet.request.MockMvcRequestBuilder
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 
 import es.urjc.code.daw.library.book.Book;
 import es.urjc.code.daw.library.book.BookService;
+import es.urjc.code.daw.library.rest.CatalogueSnapshots;
 import static es.urjc.code.daw.library.rest.TestUtils.*;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
 
 import static org.mockito.Mockito.when;
 
@@ -40,6 +47,13 @@ class BookRestControllerUnitaryTest {
     @MockBean
     BookService bookService;
 
+    // Without a snapshot the list is always serialized from bookService.findAll()
+    @MockBean
+    CatalogueSnapshots catalogueSnapshots;
+
+    static final MediaType CBOR = MediaType.valueOf("application/cbor");
+    static final MediaType SMILE = MediaType.valueOf("application/x-jackson-smile");
+
     /**
      * Get all books tests: [GET]/api/books/
      * @throws Exception
@@ -63,6 +77,48 @@ class BookRestControllerUnitaryTest {
             .andExpect(jsonPath("$[1].description").value(books.get(1).getDescription()));
     }
 
+    /**
+     * Content negotiation tests: [GET]/api/books/{id}
+     * @throws Exception
+     */
+
+    @Test
+    @DisplayName("Book is returned as CBOR when the client accepts it")
+    void givenCborAcceptHeaderWhenGetBookThenReturnsCbor() throws Exception {
+        Book book = new Book("Title 1", "Description 1");
+
+        when(bookService.findOne(1)).thenReturn(Optional.of(book));
+
+        byte[] body = mockMvc.perform(
+            get(BOOKS_ENDPOINT + "1")
+                .accept(CBOR))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(CBOR))
+            .andReturn().getResponse().getContentAsByteArray();
+
+        Book decoded = new ObjectMapper(new CBORFactory()).readValue(body, Book.class);
+        assertThat(decoded.getTitle(), is(book.getTitle()));
+        assertThat(decoded.getDescription(), is(book.getDescription()));
+    }
+
+    @Test
+    @DisplayName("Book is returned as Smile when the client accepts it")
+    void givenSmileAcceptHeaderWhenGetBookThenReturnsSmile() throws Exception {
+        Book book = new Book("Title 1", "Description 1");
+
+        when(bookService.findOne(1)).thenReturn(Optional.of(book));
+
+        byte[] body = mockMvc.perform(
+            get(BOOKS_ENDPOINT + "1")
+                .accept(SMILE))
+            .andExpect(status().isOk())
+            .andExpect(content().contentType(SMILE))
+            .andReturn().getResponse().getContentAsByteArray();
+
+        Book decoded = new ObjectMapper(new SmileFactory()).readValue(body, Book.class);
+        assertThat(decoded.getTitle(), is(book.getTitle()));
+    }
+
     /**
      * Create book tests: [POST]/api/books/
      * @throws Exception
@@ -141,6 +197,8 @@ class BookRestControllerUnitaryTest {
     @DisplayName("Logged admin can delete a book")
     @WithMockUser(username = ADMIN_USERNAME, password = ADMIN_PASSWORD, roles = {"USER", "ADMIN"})
     void givenLoggedAdminWhenDeleteBookThenDeletesSuccessfully() throws Exception {
+        when(bookService.delete(1)).thenReturn(1);
+
         mockMvc.perform(
             delete(BOOKS_ENDPOINT + "1"))
             .andExpect(status().isOk());
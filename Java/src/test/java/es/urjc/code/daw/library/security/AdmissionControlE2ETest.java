@@ -0,0 +1,55 @@
+package es.urjc.code.daw.library.security;
+
+import static es.urjc.code.daw.library.rest.TestUtils.*;
+import static io.restassured.RestAssured.given;
+import static org.hamcrest.Matchers.notNullValue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+
+import io.restassured.RestAssured;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "library.admission.anonymous.rate=0.1", "library.admission.anonymous.burst=2",
+        "library.admission.credentials.rate=0.1", "library.admission.credentials.burst=3" })
+class AdmissionControlE2ETest {
+
+    @LocalServerPort
+    int port;
+
+    @BeforeEach
+    public void setup() {
+        RestAssured.port = port;
+        RestAssured.useRelaxedHTTPSValidation();
+        RestAssured.baseURI = "https://localhost:" + port;
+    }
+
+    @Test
+    @DisplayName("[E2E] Anonymous client over its rate gets 429 with Retry-After, credentials are limited per IP before they are checked")
+    void givenAnonymousOverRateWhenGetBooksThenTooManyRequests() {
+        given().get(BOOKS_ENDPOINT).then().statusCode(HttpStatus.OK.value());
+        given().get(BOOKS_ENDPOINT).then().statusCode(HttpStatus.OK.value());
+
+        given().get(BOOKS_ENDPOINT).then()
+                .statusCode(HttpStatus.TOO_MANY_REQUESTS.value())
+                .header("Retry-After", notNullValue());
+
+        given().auth().preemptive().basic(USER_USERNAME, USER_PASSWORD).get(BOOKS_ENDPOINT).then()
+                .statusCode(HttpStatus.OK.value());
+
+        given().auth().preemptive().basic(USER_USERNAME, "wrong").get(BOOKS_ENDPOINT).then()
+                .statusCode(HttpStatus.UNAUTHORIZED.value());
+        given().auth().preemptive().basic(USER_USERNAME, "wrong").get(BOOKS_ENDPOINT).then()
+                .statusCode(HttpStatus.UNAUTHORIZED.value());
+
+        // Rejected before the password is checked
+        given().auth().preemptive().basic(USER_USERNAME, "wrong").get(BOOKS_ENDPOINT).then()
+                .statusCode(HttpStatus.TOO_MANY_REQUESTS.value())
+                .header("Retry-After", notNullValue());
+    }
+
+}
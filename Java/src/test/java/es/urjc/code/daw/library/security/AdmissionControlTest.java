@@ -0,0 +1,177 @@
+package es.urjc.code.daw.library.security;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import es.urjc.code.daw.library.security.AdmissionControl.EndpointClass;
+
+class AdmissionControlTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static final long WINDOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    @DisplayName("Token bucket admits a burst, then one request per interval")
+    void givenBucketWhenBurstIsUsedThenRequestsWait() {
+        long now = 1_000 * SECOND;
+        TokenBucket bucket = new TokenBucket(10, 5, now);
+
+        for (int i = 0; i < 5; i++) {
+            assertThat(bucket.tryAcquire(now), is(0L));
+        }
+        long wait = bucket.tryAcquire(now);
+        assertThat(wait, greaterThan(0L));
+        assertThat(wait, lessThan(SECOND / 10 + 1));
+        assertThat(bucket.isFull(now), is(false));
+
+        assertThat(bucket.tryAcquire(now + wait), is(0L));
+        assertThat(bucket.isFull(now + SECOND), is(true));
+    }
+
+    @Test
+    @DisplayName("Concurrency limit rejects over the limit and grows while fast requests use it")
+    void givenFastRequestsWhenReleasedThenLimitGrows() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 2, 100, 2.0, WINDOW, 0);
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(limit.tryAcquire(), is(true));
+        }
+        assertThat(limit.tryAcquire(), is(false));
+
+        limit.release(millis(1), 200, 0);
+        assertThat(limit.getLimit(), is(11));
+        assertThat(limit.getInFlight(), is(9));
+    }
+
+    @Test
+    @DisplayName("A window of slow requests shrinks the limit once, however many there are")
+    void givenSlowWindowWhenClosedThenLimitShrinksOnce() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(50, 2, 100, 2.0, WINDOW, 0);
+
+        for (int i = 0; i < 20; i++) {
+            assertThat(limit.tryAcquire(), is(true));
+            limit.release(millis(1), 200, 0);
+        }
+        for (int i = 0; i < 50; i++) {
+            assertThat(limit.tryAcquire(), is(true));
+            limit.release(millis(50), 200, WINDOW);
+        }
+        assertThat(limit.getLimit(), is(50));
+
+        limit.tryAcquire();
+        limit.release(millis(50), 200, 2 * WINDOW);
+        assertThat(limit.getLimit(), is(45));
+    }
+
+    @Test
+    @DisplayName("A steady mix of fast and slow requests does not shrink the limit")
+    void givenMixedFastAndSlowTrafficWhenWindowsCloseThenLimitHolds() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20, 2, 100, 2.0, WINDOW, 0);
+
+        for (int window = 0; window < 50; window++) {
+            int admitted = acquireAll(limit);
+            for (int i = 0; i < admitted; i++) {
+                limit.release(i % 10 < 7 ? millis(1) : millis(20), 200, window * WINDOW);
+            }
+        }
+
+        assertThat(limit.getLimit(), greaterThanOrEqualTo(20));
+    }
+
+    @Test
+    @DisplayName("Fast 304 responses are not the baseline of full responses")
+    void givenNotModifiedResponsesWhenWindowsCloseThenLimitHolds() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(20, 2, 100, 2.0, WINDOW, 0);
+
+        for (int window = 0; window < 50; window++) {
+            int admitted = acquireAll(limit);
+            for (int i = 0; i < admitted; i++) {
+                if (i % 2 == 0) {
+                    limit.release(millis(10), 200, window * WINDOW);
+                } else {
+                    limit.release(TimeUnit.MICROSECONDS.toNanos(100), 304, window * WINDOW);
+                }
+            }
+        }
+
+        assertThat(limit.getLimit(), greaterThanOrEqualTo(20));
+    }
+
+    @Test
+    @DisplayName("After an overload the limit recovers within a few rounds of fast requests")
+    void givenOverloadEndsWhenFastRequestsThenLimitRecovers() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(50, 4, 100, 2.0, WINDOW, 0);
+
+        releaseAll(limit, acquireAll(limit), millis(1), 0);
+        for (int window = 1; window <= 40; window++) {
+            for (int round = 0; round < 3; round++) {
+                releaseAll(limit, acquireAll(limit), millis(50), window * WINDOW);
+            }
+        }
+        assertThat(limit.getLimit(), lessThan(10));
+
+        for (int round = 0; round < 10; round++) {
+            releaseAll(limit, acquireAll(limit), millis(1), 41 * WINDOW);
+        }
+        assertThat(limit.getLimit(), greaterThanOrEqualTo(50));
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Test
+    @DisplayName("An asynchronous request keeps its concurrency slot until it completes")
+    void givenAsyncRequestWhenDispatchReturnsThenSlotIsHeldUntilComplete() throws Exception {
+        AdmissionControl admission = new AdmissionControl();
+        ReflectionTestUtils.setField(admission, "initialConcurrency", 4);
+        ReflectionTestUtils.setField(admission, "minConcurrency", 1);
+        ReflectionTestUtils.setField(admission, "maxConcurrency", 8);
+        ReflectionTestUtils.setField(admission, "latencyTolerance", 2.0);
+        ReflectionTestUtils.setField(admission, "windowMillis", 100L);
+        admission.init();
+        admission.activate();
+        AdaptiveConcurrencyLimit writes = admission.limit(EndpointClass.WRITE);
+        AdmissionControlFilter filter = new AdmissionControlFilter(admission);
+
+        MockHttpServletRequest sync = new MockHttpServletRequest("PUT", "/api/books/1");
+        filter.doFilter(sync, new MockHttpServletResponse(), (request, response) -> {
+        });
+        assertThat(writes.getInFlight(), is(0));
+
+        MockHttpServletRequest async = new MockHttpServletRequest("POST", "/api/books/batch");
+        async.setAsyncSupported(true);
+        filter.doFilter(async, new MockHttpServletResponse(), (request, response) -> request.startAsync());
+        assertThat(writes.getInFlight(), is(1));
+
+        async.getAsyncContext().complete();
+        assertThat(writes.getInFlight(), is(0));
+    }
+
+    private static int acquireAll(AdaptiveConcurrencyLimit limit) {
+        int admitted = 0;
+        while (limit.tryAcquire()) {
+            admitted++;
+        }
+        return admitted;
+    }
+
+    private static void releaseAll(AdaptiveConcurrencyLimit limit, int admitted, long latency, long now) {
+        for (int i = 0; i < admitted; i++) {
+            limit.release(latency, 200, now);
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+package es.urjc.code.daw.library.warmup;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.startsWith;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import es.urjc.code.daw.library.audit.AuditLog;
+import es.urjc.code.daw.library.book.Book;
+import es.urjc.code.daw.library.book.BookChange;
+import es.urjc.code.daw.library.book.BookService;
+import es.urjc.code.daw.library.user.User;
+import es.urjc.code.daw.library.user.UserRepository;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "library.warmup.enabled=true", "library.warmup.budget-ms=10000", "library.warmup.batch-size=3",
+        "library.warmup.round-iterations=5" })
+class WarmUpTest {
+
+    @Autowired
+    WarmUp warmUp;
+
+    @Autowired
+    BookService bookService;
+
+    @Autowired
+    UserRepository userRepository;
+
+    @Autowired
+    AuditLog auditLog;
+
+    @Autowired
+    JdbcTemplate jdbc;
+
+    @Test
+    @DisplayName("Warm-up runs before startup completes and none of its writes are committed")
+    void givenWarmUpEnabledWhenStartedThenItRanAndCleanedUp() {
+        assertThat(warmUp.getRounds(), greaterThan(0));
+        assertThat(warmUp.getDurationMillis(), greaterThanOrEqualTo(0L));
+
+        List<String> titles = bookService.findAll().stream().map(Book::getTitle).collect(Collectors.toList());
+        assertThat(titles, not(hasItem(startsWith("Warm-up book"))));
+
+        List<String> users = userRepository.findAll().stream().map(User::getName).collect(Collectors.toList());
+        assertThat(users, not(hasItem(startsWith("warmup-"))));
+        assertThat(warmUp.isWarmUpUser(null), is(false));
+    }
+
+    @Test
+    @DisplayName("Warm-up writes leave no change log entries and no audit records")
+    void givenWarmUpEnabledWhenStartedThenNoChangesOrAuditRecorded() {
+        List<BookChange> changes = bookService.findChanges(0, 10_000).getChanges();
+        assertThat(changes.stream().filter(BookChange::isDeleted).count(), is(0L));
+        assertThat(changes.size(), is(bookService.findAll().size()));
+        assertThat(bookService.lastChangeSeq(), is((long) changes.size()));
+
+        assertThat(auditLog.getBacklog(), is(0L));
+        assertThat(jdbc.queryForObject("select count(*) from book_audit", Integer.class), is(0));
+    }
+
+}